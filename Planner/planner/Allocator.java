@@ -1,6 +1,7 @@
 package planner;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 /**
  * Provides a method for finding a safe allocation of events to venues.
@@ -37,6 +38,45 @@ public class Allocator {
         }
     }
 
+    /**
+     * <p>
+     * Returns a safe allocation of the given events to the given venues, on
+     * top of traffic that is already booked, if there is one, or null
+     * otherwise.
+     * </p>
+     * 
+     * <p>
+     * Unlike allocate(List, List), this method does not enumerate every safe
+     * allocation: it is a depth-first backtracking search that stops at the
+     * first one found. Events are allocated largest first, each to the
+     * smallest free venue that can host it without making the traffic
+     * (including the booked traffic) unsafe. The search is iterative, so it
+     * can handle any number of events. It reports its progress to the
+     * monitor, and can be cancelled through it.
+     * </p>
+     * 
+     * @param events
+     *            the events to allocate
+     * @param venues
+     *            the venues the events may be allocated to
+     * @param booked
+     *            the traffic already booked on the corridors
+     * @param monitor
+     *            the monitor of the search
+     * @return a safe allocation of every event to a different venue, or null
+     *         if there isn't one
+     * @require events != null && venues != null && booked != null && monitor
+     *          != null && !events.contains(null) && !venues.contains(null) &&
+     *          events does not contain duplicate events && venues does not
+     *          contain duplicate venues && booked.isSafe()
+     * @throws CancellationException
+     *             if the monitor reports that the search was cancelled
+     */
+    public static Map<Event, Venue> allocate(List<Event> events,
+            List<Venue> venues, Traffic booked, SearchMonitor monitor) {
+        return new Search(events, venues, booked, monitor).run();
+    }
+
     /**
      * Returns the set of all possible safe allocations of events to venues.
      * 
@@ -49,6 +89,23 @@ public class Allocator {
      */
     private static Set<Map<Event, Venue>> allocations(List<Event> events,
             List<Venue> venues) {
+        return allocations(events, new VenueCapacityIndex(venues),
+                new HashSet<Venue>());
+    }
+
+    /**
+     * Returns the set of all possible safe allocations of events to the
+     * venues in the index that are not in used.
+     * 
+     * @require events != null && index != null && used != null &&
+     *          !events.contains(null) && events does not contain duplicate
+     *          events.
+     * @ensure Returns the set of all possible safe allocations of events to
+     *         the venues in index that are not in used, leaving used as it
+     *         was.
+     */
+    private static Set<Map<Event, Venue>> allocations(List<Event> events,
+            VenueCapacityIndex index, Set<Venue> used) {
         // set of possible allocations
         Set<Map<Event, Venue>> result = new HashSet<>();
 
@@ -63,20 +120,19 @@ public class Allocator {
         Event event = events.get(0);
         // the rest of the events to be allocated
         List<Event> remainingEvents = events.subList(1, events.size());
-        for (int i = 0; i < venues.size(); i++) {
-            // find possible safe allocations of event at the ith venue
-            Venue venue = venues.get(i);
-            if (venue.canHost(event)) {
-                venues.remove(i); // remove venue from available venues
+        // find possible safe allocations of event at each venue that can
+        // host it
+        for (Venue venue : index.canHost(event)) {
+            if (used.add(venue)) { // remove venue from available venues
                 Set<Map<Event, Venue>> allocations = allocations(
-                        remainingEvents, venues);
+                        remainingEvents, index, used);
                 for (Map<Event, Venue> allocation : allocations) {
                     allocation.put(event, venue);
                     if (safeTraffic(allocation)) {
                         result.add(allocation);
                     }
                 }
-                venues.add(i, venue); // add venue back to available venues
+                used.remove(venue); // add venue back to available venues
             }
         }
         return result;
@@ -94,7 +150,7 @@ public class Allocator {
         Traffic result = new Traffic();
         for (Event event : allocation.keySet()) {
             Venue venue = allocation.get(event);
-            result.addTraffic(venue.getTraffic(event));
+            result.addTraffic(venue.getSharedTraffic(event));
         }
         return result;
     }
@@ -114,4 +170,114 @@ public class Allocator {
         return traffic.isSafe();
     }
 
+    /**
+     * The state of a backtracking search for a safe allocation.
+     */
+    private static class Search {
+
+        // the number of nodes between progress reports
+        private final static long PROGRESS_INTERVAL = 4096;
+
+        // the events to allocate, largest first
+        private final List<Event> events;
+        // the venues, smallest first
+        private final List<Venue> venues;
+        // the index in venues of the smallest venue that can host each event
+        private final int[] firstVenues;
+        // the traffic booked so far, including the traffic of the allocation
+        // under construction
+        private final CorridorLedger ledger;
+        // the monitor of the search
+        private final SearchMonitor monitor;
+        // whether each venue is used by the allocation under construction
+        private final boolean[] used;
+        // the index of the venue of each allocated event, or -1
+        private final int[] choices;
+        // the number of nodes explored so far
+        private long nodes;
+
+        private Search(List<Event> events, List<Venue> venues,
+                Traffic booked, SearchMonitor monitor) {
+            this.events = new ArrayList<>(events);
+            this.events.sort(Comparator.comparingInt(Event::getSize)
+                    .reversed());
+            // the venues indexed by capacity
+            VenueCapacityIndex index = new VenueCapacityIndex(venues);
+            this.venues = index.getVenues();
+            this.firstVenues = new int[events.size()];
+            for (int i = 0; i < firstVenues.length; i++) {
+                firstVenues[i] = index.indexOf(this.events.get(i).getSize());
+            }
+            this.ledger = new CorridorLedger();
+            this.ledger.reserve(booked);
+            this.monitor = monitor;
+            this.used = new boolean[venues.size()];
+            this.choices = new int[events.size()];
+            Arrays.fill(choices, -1);
+        }
+
+        /**
+         * Runs the search, returning the first safe allocation found, or null
+         * if there is none.
+         */
+        private Map<Event, Venue> run() {
+            // the number of events allocated so far
+            int index = 0;
+            while (index < events.size()) {
+                if (index < 0) {
+                    monitor.onProgress(nodes);
+                    return null; // every possibility has been tried
+                }
+                if (monitor.isCancelled()) {
+                    throw new CancellationException(
+                            "The allocation search was cancelled.");
+                }
+                if (++nodes % PROGRESS_INTERVAL == 0) {
+                    monitor.onProgress(nodes);
+                }
+                // the event whose venue is being chosen (again)
+                Event event = events.get(index);
+                if (choices[index] >= 0) {
+                    // undo the previous choice for the event
+                    used[choices[index]] = false;
+                    ledger.release(venues.get(choices[index]).getSharedTraffic(
+                            event));
+                }
+                choices[index] = nextVenue(event, Math.max(choices[index] + 1,
+                        firstVenues[index]));
+                if (choices[index] < 0) {
+                    index--; // backtrack
+                } else {
+                    used[choices[index]] = true;
+                    index++;
+                }
+            }
+            monitor.onProgress(nodes);
+            // the allocation found
+            Map<Event, Venue> result = new HashMap<>();
+            for (int i = 0; i < events.size(); i++) {
+                result.put(events.get(i), venues.get(choices[i]));
+            }
+            return result;
+        }
+
+        /**
+         * Returns the index of the first free venue, from the given index on,
+         * that can host the event safely (booking its traffic), or -1 if there
+         * is none. Every venue from the given index on must be large enough to
+         * host the event.
+         */
+        private int nextVenue(Event event, int from) {
+            for (int i = from; i < venues.size(); i++) {
+                // the venue being considered
+                Venue venue = venues.get(i);
+                if (!used[i] && ledger.tryReserve(venue.getSharedTraffic(
+                        event))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
 }
@@ -20,6 +20,9 @@ public class Corridor implements Comparable<Corridor> {
     private Location end;
     // the maximum capacity of the corridor -- integer units represent people
     private int capacity;
+    // the ordinal of this corridor in the CorridorRegistry, or -1 if it has
+    // not been looked up yet
+    private int ordinal = -1;
 
     /*
      * invariant:
@@ -91,6 +94,23 @@ public class Corridor implements Comparable<Corridor> {
         return capacity;
     }
 
+    /**
+     * Returns the ordinal of this corridor in the CorridorRegistry. Equal
+     * corridors have equal ordinals.
+     * 
+     * @ensure Returns the registry ordinal of this corridor (looking it up the
+     *         first time it is needed, and caching it afterwards).
+     */
+    int ordinal() {
+        // the racy cache is benign: every thread computes the same value
+        int result = ordinal;
+        if (result < 0) {
+            result = CorridorRegistry.ordinalOf(this);
+            ordinal = result;
+        }
+        return result;
+    }
+
     /**
      * <p>
      * This method returns a string of the form: <br>
@@ -0,0 +1,464 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * A thread-safe record of the amount of traffic that is currently booked on
+ * each traffic corridor.
+ * </p>
+ *
+ * <p>
+ * Traffic is booked with {@link #tryReserve(Traffic)}, which adds all of the
+ * given traffic if (and only if) no corridor would end up with more traffic
+ * than its capacity, and is given back with {@link #release(Traffic)}. Both
+ * operations are atomic: no other thread can observe or book against a
+ * partially applied reservation or release.
+ * </p>
+ *
+ * <p>
+ * Corridors are spread over a fixed number of lock stripes by their registry
+ * ordinal, and an operation only locks the stripes of the corridors it
+ * touches (always in ascending stripe order, so operations cannot deadlock).
+ * Reservations that touch disjoint stripes therefore proceed in parallel.
+ * Reading the load on a single corridor never locks.
+ * </p>
+ */
+public class CorridorLedger {
+
+    // the number of lock stripes (at most 64, so a long can hold a stripe set)
+    private final static int STRIPES = 64;
+    // the minimum length of the array of loads
+    private final static int INITIAL_LENGTH = 64;
+
+    // the stripe locks; corridor ordinal o is guarded by locks[o % STRIPES]
+    private final ReentrantLock[] locks;
+
+    /*
+     * The load on the corridor with ordinal o is loads.get(o) (or zero if o is
+     * past the end of the array). Loads are only written while holding the
+     * lock of the corridor's stripe, and the array is only replaced (by a
+     * larger copy) while holding every lock.
+     */
+    private volatile AtomicIntegerArray loads;
+
+    /*
+     * invariant:
+     *
+     * locks.length == STRIPES && loads != null &&
+     *
+     * every entry of loads is non-negative
+     */
+
+    /**
+     * Creates a new ledger in which no corridor has any traffic booked.
+     */
+    public CorridorLedger() {
+        locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        loads = new AtomicIntegerArray(Math.max(INITIAL_LENGTH,
+                CorridorRegistry.size()));
+    }
+
+    /**
+     * Returns the amount of traffic currently booked on the given corridor.
+     *
+     * @param corridor
+     *            the corridor whose load will be returned
+     * @return the traffic booked on the corridor
+     * @throws NullPointerException
+     *             if corridor is null
+     */
+    public int getLoad(Corridor corridor) {
+        if (corridor == null) {
+            throw new NullPointerException("corridor cannot be null");
+        }
+        return load(loads, corridor.ordinal());
+    }
+
+    /**
+     * Returns the amount of extra traffic that could currently be booked on
+     * the given corridor without exceeding its capacity.
+     *
+     * @param corridor
+     *            the corridor whose headroom will be returned
+     * @return the capacity of the corridor minus the traffic booked on it
+     * @throws NullPointerException
+     *             if corridor is null
+     */
+    public int getHeadroom(Corridor corridor) {
+        return corridor.getCapacity() - getLoad(corridor);
+    }
+
+    /**
+     * <p>
+     * Returns true if the given traffic could currently be booked without
+     * exceeding the capacity of any corridor, and false otherwise.
+     * </p>
+     *
+     * <p>
+     * The answer may be out of date as soon as it is returned if other threads
+     * are booking traffic: use {@link #tryReserve(Traffic)} to check and book
+     * in one step.
+     * </p>
+     *
+     * @param traffic
+     *            the traffic to check
+     * @return true if the traffic currently fits on every corridor
+     * @throws NullPointerException
+     *             if traffic is null
+     */
+    public boolean canReserve(Traffic traffic) {
+        // the loads at the time of the check
+        AtomicIntegerArray current = loads;
+        int[][] entries = entries(traffic);
+        for (int i = 0; i < entries[0].length; i++) {
+            if (!fits(current, entries[0][i], entries[1][i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Atomically books the given traffic, if doing so would not make the
+     * traffic on any corridor exceed the capacity of that corridor. If it
+     * would, nothing is booked.
+     *
+     * @param traffic
+     *            the traffic to book
+     * @return true if the traffic was booked, and false if it was not because
+     *         some corridor does not have enough headroom
+     * @throws NullPointerException
+     *             if traffic is null
+     */
+    public boolean tryReserve(Traffic traffic) {
+        int[][] entries = entries(traffic);
+        long stripes = lock(entries[0]);
+        try {
+            // the loads (the array can't be replaced while we hold a lock)
+            AtomicIntegerArray current = loads;
+            for (int i = 0; i < entries[0].length; i++) {
+                if (!fits(current, entries[0][i], entries[1][i])) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < entries[0].length; i++) {
+                current.addAndGet(entries[0][i], entries[1][i]);
+            }
+            return true;
+        } finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Atomically books the given traffic without checking corridor
+     * capacities.
+     *
+     * @param traffic
+     *            the traffic to book
+     * @throws NullPointerException
+     *             if traffic is null
+     */
+    public void reserve(Traffic traffic) {
+        int[][] entries = entries(traffic);
+        long stripes = lock(entries[0]);
+        try {
+            // the loads (the array can't be replaced while we hold a lock)
+            AtomicIntegerArray current = loads;
+            for (int i = 0; i < entries[0].length; i++) {
+                current.addAndGet(entries[0][i], entries[1][i]);
+            }
+        } finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Atomically gives back the given traffic, which must previously have been
+     * booked. If some corridor has less traffic booked than the amount being
+     * released, nothing is released.
+     *
+     * @param traffic
+     *            the traffic to release
+     * @throws NullPointerException
+     *             if traffic is null
+     * @throws InvalidTrafficException
+     *             if releasing the traffic would make the load on some
+     *             corridor negative
+     */
+    public void release(Traffic traffic) {
+        int[][] entries = entries(traffic);
+        long stripes = lock(entries[0]);
+        try {
+            // the loads (the array can't be replaced while we hold a lock)
+            AtomicIntegerArray current = loads;
+            for (int i = 0; i < entries[0].length; i++) {
+                if (load(current, entries[0][i]) < entries[1][i]) {
+                    throw new InvalidTrafficException(
+                            "Cannot release more traffic than is booked.");
+                }
+            }
+            for (int i = 0; i < entries[0].length; i++) {
+                current.addAndGet(entries[0][i], -entries[1][i]);
+            }
+        } finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Atomically gives back the traffic freed and books the traffic booked in
+     * its place, if doing so would not make the traffic on any corridor
+     * exceed the capacity of that corridor. The traffic freed counts towards
+     * the headroom for the traffic booked, and no other thread can take that
+     * headroom in between. If the traffic booked does not fit, nothing is
+     * changed.
+     *
+     * @param freed
+     *            the traffic to give back, which must previously have been
+     *            booked
+     * @param booked
+     *            the traffic to book
+     * @return true if the traffic was replaced, and false if it was not
+     *         because some corridor does not have enough headroom
+     * @throws NullPointerException
+     *             if freed or booked is null
+     * @throws InvalidTrafficException
+     *             if giving back the traffic freed would make the load on some
+     *             corridor negative
+     */
+    public boolean tryReplace(Traffic freed, Traffic booked) {
+        int[][] given = entries(freed);
+        int[][] taken = entries(booked);
+        long stripes = lock(union(given[0], taken[0]));
+        try {
+            // the loads (the array can't be replaced while we hold a lock)
+            AtomicIntegerArray current = loads;
+            for (int i = 0; i < given[0].length; i++) {
+                if (load(current, given[0][i]) < given[1][i]) {
+                    throw new InvalidTrafficException(
+                            "Cannot release more traffic than is booked.");
+                }
+            }
+            // the next corridor of the traffic freed to compare against
+            int next = 0;
+            for (int i = 0; i < taken[0].length; i++) {
+                while (next < given[0].length && given[0][next] < taken[0][i]) {
+                    next++;
+                }
+                // the traffic freed on the same corridor
+                int released = next < given[0].length
+                        && given[0][next] == taken[0][i] ? given[1][next] : 0;
+                if (!fits(current, taken[0][i], taken[1][i] - released)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < given[0].length; i++) {
+                current.addAndGet(given[0][i], -given[1][i]);
+            }
+            for (int i = 0; i < taken[0].length; i++) {
+                current.addAndGet(taken[0][i], taken[1][i]);
+            }
+            return true;
+        } finally {
+            unlock(stripes);
+        }
+    }
+
+    /**
+     * Removes all booked traffic from the ledger.
+     */
+    public void clear() {
+        lockAll();
+        try {
+            loads = new AtomicIntegerArray(loads.length());
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the traffic booked on each corridor that has some
+     * traffic booked, in the natural ordering of corridors.
+     *
+     * @return a new map from each corridor with a positive load to its load
+     */
+    public SortedMap<Corridor, Integer> getLoads() {
+        // the snapshot of the loads
+        SortedMap<Corridor, Integer> result = new TreeMap<>();
+        lockAll();
+        try {
+            for (int ordinal = 0; ordinal < loads.length(); ordinal++) {
+                if (loads.get(ordinal) > 0) {
+                    result.put(CorridorRegistry.corridorAt(ordinal), loads.get(
+                            ordinal));
+                }
+            }
+        } finally {
+            unlockAll();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a consistent snapshot of all of the traffic booked in the ledger.
+     *
+     * @return a new Traffic object recording the load on every corridor
+     */
+    public Traffic getTraffic() {
+        // the snapshot of the loads
+        Traffic result = new Traffic();
+        for (Map.Entry<Corridor, Integer> entry : getLoads().entrySet()) {
+            result.updateTraffic(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the load on the corridor with the given ordinal in the given
+     * array of loads.
+     */
+    private static int load(AtomicIntegerArray current, int ordinal) {
+        return ordinal < current.length() ? current.get(ordinal) : 0;
+    }
+
+    /**
+     * Returns true if amount more traffic fits on the corridor with the given
+     * ordinal, given the loads in current.
+     */
+    private static boolean fits(AtomicIntegerArray current, int ordinal,
+            int amount) {
+        return (long) load(current, ordinal) + amount <= CorridorRegistry
+                .corridorAt(ordinal).getCapacity();
+    }
+
+    /**
+     * Returns the corridors with traffic in the given traffic object: element
+     * [0] holds their ordinals in ascending order, and element [1] the
+     * corresponding amounts.
+     *
+     * @require traffic != null
+     */
+    private static int[][] entries(Traffic traffic) {
+        int[][] result = new int[2][traffic.entryCount()];
+        // the number of entries copied so far
+        int[] count = new int[1];
+        traffic.forEachEntry((ordinal, amount) -> {
+            result[0][count[0]] = ordinal;
+            result[1][count[0]++] = amount;
+        });
+        return result;
+    }
+
+    /**
+     * Returns the ordinals that are in either of the given arrays, in
+     * ascending order.
+     *
+     * @require first and second are sorted in ascending order
+     */
+    private static int[] union(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        // the positions in first, second and result
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length
+                    && first[i] < second[j])) {
+                result[k++] = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                result[k++] = second[j++];
+            } else {
+                result[k++] = first[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /**
+     * Locks the stripes of all of the given corridor ordinals, in ascending
+     * stripe order, first making sure the loads array can hold every one of
+     * the ordinals.
+     *
+     * @require ordinals is sorted in ascending order
+     * @ensure Returns the set of stripes locked (bit s set for stripe s).
+     */
+    private long lock(int[] ordinals) {
+        if (ordinals.length > 0 && ordinals[ordinals.length - 1] >= loads
+                .length()) {
+            grow(ordinals[ordinals.length - 1] + 1);
+        }
+        // the set of stripes to lock
+        long stripes = 0;
+        for (int ordinal : ordinals) {
+            stripes |= 1L << (ordinal % STRIPES);
+        }
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if ((stripes & (1L << stripe)) != 0) {
+                locks[stripe].lock();
+            }
+        }
+        return stripes;
+    }
+
+    /**
+     * Unlocks the given set of stripes.
+     */
+    private void unlock(long stripes) {
+        for (int stripe = STRIPES - 1; stripe >= 0; stripe--) {
+            if ((stripes & (1L << stripe)) != 0) {
+                locks[stripe].unlock();
+            }
+        }
+    }
+
+    /**
+     * Locks every stripe, in ascending order.
+     */
+    private void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Unlocks every stripe.
+     */
+    private void unlockAll() {
+        for (int stripe = STRIPES - 1; stripe >= 0; stripe--) {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Replaces the loads array with a copy that has room for at least the
+     * given number of corridors.
+     */
+    private void grow(int length) {
+        lockAll();
+        try {
+            // the loads array being replaced
+            AtomicIntegerArray current = loads;
+            if (length <= current.length()) {
+                return; // another thread grew it first
+            }
+            AtomicIntegerArray larger = new AtomicIntegerArray(Math.max(
+                    length, Math.max(current.length() * 2, CorridorRegistry
+                            .size())));
+            for (int ordinal = 0; ordinal < current.length(); ordinal++) {
+                larger.set(ordinal, current.get(ordinal));
+            }
+            loads = larger;
+        } finally {
+            unlockAll();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * A process-wide registry that assigns each distinct traffic corridor a small,
+ * dense, non-negative integer ordinal.
+ * </p>
+ *
+ * <p>
+ * Two corridors that are equal (according to the equals method of the Corridor
+ * class) always receive the same ordinal, and the ordinal of a corridor never
+ * changes once it has been assigned. Ordinals are allocated in registration
+ * order starting from zero, so they can be used directly as array indexes.
+ * </p>
+ *
+ * <p>
+ * Corridors are never removed from the registry: the number of registered
+ * corridors is bounded by the number of distinct corridors in the venue
+ * catalogs loaded by the program.
+ * </p>
+ */
+final class CorridorRegistry {
+
+    // initial length of the ordinal to corridor table
+    private final static int INITIAL_CAPACITY = 64;
+
+    // mapping from each registered corridor to its ordinal
+    private final static Map<Corridor, Integer> ordinals =
+            new ConcurrentHashMap<>();
+
+    /*
+     * The registered corridors, indexed by ordinal. The array is replaced
+     * (never shrunk) when it runs out of room, and the reference is re-written
+     * after every registration so that readers that see the ordinal also see
+     * the corridor stored at that index.
+     */
+    private static volatile Corridor[] corridors =
+            new Corridor[INITIAL_CAPACITY];
+
+    // the number of registered corridors
+    private static volatile int size = 0;
+
+    /*
+     * invariant:
+     *
+     * 0 <= size <= corridors.length &&
+     *
+     * ordinals.size() == size &&
+     *
+     * for each i in [0, size), ordinals.get(corridors[i]) == i
+     */
+
+    private CorridorRegistry() {
+        // static utility class
+    }
+
+    /**
+     * Returns the ordinal of the given corridor, registering it if it has not
+     * been seen before.
+     *
+     * @require corridor != null
+     * @ensure Returns the unique ordinal of the given corridor. Equal corridors
+     *         always have the same ordinal.
+     */
+    static int ordinalOf(Corridor corridor) {
+        Integer ordinal = ordinals.get(corridor);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        return register(corridor);
+    }
+
+    /**
+     * Returns the canonical corridor with the given ordinal.
+     *
+     * @require 0 <= ordinal < size()
+     * @ensure Returns the first registered corridor that was assigned the given
+     *         ordinal.
+     */
+    static Corridor corridorAt(int ordinal) {
+        return corridors[ordinal];
+    }
+
+    /**
+     * Returns the number of corridors that have been registered so far. Every
+     * ordinal handed out by this registry is less than this value.
+     *
+     * @ensure Returns the number of registered corridors.
+     */
+    static int size() {
+        return size;
+    }
+
+    /**
+     * Assigns the next free ordinal to the given corridor, unless another
+     * thread registered an equal corridor first.
+     *
+     * @require corridor != null
+     * @ensure Returns the ordinal of the given corridor.
+     */
+    private static synchronized int register(Corridor corridor) {
+        Integer ordinal = ordinals.get(corridor);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        // the table of corridors, enlarged if it is full
+        Corridor[] table = corridors;
+        if (size == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[size] = corridor;
+        // publish the table (and the new entry) before the ordinal
+        corridors = table;
+        ordinals.put(corridor, size);
+        size = size + 1;
+        return size - 1;
+    }
+
+}
@@ -0,0 +1,214 @@
+package planner;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Provides methods to read in events from a text file, either all at once as
+ * a list, or in batches as the file is read.
+ */
+public class EventReader {
+
+    // the batch size used by read(String)
+    public final static int DEFAULT_BATCH_SIZE = 1024;
+    // the separator between the name and the size of an event
+    private final static String SEPARATOR = ", ";
+
+    /**
+     * <p>
+     * Reads a text file called fileName that describes events, and returns a
+     * list containing each of the different events read from the file, in the
+     * order that they first appear in the file.
+     * </p>
+     *
+     * <p>
+     * Each line of the file describes one event, and is a string of the form
+     * <br>
+     * <br>
+     * "NAME, SIZE"<br>
+     * <br>
+     * where NAME is the name of the event and SIZE is a positive integer (with
+     * no leading or trailing whitespace) denoting the number of people who are
+     * expected to attend it. The name is everything before the last ", " on
+     * the line, so it may itself contain ", ", but it may not be the empty
+     * string. The file may not contain empty lines.
+     * </p>
+     *
+     * <p>
+     * A line describing an event that is equal to an event earlier in the file
+     * is not an error: the repeated event is skipped. Like venue files, event
+     * files may be compressed with gzip or zlib.
+     * </p>
+     *
+     * @param fileName
+     *            the name of the file to read from.
+     * @return a list of the different events in the file, in the order in
+     *         which they first appear in the file.
+     * @throws IOException
+     *             if there is an error reading from the input file.
+     * @throws FormatException
+     *             if a line of the file is not in the format described above.
+     *             The exception message identifies the line where the problem
+     *             was detected.
+     */
+    public static List<Event> read(String fileName) throws IOException,
+            FormatException {
+        // the events read from the file
+        List<Event> events = new ArrayList<>();
+        read(Paths.get(fileName), DEFAULT_BATCH_SIZE, events::addAll);
+        return events;
+    }
+
+    /**
+     * <p>
+     * Reads the events in the given file (in the format described in
+     * read(String)), passing them to the consumer in batches as the file is
+     * read, so that the memory used does not depend on the size of the file
+     * (apart from the set used to skip repeated events).
+     * </p>
+     *
+     * <p>
+     * Each batch holds batchSize events, except the last one, which may hold
+     * fewer. Batches are passed to the consumer in file order, on the calling
+     * thread. If a FormatException is thrown, the batches before the line with
+     * the error have already been passed to the consumer.
+     * </p>
+     *
+     * @param path
+     *            the file to read from.
+     * @param batchSize
+     *            the number of events in each batch.
+     * @param consumer
+     *            the consumer of each batch of events.
+     * @return the total number of events passed to the consumer.
+     * @throws IllegalArgumentException
+     *             if batchSize is less than one.
+     * @throws NullPointerException
+     *             if path or consumer is null.
+     * @throws IOException
+     *             if there is an error reading from the input file.
+     * @throws FormatException
+     *             if a line of the file is not in the format described in
+     *             read(String).
+     */
+    public static int read(Path path, int batchSize,
+            Consumer<? super List<Event>> consumer) throws IOException,
+            FormatException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "The batch size must be at least one.");
+        }
+        if (consumer == null) {
+            throw new NullPointerException("consumer cannot be null");
+        }
+        try (BufferedReader in = new BufferedReader(VenueReader.openReader(
+                path))) {
+            return read(in, batchSize, consumer);
+        }
+    }
+
+    /**
+     * Reads the events from the given reader (in the format described in
+     * read(String)) until the end of its input, passing them to the consumer
+     * in batches as described in read(Path, int, Consumer). This is for events
+     * that do not come from a file, such as the body of a network request.
+     * The reader is not closed.
+     *
+     * @param in
+     *            the reader to read the events from.
+     * @param batchSize
+     *            the number of events in each batch.
+     * @param consumer
+     *            the consumer of each batch of events.
+     * @return the total number of events passed to the consumer.
+     * @throws IllegalArgumentException
+     *             if batchSize is less than one.
+     * @throws NullPointerException
+     *             if in or consumer is null.
+     * @throws IOException
+     *             if there is an error reading from the reader.
+     * @throws FormatException
+     *             if a line of the input is not in the format described in
+     *             read(String).
+     */
+    public static int read(BufferedReader in, int batchSize,
+            Consumer<? super List<Event>> consumer) throws IOException,
+            FormatException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "The batch size must be at least one.");
+        }
+        if (consumer == null) {
+            throw new NullPointerException("consumer cannot be null");
+        }
+        // the events read so far, used to skip repeated events
+        Set<Event> seen = new HashSet<>();
+        // the batch being filled
+        List<Event> batch = new ArrayList<>(batchSize);
+        // the total number of events passed to the consumer
+        int count = 0;
+        // the number of the line being read, and its contents
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            Event event = readEvent(lineNumber, line);
+            if (!seen.add(event)) {
+                continue;
+            }
+            batch.add(event);
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                count += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+            count += batch.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the event described by the given line of the file.
+     *
+     * @throws FormatException
+     *             if the line is not of the form "NAME, SIZE".
+     */
+    private static Event readEvent(int lineNumber, String line)
+            throws FormatException {
+        if (line.isEmpty()) {
+            throw new FormatException("Line " + lineNumber
+                    + ": event expected, but line is empty.");
+        }
+        // the position of the separator before the size
+        int separator = line.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new FormatException("Line " + lineNumber
+                    + ": event size is missing.");
+        }
+        if (separator == 0) {
+            throw new FormatException("Line " + lineNumber
+                    + ": event name cannot be the empty string.");
+        }
+        // the size of the event
+        int size;
+        try {
+            size = Integer.parseInt(line.substring(separator + SEPARATOR
+                    .length()));
+        } catch (NumberFormatException e) {
+            throw new FormatException("Line " + lineNumber
+                    + ": invalid event size.");
+        }
+        try {
+            return new Event(line.substring(0, separator), size);
+        } catch (IllegalArgumentException e) {
+            throw new FormatException("Line " + lineNumber + ": " + e
+                    .getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,266 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An index of the venues that could still host a selected event: venues that
+ * are free, large enough to host the event, and whose traffic for the event
+ * fits in the headroom left on every corridor by the traffic booked in a
+ * ledger.
+ * </p>
+ *
+ * <p>
+ * The feasible venues are ranked by their slack: the smallest amount of
+ * headroom any of their corridors would have left after the event was
+ * allocated to them (venues that cause no traffic have unlimited slack).
+ * Venues with more slack come first.
+ * </p>
+ *
+ * <p>
+ * The ranking is computed once when an event is selected, and then
+ * maintained incrementally: when the traffic on some corridors changes, only
+ * the venues that use those corridors (found through an inverted index from
+ * corridors to venues) are re-ranked. The index does not watch the ledger:
+ * its owner must call {@link #trafficChanged(Traffic)} after booking or
+ * releasing traffic, and {@link #setAllocated(Venue, boolean)} when a venue is
+ * allocated or freed.
+ * </p>
+ */
+public class FeasibilityIndex {
+
+    // the slack of a venue that is not feasible for the selected event
+    private final static int INFEASIBLE = Integer.MIN_VALUE;
+
+    // the indexed venues
+    private final List<Venue> venues;
+    // the position of each venue in venues
+    private final Map<Venue, Integer> positions;
+    // the venues sorted by capacity
+    private final VenueCapacityIndex capacities;
+    // the ledger holding the booked traffic
+    private final CorridorLedger ledger;
+    // the positions of the venues with traffic on the corridor with ordinal
+    // o are users[userStarts[o]] to users[userStarts[o + 1] - 1]
+    private final int[] userStarts;
+    private final int[] users;
+    // whether each venue is allocated
+    private final boolean[] allocated;
+    // the slack of each venue for the selected event, or INFEASIBLE
+    private final int[] slack;
+    // the positions of the feasible venues, most slack first
+    private final TreeSet<Integer> ranking;
+    // the selected event, or null if no event is selected
+    private Event event;
+
+    /*
+     * invariant:
+     *
+     * venues, positions, capacities, ledger, userStarts, users, allocated,
+     * slack and ranking are not null &&
+     *
+     * ranking holds exactly the positions p with slack[p] != INFEASIBLE &&
+     *
+     * if event == null, every slack is INFEASIBLE, and otherwise slack[p] is
+     * the slack of venue p for event given the ledger's loads (provided the
+     * owner has reported every change to the ledger)
+     */
+
+    /**
+     * Creates an index of the given venues, none of which is allocated, with
+     * no event selected.
+     *
+     * @param venues
+     *            the venues to index
+     * @param ledger
+     *            the ledger holding the traffic that is booked
+     * @throws NullPointerException
+     *             if venues or ledger is null, or venues contains null
+     */
+    public FeasibilityIndex(List<Venue> venues, CorridorLedger ledger) {
+        if (ledger == null) {
+            throw new NullPointerException("ledger cannot be null");
+        }
+        this.venues = new ArrayList<>(venues);
+        this.ledger = ledger;
+        positions = new HashMap<>(this.venues.size() * 2);
+        for (int i = 0; i < this.venues.size(); i++) {
+            positions.put(this.venues.get(i), i);
+        }
+        capacities = new VenueCapacityIndex(this.venues);
+        allocated = new boolean[this.venues.size()];
+        slack = new int[this.venues.size()];
+        Arrays.fill(slack, INFEASIBLE);
+        ranking = new TreeSet<>((first, second) -> slack[first]
+                != slack[second] ? Integer.compare(slack[second], slack[first])
+                        : Integer.compare(first, second));
+
+        // build the inverted index in two passes: count, then fill
+        userStarts = new int[CorridorRegistry.size() + 1];
+        for (Venue venue : this.venues) {
+            venue.getCapacityTraffic().forEachEntry((ordinal,
+                    amount) -> userStarts[ordinal + 1]++);
+        }
+        for (int o = 0; o + 1 < userStarts.length; o++) {
+            userStarts[o + 1] += userStarts[o];
+        }
+        users = new int[userStarts[userStarts.length - 1]];
+        // the next free slot for each corridor's users
+        int[] next = Arrays.copyOf(userStarts, userStarts.length - 1);
+        for (int i = 0; i < this.venues.size(); i++) {
+            // the position of the venue, for use in the lambda
+            int position = i;
+            this.venues.get(i).getCapacityTraffic().forEachEntry((ordinal,
+                    amount) -> users[next[ordinal]++] = position);
+        }
+    }
+
+    /**
+     * Selects the event whose feasible venues will be returned, ranking every
+     * venue for it. Selecting the event that is already selected does
+     * nothing.
+     *
+     * @param event
+     *            the event to select, or null to select no event
+     */
+    public synchronized void select(Event event) {
+        if (Objects.equals(event, this.event)) {
+            return;
+        }
+        this.event = event;
+        refresh();
+    }
+
+    /**
+     * Returns the selected event.
+     *
+     * @return the selected event, or null if no event is selected
+     */
+    public synchronized Event getSelectedEvent() {
+        return event;
+    }
+
+    /**
+     * Returns the venues that can currently host the selected event, most
+     * slack first.
+     *
+     * @return a new list of the feasible venues, ranked by slack (empty if no
+     *         event is selected)
+     */
+    public synchronized List<Venue> getFeasibleVenues() {
+        // the ranked venues
+        List<Venue> result = new ArrayList<>(ranking.size());
+        for (int position : ranking) {
+            result.add(venues.get(position));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the venues that can currently host the given event, most slack
+     * first, selecting the event first if it isn't already selected.
+     *
+     * @param event
+     *            the event to find venues for
+     * @return a new list of the feasible venues, ranked by slack
+     */
+    public synchronized List<Venue> getFeasibleVenues(Event event) {
+        select(event);
+        return getFeasibleVenues();
+    }
+
+    /**
+     * Records that the given venue has been allocated (and so can't host
+     * another event), or freed. Venues that are not indexed are ignored.
+     *
+     * @param venue
+     *            the venue that was allocated or freed
+     * @param isAllocated
+     *            whether the venue is now allocated
+     */
+    public synchronized void setAllocated(Venue venue, boolean isAllocated) {
+        // the position of the venue
+        Integer position = positions.get(venue);
+        if (position == null) {
+            return;
+        }
+        allocated[position] = isAllocated;
+        rank(position);
+    }
+
+    /**
+     * Re-ranks the venues that use any of the corridors of the given traffic,
+     * which has just been booked or released in the ledger.
+     *
+     * @param traffic
+     *            the traffic that was booked or released
+     * @throws NullPointerException
+     *             if traffic is null
+     */
+    public synchronized void trafficChanged(Traffic traffic) {
+        if (event == null) {
+            return;
+        }
+        traffic.forEachEntry((ordinal, amount) -> {
+            if (ordinal + 1 < userStarts.length) {
+                for (int i = userStarts[ordinal]; i < userStarts[ordinal
+                        + 1]; i++) {
+                    rank(users[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Re-ranks every venue, e.g. after the ledger has been cleared or
+     * replaced. Only the venues large enough to host the selected event are
+     * examined.
+     */
+    public synchronized void refresh() {
+        ranking.clear();
+        Arrays.fill(slack, INFEASIBLE);
+        if (event != null) {
+            for (Venue venue : capacities.canHost(event)) {
+                rank(positions.get(venue));
+            }
+        }
+    }
+
+    /**
+     * Recomputes the slack of the venue at the given position for the
+     * selected event, and moves it to its place in the ranking.
+     */
+    private void rank(int position) {
+        if (slack[position] != INFEASIBLE) {
+            ranking.remove(position);
+        }
+        slack[position] = computeSlack(position);
+        if (slack[position] != INFEASIBLE) {
+            ranking.add(position);
+        }
+    }
+
+    /**
+     * Returns the slack of the venue at the given position for the selected
+     * event, or INFEASIBLE if it can't host the event.
+     */
+    private int computeSlack(int position) {
+        // the venue whose slack is computed
+        Venue venue = venues.get(position);
+        if (event == null || allocated[position] || !venue.canHost(event)) {
+            return INFEASIBLE;
+        }
+        // the smallest headroom left so far (element 0)
+        int[] result = { Integer.MAX_VALUE };
+        venue.getSharedTraffic(event).forEachEntry((ordinal, amount) -> {
+            if (result[0] != INFEASIBLE) {
+                // the headroom left after the venue's traffic is added
+                int left = ledger.getHeadroom(CorridorRegistry.corridorAt(
+                        ordinal)) - amount;
+                result[0] = left < 0 ? INFEASIBLE : Math.min(result[0], left);
+            }
+        });
+        return result[0];
+    }
+
+}
@@ -0,0 +1,126 @@
+package planner;
+
+/**
+ * <p>
+ * A compact set of 64-bit fingerprints (such as those returned by
+ * {@link Venue#getFingerprint()}), stored in an open-addressing hash table of
+ * primitive longs.
+ * </p>
+ * 
+ * <p>
+ * The set uses about 16 bytes per element, and no objects per element, so it
+ * can remember millions of venues in far less memory than a set of the venues
+ * themselves. Because only fingerprints are stored, two different venues that
+ * happen to share a fingerprint are treated as the same, which is
+ * astronomically unlikely for 64-bit fingerprints.
+ * </p>
+ */
+final class FingerprintSet {
+
+    // the initial number of slots in the table (a power of two)
+    private final static int INITIAL_CAPACITY = 64;
+
+    // the table of fingerprints; EMPTY marks a free slot
+    private long[] table;
+    // the value used to mark free slots
+    private final static long EMPTY = 0L;
+    // whether the fingerprint EMPTY itself is in the set
+    private boolean containsEmpty;
+    // the number of fingerprints in the table (not counting EMPTY)
+    private int size;
+
+    /*
+     * invariant:
+     * 
+     * table != null && table.length is a power of two && size < table.length
+     * / 2 && size is the number of slots of table that are not EMPTY
+     */
+
+    /**
+     * Creates a new, empty set.
+     */
+    FingerprintSet() {
+        table = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds the given fingerprint to the set.
+     * 
+     * @ensure Returns true if the fingerprint was not already in the set (and
+     *         has now been added), and false if it was already there.
+     */
+    boolean add(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            return added;
+        }
+        if ((size + 1) * 2 > table.length) {
+            resize();
+        }
+        // the slot being probed
+        int slot = slot(fingerprint, table.length);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        table[slot] = fingerprint;
+        size++;
+        return true;
+    }
+
+    /**
+     * Returns true if the given fingerprint is in the set.
+     */
+    boolean contains(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            return containsEmpty;
+        }
+        // the slot being probed
+        int slot = slot(fingerprint, table.length);
+        while (table[slot] != EMPTY) {
+            if (table[slot] == fingerprint) {
+                return true;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of fingerprints in the set.
+     */
+    int size() {
+        return size + (containsEmpty ? 1 : 0);
+    }
+
+    /**
+     * Doubles the size of the table, re-inserting every fingerprint.
+     */
+    private void resize() {
+        // the table being replaced
+        long[] old = table;
+        table = new long[old.length * 2];
+        for (long fingerprint : old) {
+            if (fingerprint != EMPTY) {
+                // the slot being probed
+                int slot = slot(fingerprint, table.length);
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & (table.length - 1);
+                }
+                table[slot] = fingerprint;
+            }
+        }
+    }
+
+    /**
+     * Returns the home slot of the given fingerprint in a table of the given
+     * length (a power of two).
+     */
+    private static int slot(long fingerprint, int length) {
+        return (int) Traffic.mix(fingerprint) & (length - 1);
+    }
+
+}
@@ -0,0 +1,41 @@
+package planner;
+
+/**
+ * Helpers for writing JSON, shared by the command-line program and the HTTP
+ * service, which build their JSON output by hand.
+ */
+public final class Json {
+
+    private Json() {
+        // static utility class
+    }
+
+    /**
+     * Returns the given value as a JSON string literal, with quotes,
+     * backslashes and control characters escaped.
+     *
+     * @param value
+     *            the string to quote
+     * @return the JSON string literal for value
+     * @throws NullPointerException
+     *             if value is null
+     */
+    public static String quote(String value) {
+        // the literal being built
+        StringBuilder result = new StringBuilder(value.length() + 2);
+        result.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            // the next character of the value
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+}
@@ -0,0 +1,343 @@
+package planner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * <p>
+ * Provides a method to read in a list of venues from a text file by
+ * memory-mapping the file and tokenising its bytes directly.
+ * </p>
+ * 
+ * <p>
+ * This reader accepts the same file format as {@link VenueReader}, produces
+ * the same list of venues, and reports format errors with the same
+ * FormatException messages and line numbers, but it does not create a Scanner
+ * (or any regular expression matching) per line or per corridor. It is
+ * intended for large venue files; the file must be in an ASCII-compatible
+ * character set, and no larger than 2GB.
+ * </p>
+ * 
+ * <p>
+ * Very large files can also be read in parallel with readParallel, which
+ * splits the file into chunks at the empty lines that separate venue
+ * descriptions and parses the chunks concurrently.
+ * </p>
+ * 
+ * <p>
+ * A compressed file cannot be parsed in place, so a file that starts with a
+ * gzip or zlib header is read (sequentially, while decompressing it) with
+ * {@link VenueReader#read(String)} instead.
+ * </p>
+ */
+public class MappedVenueReader {
+
+    // readParallel(String) never makes chunks smaller than this many bytes
+    private final static int MIN_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * Reads a text file called fileName that describes the venues in a
+     * municipality, and returns a list containing each of the venues read from
+     * the file, in the order that they appear in the file.
+     * 
+     * The format of the file is described in {@link VenueReader#read(String)}.
+     * 
+     * @param fileName
+     *            the name of the file to read from.
+     * @return a list of the venues from the file, in the order in which they
+     *         appear in the file.
+     * @throws IOException
+     *             if there is an error reading from the input file, or the
+     *             file is too large to be mapped.
+     * @throws FormatException
+     *             if there is an error with the input format. The
+     *             FormatExceptions thrown have a meaningful message that
+     *             accurately describes the problem with the input file format,
+     *             including the line of the file where the problem was
+     *             detected.
+     */
+    public static List<Venue> read(String fileName) throws IOException,
+            FormatException {
+        MappedByteBuffer buffer = map(Paths.get(fileName));
+        if (isCompressed(buffer)) {
+            return VenueReader.read(fileName);
+        }
+        // the venues and the line that completed each of them
+        List<Venue> venues = new ArrayList<>();
+        List<Integer> endLines = new ArrayList<>();
+        new VenueBlockParser(buffer, 0, buffer.limit(), 0, Charset
+                .defaultCharset()).parse(venues, endLines);
+        checkDuplicates(venues, endLines);
+        return venues;
+    }
+
+    /**
+     * <p>
+     * Reads the venues in the given file in the same way as read(String), but
+     * parses different parts of the file in parallel, using as many chunks as
+     * there are available processors (for files larger than a few megabytes).
+     * </p>
+     * 
+     * <p>
+     * The result, including any FormatException, is the same as if the file
+     * was read by read(String).
+     * </p>
+     * 
+     * @param fileName
+     *            the name of the file to read from.
+     * @return a list of the venues from the file, in the order in which they
+     *         appear in the file.
+     * @throws IOException
+     *             if there is an error reading from the input file, or the
+     *             file is too large to be mapped.
+     * @throws FormatException
+     *             if there is an error with the input format.
+     */
+    public static List<Venue> readParallel(String fileName)
+            throws IOException, FormatException {
+        // the size of the file
+        long size = Files.size(Paths.get(fileName));
+        int chunks = (int) Math.max(1, Math.min(Runtime.getRuntime()
+                .availableProcessors(), size / MIN_CHUNK_BYTES));
+        return readParallel(fileName, chunks);
+    }
+
+    /**
+     * <p>
+     * Reads the venues in the given file in the same way as read(String), but
+     * splits the file into (at most) the given number of chunks and parses the
+     * chunks in parallel.
+     * </p>
+     * 
+     * <p>
+     * Each chunk ends just after an empty line, so it holds a whole number of
+     * venue descriptions. The venues of the chunks are merged in file order,
+     * and duplicates are detected across chunks. If the file has format
+     * errors, the error reported is the first one in the file (the one that
+     * read(String) would report), with its line number in the whole file.
+     * </p>
+     * 
+     * @param fileName
+     *            the name of the file to read from.
+     * @param chunks
+     *            the maximum number of chunks to split the file into.
+     * @return a list of the venues from the file, in the order in which they
+     *         appear in the file.
+     * @throws IllegalArgumentException
+     *             if chunks is less than one.
+     * @throws IOException
+     *             if there is an error reading from the input file, or the
+     *             file is too large to be mapped.
+     * @throws FormatException
+     *             if there is an error with the input format.
+     */
+    public static List<Venue> readParallel(String fileName, int chunks)
+            throws IOException, FormatException {
+        if (chunks < 1) {
+            throw new IllegalArgumentException(
+                    "The number of chunks must be at least one.");
+        }
+        MappedByteBuffer buffer = map(Paths.get(fileName));
+        if (isCompressed(buffer)) {
+            return VenueReader.read(fileName);
+        }
+        // the charset used to decode names
+        Charset charset = Charset.defaultCharset();
+
+        // split the file into chunks that end just after an empty line
+        List<Chunk> parts = new ArrayList<>();
+        // the start of the next chunk
+        int start = 0;
+        for (int i = 1; i <= chunks && start < buffer.limit(); i++) {
+            int end = (i == chunks ? buffer.limit() : nextBoundary(buffer,
+                    Math.max(start, (int) ((long) buffer.limit() * i
+                            / chunks))));
+            if (end > start) {
+                parts.add(new Chunk(start, end));
+                start = end;
+            }
+        }
+
+        // parse the chunks concurrently, each counting lines from zero
+        parts.parallelStream().forEach(chunk -> chunk.parse(buffer, 0,
+                charset));
+
+        // merge in file order, checking for duplicates as we go
+        List<Venue> venues = new ArrayList<>();
+        // the venues merged so far
+        Set<Venue> seen = new HashSet<>();
+        // the number of lines in the chunks merged so far
+        int linesBefore = 0;
+        for (Chunk chunk : parts) {
+            // duplicates among the venues read before a format error in this
+            // chunk come before the error in the file
+            for (int i = 0; i < chunk.venues.size(); i++) {
+                if (!seen.add(chunk.venues.get(i))) {
+                    throw new FormatException("Line " + (linesBefore
+                            + chunk.endLines.get(i))
+                            + ": duplicate venue detected.");
+                }
+                venues.add(chunk.venues.get(i));
+            }
+            if (chunk.error != null) {
+                // parse the chunk again to number its error correctly
+                chunk.parse(buffer, linesBefore, charset);
+                throw chunk.error;
+            }
+            linesBefore += chunk.lines;
+        }
+        return venues;
+    }
+
+    /**
+     * Maps the whole of the given file into memory, read-only.
+     * 
+     * @require path != null
+     * @ensure Returns a buffer holding the contents of the file.
+     * @throws IOException
+     *             if the file can't be read, or is larger than 2GB.
+     */
+    static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path
+                        + " is too large to be memory-mapped.");
+            }
+            // the mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                    .size());
+        }
+    }
+
+    /**
+     * Checks that no venue appears twice in the given list, in the same way as
+     * VenueReader.read does (i.e. the error is reported at the line that
+     * completed the second occurrence of the venue).
+     * 
+     * @require venues != null && endLines != null && venues.size() ==
+     *          endLines.size()
+     * @throws FormatException
+     *             if the list contains two equal venues.
+     */
+    static void checkDuplicates(List<Venue> venues, List<Integer> endLines)
+            throws FormatException {
+        // the venues seen so far
+        Set<Venue> seen = new HashSet<>(venues.size() * 2);
+        for (int i = 0; i < venues.size(); i++) {
+            if (!seen.add(venues.get(i))) {
+                throw new FormatException("Line " + endLines.get(i)
+                        + ": duplicate venue detected.");
+            }
+        }
+    }
+
+    /**
+     * Returns true if the buffer starts with the header of a compressed
+     * stream.
+     */
+    static boolean isCompressed(ByteBuffer buffer) {
+        return buffer.limit() >= 2 && VenueReader.isCompressed(buffer.getShort(
+                0) & 0xFFFF);
+    }
+
+    /**
+     * Returns the position just after the first empty line that starts at or
+     * after the given position, or the end of the buffer if there is none.
+     * 
+     * @require 0 <= from <= buffer.limit()
+     */
+    static int nextBoundary(ByteBuffer buffer, int from) {
+        // the position being examined
+        int position = from;
+        // move to the start of a line
+        while (position < buffer.limit() && !isLineStart(buffer, position)) {
+            position++;
+        }
+        while (position < buffer.limit()) {
+            // the end of the line starting at position
+            int end = position;
+            while (end < buffer.limit() && buffer.get(end) != '\n' && buffer
+                    .get(end) != '\r') {
+                end++;
+            }
+            // the start of the following line
+            int next = end + 1;
+            if (end + 1 < buffer.limit() && buffer.get(end) == '\r' && buffer
+                    .get(end + 1) == '\n') {
+                next = end + 2;
+            }
+            if (end == position) {
+                return Math.min(next, buffer.limit());
+            }
+            position = next;
+        }
+        return buffer.limit();
+    }
+
+    /**
+     * Returns true if a line starts at the given position of the buffer.
+     * 
+     * @require 0 <= position < buffer.limit()
+     */
+    private static boolean isLineStart(ByteBuffer buffer, int position) {
+        if (position == 0) {
+            return true;
+        }
+        // the byte before position
+        byte previous = buffer.get(position - 1);
+        return previous == '\n' || (previous == '\r' && buffer.get(
+                position) != '\n');
+    }
+
+    /**
+     * A region of a venue file that is parsed on its own.
+     */
+    private static class Chunk {
+
+        // the start and end (exclusive) of the region
+        private final int start;
+        private final int end;
+        // the venues read from the region, and the lines that completed them
+        private List<Venue> venues;
+        private List<Integer> endLines;
+        // the number of lines in the region (if it was parsed successfully)
+        private int lines;
+        // the first format error in the region, if there is one
+        private FormatException error;
+
+        /**
+         * Creates a chunk for the region [start, end).
+         */
+        private Chunk(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Parses the region, numbering its lines from linesBefore + 1, and
+         * records the venues read and the first format error (if any).
+         */
+        private void parse(ByteBuffer buffer, int linesBefore,
+                Charset charset) {
+            venues = new ArrayList<>();
+            endLines = new ArrayList<>();
+            error = null;
+            // the parser for the region
+            VenueBlockParser parser = new VenueBlockParser(buffer, start, end,
+                    linesBefore, charset);
+            try {
+                parser.parse(venues, endLines);
+            } catch (FormatException e) {
+                error = e;
+            }
+            lines = parser.getLineNumber() - linesBefore;
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package planner;
+
+/**
+ * Receives progress reports from a long-running allocation search, and tells
+ * the search whether it should stop early.
+ */
+public interface SearchMonitor {
+
+    /**
+     * Called periodically by the search (on the thread running it) with the
+     * number of search nodes explored so far.
+     *
+     * @param nodes
+     *            the number of nodes explored so far
+     */
+    void onProgress(long nodes);
+
+    /**
+     * Returns true if the search should stop. The search checks this at every
+     * node, and stops by throwing a CancellationException.
+     *
+     * @return true if the search has been cancelled
+     */
+    boolean isCancelled();
+
+}
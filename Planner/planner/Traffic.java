@@ -11,6 +11,23 @@ import java.util.*;
  * The traffic on a corridor is measured in non-negative integer units,
  * representing people.
  * </p>
+ * 
+ * <p>
+ * Internally the traffic is stored in one of two forms, and the form is chosen
+ * automatically. While only a few corridors have traffic, the traffic is kept
+ * in a sparse form: two parallel arrays holding the (ascending) registry
+ * ordinals of the corridors with traffic and their amounts. Once more than a
+ * fixed fraction of all known corridors have traffic, the object switches to a
+ * dense form: a single array of amounts indexed by corridor ordinal. Adding a
+ * sparse traffic to a dense one therefore only costs time proportional to the
+ * number of corridors that the sparse traffic uses.
+ * </p>
+ * 
+ * <p>
+ * Each traffic object also maintains a 64-bit fingerprint of its contents,
+ * which is updated incrementally as the traffic changes (see
+ * {@link #getFingerprint()}).
+ * </p>
  */
 public class Traffic {
 
@@ -18,22 +35,57 @@ public class Traffic {
     private final static String LINE_SEPARATOR = System.getProperty(
             "line.separator");
 
+    // a sparse traffic becomes dense once more than 1/DENSE_RATIO of the
+    // registered corridors have traffic
+    private final static int DENSE_RATIO = 4;
+    // a sparse traffic never becomes dense while it has fewer corridors than
+    // this (small arrays are cheaper to search than to index)
+    private final static int MIN_DENSE_SIZE = 32;
+    // the length of the sparse arrays when the first corridor is added
+    private final static int INITIAL_SPARSE_LENGTH = 4;
+    // shared empty array for new, empty traffic objects
+    private final static int[] EMPTY = new int[0];
+    // multiplier used to combine a corridor hash with an amount of traffic
+    private final static long ENTRY_PRIME = 0x9E3779B97F4A7C15L;
+
+    // the number of corridors with traffic (i.e. this.getTraffic(c) > 0)
+    private int size;
+
+    /*
+     * In the sparse form, the registry ordinals of the corridors with traffic,
+     * in ascending order, in positions [0, size). In the dense form this is
+     * null.
+     */
+    private int[] ordinals;
+
     /*
-     * A mapping from traffic corridors with traffic (i.e. corridors such that
-     * this.getTraffic(c) > 0) to the amount of traffic currently associated
-     * with them.
+     * In the sparse form, the amount of traffic on the corridor with ordinal
+     * ordinals[i] is amounts[i], for i in [0, size). In the dense form, the
+     * amount of traffic on the corridor with ordinal o is amounts[o] if o <
+     * amounts.length, and zero otherwise.
      */
-    private TreeMap<Corridor, Integer> trafficMap;
+    private int[] amounts;
+
+    // true if this object may not be modified (see freeze)
+    private boolean readOnly;
+
+    // the sum of entryHash(o, a) over the corridors with traffic
+    private long fingerprint;
 
     /*
      * invariant:
      * 
-     * traffic !=null && !traffic.containsValue(null) &&
+     * amounts != null &&
+     * 
+     * if ordinals != null (sparse form): size <= ordinals.length && size <=
+     * amounts.length && ordinals[0..size) is strictly increasing and each
+     * entry is a registered ordinal && amounts[0..size) are all > 0
      * 
-     * for each corridor c in traffic.keySet(), traffic.get(c) > 0
+     * if ordinals == null (dense form): amounts contains no negative values
+     * && size is the number of positive values in amounts
      * 
-     * (Note: TreeMaps can't contain null keys so we don't need
-     * !traffic.containsKey(null) as an invariant)
+     * fingerprint == the sum (with overflow) of entryHash(o, a) for each
+     * corridor ordinal o with a > 0 traffic
      */
 
     /**
@@ -47,7 +99,8 @@ public class Traffic {
      * </p>
      */
     public Traffic() {
-        trafficMap = new TreeMap<>();
+        ordinals = EMPTY;
+        amounts = EMPTY;
     }
 
     /**
@@ -63,13 +116,26 @@ public class Traffic {
      * instance of the class should be a deep copy of initialTraffic.
      * </p>
      * 
+     * <p>
+     * The new instance can always be modified, even if initialTraffic is
+     * read-only.
+     * </p>
+     * 
      * @param initialTraffic
      *            the initial traffic for this instance of the class
      * @throws NullPointerException
      *             if initialTraffic is null
      */
     public Traffic(Traffic initialTraffic) {
-        trafficMap = new TreeMap<Corridor, Integer>(initialTraffic.trafficMap);
+        size = initialTraffic.size;
+        fingerprint = initialTraffic.fingerprint;
+        if (initialTraffic.ordinals == null) {
+            ordinals = null;
+            amounts = initialTraffic.amounts.clone();
+        } else {
+            ordinals = Arrays.copyOf(initialTraffic.ordinals, size);
+            amounts = Arrays.copyOf(initialTraffic.amounts, size);
+        }
     }
 
     /**
@@ -94,11 +160,7 @@ public class Traffic {
         if (corridor == null) {
             throw new NullPointerException("corridor cannot be null");
         }
-        int currentAmount = 0; // the current amount of traffic on corridor
-        if (trafficMap.get(corridor) != null) {
-            currentAmount = trafficMap.get(corridor);
-        }
-        return currentAmount;
+        return get(corridor.ordinal());
     }
 
     /**
@@ -109,7 +171,11 @@ public class Traffic {
      *         greater than zero
      */
     public Set<Corridor> getCorridorsWithTraffic() {
-        return new HashSet<>(trafficMap.keySet());
+        // the corridors with traffic
+        Set<Corridor> result = new HashSet<>(size * 2);
+        forEachEntry((ordinal, amount) -> result.add(CorridorRegistry
+                .corridorAt(ordinal)));
+        return result;
     }
 
     /**
@@ -132,7 +198,24 @@ public class Traffic {
      *             if other is null
      */
     public boolean sameTraffic(Traffic other) {
-        return trafficMap.equals(other.trafficMap);
+        if (size != other.size || fingerprint != other.fingerprint) {
+            return false;
+        }
+        if (ordinals != null) {
+            for (int i = 0; i < size; i++) {
+                if (other.get(ordinals[i]) != amounts[i]) {
+                    return false;
+                }
+            }
+        } else {
+            for (int ordinal = 0; ordinal < amounts.length; ordinal++) {
+                if (amounts[ordinal] > 0 && other.get(ordinal) != amounts[
+                        ordinal]) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     /**
@@ -143,9 +226,19 @@ public class Traffic {
      *         or equal to the capacity of that corridor, and false otherwise.
      */
     public boolean isSafe() {
-        for (Corridor corridor : trafficMap.keySet()) {
-            if (trafficMap.get(corridor) > corridor.getCapacity()) {
-                return false;
+        if (ordinals != null) {
+            for (int i = 0; i < size; i++) {
+                if (amounts[i] > CorridorRegistry.corridorAt(ordinals[i])
+                        .getCapacity()) {
+                    return false;
+                }
+            }
+        } else {
+            for (int ordinal = 0; ordinal < amounts.length; ordinal++) {
+                if (amounts[ordinal] > 0 && amounts[ordinal] > CorridorRegistry
+                        .corridorAt(ordinal).getCapacity()) {
+                    return false;
+                }
             }
         }
         return true;
@@ -174,12 +267,17 @@ public class Traffic {
      * @throws InvalidTrafficException
      *             if the addition of amount and the current amount of traffic
      *             on the given corridor is negative (i.e. less than zero).
+     * @throws UnsupportedOperationException
+     *             if this traffic record is read-only
      */
     public void updateTraffic(Corridor corridor, int amount) {
         if (corridor == null) {
             throw new NullPointerException("Parameter corridor cannot be null");
         }
-        int currentAmount = getTraffic(corridor);
+        checkWritable();
+        // the ordinal of the corridor being updated
+        int ordinal = corridor.ordinal();
+        int currentAmount = get(ordinal);
         // check that the traffic would not become negative.
         if (currentAmount + amount < 0) {
             throw new InvalidTrafficException(
@@ -187,11 +285,9 @@ public class Traffic {
         }
 
         // update the traffic on the corridor by amount
-        if (currentAmount + amount == 0) {
-            trafficMap.remove(corridor);
-        } else {
-            trafficMap.put(corridor, currentAmount + amount);
-        }
+        fingerprint += entryHash(ordinal, currentAmount + amount) - entryHash(
+                ordinal, currentAmount);
+        set(ordinal, currentAmount + amount);
     }
 
     /**
@@ -216,11 +312,23 @@ public class Traffic {
      *            the traffic to be added to this object
      * @throws NullPointerException
      *             if extraTraffic is null
+     * @throws UnsupportedOperationException
+     *             if this traffic record is read-only
      */
     public void addTraffic(Traffic extraTraffic) {
-        for (Corridor corridor : extraTraffic.trafficMap.keySet()) {
-            trafficMap.put(corridor, getTraffic(corridor) + extraTraffic
-                    .getTraffic(corridor));
+        checkWritable();
+        if (extraTraffic == this) {
+            // take a snapshot so that we don't read what we are writing
+            extraTraffic = new Traffic(extraTraffic);
+        }
+        if (ordinals != null && (extraTraffic.ordinals == null
+                || shouldBeDense(size + extraTraffic.size))) {
+            toDense();
+        }
+        if (ordinals == null) {
+            addToDense(extraTraffic);
+        } else {
+            mergeSparse(extraTraffic);
         }
     }
 
@@ -259,11 +367,29 @@ public class Traffic {
      */
     @Override
     public String toString() {
-        String result = ""; // the string representation
-        for (Corridor c : trafficMap.keySet()) {
-            result += c + ": " + trafficMap.get(c) + LINE_SEPARATOR;
+        // the corridors with traffic, in their natural order
+        Corridor[] corridors = new Corridor[size];
+        // the number of corridors copied into corridors so far
+        int count = 0;
+        if (ordinals != null) {
+            for (int i = 0; i < size; i++) {
+                corridors[count++] = CorridorRegistry.corridorAt(ordinals[i]);
+            }
+        } else {
+            for (int ordinal = 0; ordinal < amounts.length; ordinal++) {
+                if (amounts[ordinal] > 0) {
+                    corridors[count++] = CorridorRegistry.corridorAt(ordinal);
+                }
+            }
         }
-        return result;
+        Arrays.sort(corridors);
+
+        StringBuilder result = new StringBuilder(); // the string representation
+        for (Corridor c : corridors) {
+            result.append(c).append(": ").append(get(c.ordinal())).append(
+                    LINE_SEPARATOR);
+        }
+        return result.toString();
     }
 
     /**
@@ -279,18 +405,428 @@ public class Traffic {
      * @return true if this class is internally consistent, and false otherwise.
      */
     public boolean checkInvariant() {
-        if (trafficMap == null) {
+        if (amounts == null) {
             return false;
         }
-        if (trafficMap.containsValue(null)) {
+        if (ordinals == null) {
+            // the number of positive amounts in the dense array
+            int count = 0;
+            for (int amount : amounts) {
+                if (amount < 0) {
+                    return false;
+                }
+                if (amount > 0) {
+                    count++;
+                }
+            }
+            return count == size && fingerprint == computeFingerprint();
+        }
+        if (size < 0 || size > ordinals.length || size > amounts.length) {
             return false;
         }
-        for (Corridor c : trafficMap.keySet()) {
-            if (trafficMap.get(c) <= 0) {
+        for (int i = 0; i < size; i++) {
+            if (ordinals[i] < 0 || ordinals[i] >= CorridorRegistry.size()
+                    || amounts[i] <= 0) {
+                return false;
+            }
+            if (i > 0 && ordinals[i - 1] >= ordinals[i]) {
                 return false;
             }
         }
-        return true;
+        return fingerprint == computeFingerprint();
+    }
+
+    /**
+     * <p>
+     * Returns a 64-bit fingerprint of the traffic recorded by this object.
+     * </p>
+     * 
+     * <p>
+     * Two traffic objects that are the same according to sameTraffic always
+     * have the same fingerprint, and traffic objects that are not the same are
+     * very unlikely to. The fingerprint only depends on the corridors (their
+     * locations and capacities) and the amounts of traffic on them, so it is
+     * the same in every run of the program. It is maintained as the traffic
+     * changes, so this method takes constant time.
+     * </p>
+     * 
+     * @return the fingerprint of the recorded traffic
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns true if this traffic record is read-only, i.e. updateTraffic and
+     * addTraffic throw an UnsupportedOperationException instead of modifying
+     * it. Read-only records are shared between callers (see
+     * {@link Venue#getSharedTraffic(Event)}); use the copy constructor to get a
+     * record that can be modified.
+     * 
+     * @return true if this traffic record cannot be modified
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Makes this traffic record read-only. It can never be made writable
+     * again.
+     * 
+     * @ensure isReadOnly()
+     */
+    void freeze() {
+        readOnly = true;
+    }
+
+    /**
+     * Returns a new traffic record in which the traffic on each corridor c is
+     * the integer ((numerator * this.getTraffic(c)) / denominator). Corridors
+     * whose scaled traffic truncates to zero have no traffic in the result.
+     * 
+     * @require denominator > 0 && numerator >= 0
+     * @ensure Returns the scaled traffic, stored in the same form as this
+     *         object.
+     */
+    Traffic scale(int numerator, int denominator) {
+        // the scaled traffic to be returned
+        Traffic result = new Traffic(this);
+        // the number of corridors kept so far (sparse form)
+        int count = 0;
+        if (result.ordinals == null) {
+            for (int ordinal = 0; ordinal < result.amounts.length; ordinal++) {
+                if (result.amounts[ordinal] > 0) {
+                    result.amounts[ordinal] = (numerator * result.amounts[
+                            ordinal]) / denominator;
+                    if (result.amounts[ordinal] > 0) {
+                        count++;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < result.size; i++) {
+                // the scaled amount of traffic on the ith corridor
+                int amount = (numerator * result.amounts[i]) / denominator;
+                if (amount > 0) {
+                    result.ordinals[count] = result.ordinals[i];
+                    result.amounts[count++] = amount;
+                }
+            }
+        }
+        result.size = count;
+        if (result.ordinals == null && result.shouldBeSparse()) {
+            result.toSparse();
+        }
+        result.fingerprint = result.computeFingerprint();
+        return result;
+    }
+
+    /**
+     * Returns a well-mixed 64-bit value derived from the given value (the
+     * finalisation step of the MurmurHash3 64-bit hash function).
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE53B6D53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Returns the contribution to the fingerprint of the corridor with the
+     * given ordinal having the given amount of traffic (zero if the amount is
+     * zero).
+     */
+    private static long entryHash(int ordinal, int amount) {
+        if (amount == 0) {
+            return 0;
+        }
+        return mix(CorridorRegistry.corridorAt(ordinal).hashCode()
+                * ENTRY_PRIME + amount);
+    }
+
+    /**
+     * Computes the fingerprint of this object from scratch.
+     */
+    private long computeFingerprint() {
+        // the fingerprint being computed
+        long[] result = new long[1];
+        forEachEntry((ordinal, amount) -> result[0] += entryHash(ordinal,
+                amount));
+        return result[0];
+    }
+
+    /**
+     * Throws an UnsupportedOperationException if this record is read-only.
+     */
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException(
+                    "This traffic record is read-only.");
+        }
+    }
+
+    /**
+     * An action that is performed on each corridor with traffic.
+     */
+    interface EntryConsumer {
+
+        /**
+         * Performs this action on the corridor with the given registry ordinal,
+         * which has the given (positive) amount of traffic.
+         */
+        void accept(int ordinal, int amount);
+    }
+
+    /**
+     * Returns the number of corridors with traffic.
+     * 
+     * @ensure Returns the number of corridors c such that getTraffic(c) > 0.
+     */
+    int entryCount() {
+        return size;
+    }
+
+    /**
+     * Performs the given action once for each corridor with traffic. The
+     * corridors are visited in ascending ordinal order.
+     * 
+     * @require action != null && action does not modify this object
+     * @ensure action.accept(o, a) has been called once for each corridor
+     *         ordinal o with an amount of traffic a > 0.
+     */
+    void forEachEntry(EntryConsumer action) {
+        if (ordinals != null) {
+            for (int i = 0; i < size; i++) {
+                action.accept(ordinals[i], amounts[i]);
+            }
+        } else {
+            for (int ordinal = 0; ordinal < amounts.length; ordinal++) {
+                if (amounts[ordinal] > 0) {
+                    action.accept(ordinal, amounts[ordinal]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if this object is stored in the dense form.
+     * 
+     * @ensure Returns true iff the traffic is stored in the dense form.
+     */
+    boolean isDense() {
+        return ordinals == null;
+    }
+
+    /**
+     * Returns the amount of traffic on the corridor with the given ordinal.
+     * 
+     * @require ordinal >= 0
+     * @ensure Returns the amount of traffic on the corridor with the given
+     *         registry ordinal (zero if it has no traffic).
+     */
+    private int get(int ordinal) {
+        if (ordinals == null) {
+            return ordinal < amounts.length ? amounts[ordinal] : 0;
+        }
+        // the position of ordinal in the sparse arrays (if it is there)
+        int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        return index >= 0 ? amounts[index] : 0;
+    }
+
+    /**
+     * Sets the amount of traffic on the corridor with the given ordinal,
+     * changing the form of this object if the number of corridors with traffic
+     * crosses one of the thresholds.
+     * 
+     * @require ordinal is a registered ordinal && amount >= 0
+     * @ensure get(ordinal) == amount and the class invariant holds.
+     */
+    private void set(int ordinal, int amount) {
+        if (ordinals == null) {
+            if (ordinal >= amounts.length) {
+                if (amount == 0) {
+                    return;
+                }
+                amounts = Arrays.copyOf(amounts, Math.max(ordinal + 1,
+                        CorridorRegistry.size()));
+            }
+            // the amount that is being replaced
+            int previous = amounts[ordinal];
+            amounts[ordinal] = amount;
+            if (previous == 0 && amount > 0) {
+                size++;
+            } else if (previous > 0 && amount == 0) {
+                size--;
+                if (shouldBeSparse()) {
+                    toSparse();
+                }
+            }
+            return;
+        }
+
+        // the position of ordinal in the sparse arrays (if it is there)
+        int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+        if (index >= 0) {
+            if (amount > 0) {
+                amounts[index] = amount;
+            } else {
+                System.arraycopy(ordinals, index + 1, ordinals, index, size
+                        - index - 1);
+                System.arraycopy(amounts, index + 1, amounts, index, size
+                        - index - 1);
+                size--;
+            }
+        } else if (amount > 0) {
+            if (shouldBeDense(size + 1)) {
+                toDense();
+                set(ordinal, amount);
+                return;
+            }
+            // the position that the new corridor is inserted at
+            int insertAt = -(index + 1);
+            if (size == ordinals.length) {
+                // the new length of the sparse arrays
+                int length = Math.max(INITIAL_SPARSE_LENGTH, size * 2);
+                ordinals = Arrays.copyOf(ordinals, length);
+                amounts = Arrays.copyOf(amounts, length);
+            }
+            System.arraycopy(ordinals, insertAt, ordinals, insertAt + 1, size
+                    - insertAt);
+            System.arraycopy(amounts, insertAt, amounts, insertAt + 1, size
+                    - insertAt);
+            ordinals[insertAt] = ordinal;
+            amounts[insertAt] = amount;
+            size++;
+        }
+    }
+
+    /**
+     * Adds extraTraffic to this object, which must be in the dense form.
+     * Takes time proportional to the number of entries of extraTraffic if it
+     * is sparse.
+     * 
+     * @require ordinals == null && extraTraffic != this
+     * @ensure The traffic of extraTraffic has been added to this object.
+     */
+    private void addToDense(Traffic extraTraffic) {
+        // one more than the largest ordinal used by extraTraffic
+        int required = extraTraffic.ordinals == null
+                ? extraTraffic.amounts.length
+                : (extraTraffic.size == 0 ? 0
+                        : extraTraffic.ordinals[extraTraffic.size - 1] + 1);
+        if (required > amounts.length) {
+            amounts = Arrays.copyOf(amounts, Math.max(required,
+                    CorridorRegistry.size()));
+        }
+        extraTraffic.forEachEntry((ordinal, amount) -> {
+            if (amounts[ordinal] == 0) {
+                size++;
+            }
+            fingerprint += entryHash(ordinal, amounts[ordinal] + amount)
+                    - entryHash(ordinal, amounts[ordinal]);
+            amounts[ordinal] += amount;
+        });
+    }
+
+    /**
+     * Adds the sparse traffic extraTraffic to this sparse object by merging
+     * the two sorted ordinal arrays.
+     * 
+     * @require ordinals != null && extraTraffic.ordinals != null &&
+     *          extraTraffic != this
+     * @ensure The traffic of extraTraffic has been added to this object.
+     */
+    private void mergeSparse(Traffic extraTraffic) {
+        if (extraTraffic.size == 0) {
+            return;
+        }
+        // the merged ordinals and amounts
+        int[] mergedOrdinals = new int[size + extraTraffic.size];
+        int[] mergedAmounts = new int[size + extraTraffic.size];
+        // positions in this, extraTraffic and the merged arrays
+        int i = 0, j = 0, k = 0;
+        while (i < size || j < extraTraffic.size) {
+            if (j == extraTraffic.size || (i < size
+                    && ordinals[i] < extraTraffic.ordinals[j])) {
+                mergedOrdinals[k] = ordinals[i];
+                mergedAmounts[k++] = amounts[i++];
+            } else if (i == size || extraTraffic.ordinals[j] < ordinals[i]) {
+                mergedOrdinals[k] = extraTraffic.ordinals[j];
+                mergedAmounts[k] = extraTraffic.amounts[j++];
+                fingerprint += entryHash(mergedOrdinals[k], mergedAmounts[k]);
+                k++;
+            } else {
+                mergedOrdinals[k] = ordinals[i];
+                mergedAmounts[k] = amounts[i++] + extraTraffic.amounts[j++];
+                fingerprint += entryHash(mergedOrdinals[k], mergedAmounts[k])
+                        - entryHash(mergedOrdinals[k], amounts[i - 1]);
+                k++;
+            }
+        }
+        ordinals = mergedOrdinals;
+        amounts = mergedAmounts;
+        size = k;
+    }
+
+    /**
+     * Returns true if a sparse traffic with the given number of corridors
+     * should be stored in the dense form instead.
+     */
+    private static boolean shouldBeDense(int corridorCount) {
+        return corridorCount > MIN_DENSE_SIZE
+                && corridorCount * DENSE_RATIO > CorridorRegistry.size();
+    }
+
+    /**
+     * Returns true if this dense traffic has few enough corridors that it
+     * should go back to the sparse form. The threshold is half of the one used
+     * by shouldBeDense so that a traffic object near the threshold does not
+     * switch back and forth on every update.
+     */
+    private boolean shouldBeSparse() {
+        return size * 2 <= MIN_DENSE_SIZE
+                || size * 2 * DENSE_RATIO <= CorridorRegistry.size();
+    }
+
+    /**
+     * Converts this object from the sparse form to the dense form.
+     * 
+     * @require ordinals != null
+     * @ensure ordinals == null and the recorded traffic is unchanged.
+     */
+    private void toDense() {
+        // the dense array of amounts
+        int[] dense = new int[CorridorRegistry.size()];
+        for (int i = 0; i < size; i++) {
+            dense[ordinals[i]] = amounts[i];
+        }
+        ordinals = null;
+        amounts = dense;
+    }
+
+    /**
+     * Converts this object from the dense form to the sparse form.
+     * 
+     * @require ordinals == null
+     * @ensure ordinals != null and the recorded traffic is unchanged.
+     */
+    private void toSparse() {
+        // the sparse ordinals and amounts
+        int[] sparseOrdinals = new int[Math.max(INITIAL_SPARSE_LENGTH, size)];
+        int[] sparseAmounts = new int[sparseOrdinals.length];
+        // the number of corridors copied so far
+        int count = 0;
+        for (int ordinal = 0; ordinal < amounts.length; ordinal++) {
+            if (amounts[ordinal] > 0) {
+                sparseOrdinals[count] = ordinal;
+                sparseAmounts[count++] = amounts[ordinal];
+            }
+        }
+        ordinals = sparseOrdinals;
+        amounts = sparseAmounts;
     }
 
 }
@@ -0,0 +1,115 @@
+package planner;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A small, thread-safe cache of the read-only traffic generated by hosting
+ * events of different sizes at one venue.
+ * </p>
+ * 
+ * <p>
+ * Since the traffic generated by an event at a venue only depends on the size
+ * of the event, each venue keeps one of these caches keyed by event size. At
+ * most {@link #MAX_ENTRIES} sizes are kept per venue; the least recently used
+ * size is evicted first.
+ * </p>
+ * 
+ * <p>
+ * Hit and miss counts are accumulated over all of the caches in the program,
+ * and can be read with {@link #getHitCount()} and {@link #getMissCount()}.
+ * </p>
+ */
+public final class TrafficCache {
+
+    /**
+     * The maximum number of event sizes cached for a single venue.
+     */
+    public final static int MAX_ENTRIES = 16;
+
+    // the number of lookups answered from a cache, over all caches
+    private final static LongAdder hits = new LongAdder();
+    // the number of lookups that had to compute the traffic, over all caches
+    private final static LongAdder misses = new LongAdder();
+
+    // mapping from event size to read-only traffic, in access order
+    private final Map<Integer, Traffic> entries;
+
+    /*
+     * invariant:
+     * 
+     * entries != null && entries.size() <= MAX_ENTRIES &&
+     * 
+     * every value in entries is read-only
+     */
+
+    /**
+     * Creates a new, empty cache.
+     */
+    TrafficCache() {
+        entries = new LinkedHashMap<Integer, Traffic>(MAX_ENTRIES * 2, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, Traffic> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached traffic for events of the given size, computing,
+     * caching and returning capacityTraffic.scale(size, capacity) as a
+     * read-only record if it isn't cached yet.
+     * 
+     * @require size > 0 && capacity > 0 && capacityTraffic != null
+     * @ensure Returns a read-only traffic record equal to
+     *         capacityTraffic.scale(size, capacity).
+     */
+    synchronized Traffic get(int size, Traffic capacityTraffic,
+            int capacity) {
+        // the cached traffic for this size, if there is one
+        Traffic traffic = entries.get(size);
+        if (traffic != null) {
+            hits.increment();
+            return traffic;
+        }
+        misses.increment();
+        traffic = capacityTraffic.scale(size, capacity);
+        traffic.freeze();
+        entries.put(size, traffic);
+        return traffic;
+    }
+
+    /**
+     * Returns the number of traffic lookups (over all venues) that were
+     * answered from a cache since the statistics were last reset.
+     * 
+     * @return the number of cache hits
+     */
+    public static long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of traffic lookups (over all venues) that had to
+     * compute the traffic since the statistics were last reset.
+     * 
+     * @return the number of cache misses
+     */
+    public static long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Resets the hit and miss counts to zero.
+     */
+    public static void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+}
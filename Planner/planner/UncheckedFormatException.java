@@ -0,0 +1,34 @@
+package planner;
+
+/**
+ * An unchecked exception that wraps a {@link FormatException}. It is thrown
+ * where a FormatException can't be, such as from the methods of a lazily read
+ * stream of venues.
+ */
+@SuppressWarnings("serial")
+public class UncheckedFormatException extends RuntimeException {
+
+    /**
+     * Constructs a new exception wrapping the given FormatException, with the
+     * same detail message.
+     * 
+     * @param cause
+     *            the FormatException being wrapped
+     * @throws NullPointerException
+     *             if cause is null
+     */
+    public UncheckedFormatException(FormatException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * Returns the FormatException wrapped by this exception.
+     * 
+     * @return the wrapped FormatException
+     */
+    @Override
+    public FormatException getCause() {
+        return (FormatException) super.getCause();
+    }
+
+}
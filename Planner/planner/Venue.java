@@ -35,6 +35,13 @@ public class Venue {
     // the traffic that will be generated by hosting an event of maximum
     // size at the venue
     private Traffic capacityTraffic;
+    // the traffic generated by events of recently requested sizes (created
+    // the first time it is needed)
+    private volatile TrafficCache trafficCache;
+    // fingerprint of the name, capacity and capacity traffic of the venue
+    private long fingerprint;
+    // the hash code of the venue (derived from the fingerprint)
+    private int hashCode;
 
     /*
      * invariant:
@@ -90,6 +97,8 @@ public class Venue {
         this.name = name;
         this.capacity = capacity;
         this.capacityTraffic = new Traffic(capacityTraffic);
+        this.fingerprint = fingerprint(name, capacity, this.capacityTraffic);
+        this.hashCode = (int) (fingerprint ^ (fingerprint >>> 32));
     }
 
     /**
@@ -110,6 +119,35 @@ public class Venue {
         return capacity;
     }
 
+    /**
+     * <p>
+     * Returns a 64-bit fingerprint of the name, capacity and capacity traffic
+     * of this venue.
+     * </p>
+     * 
+     * <p>
+     * Equal venues always have equal fingerprints, and unequal venues are very
+     * unlikely to. The fingerprint is computed once, when the venue is
+     * created, and is the same in every run of the program.
+     * </p>
+     * 
+     * @return the fingerprint of this venue
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the traffic generated by hosting an event of size capacity at
+     * this venue. The result is the venue's own record, so callers must not
+     * modify it.
+     * 
+     * @ensure Returns the capacity traffic of this venue.
+     */
+    Traffic getCapacityTraffic() {
+        return capacityTraffic;
+    }
+
     /**
      * Returns true if the size of the event is less than or equal to the
      * capacity of the venue, and false otherwise.
@@ -144,6 +182,12 @@ public class Venue {
      * proportional to the size of the event.)
      * </p>
      * 
+     * <p>
+     * The result is a new traffic record that the caller may modify. Callers
+     * that only read the traffic should use getSharedTraffic instead, which
+     * avoids the copy.
+     * </p>
+     * 
      * @param event
      *            the event for which the traffic will be generated
      * @return the traffic generated by hosting the given event at this venue
@@ -153,17 +197,49 @@ public class Venue {
      *             if the size of the event exceeds the capacity of the venue
      */
     public Traffic getTraffic(Event event) {
+        return new Traffic(getSharedTraffic(event));
+    }
+
+    /**
+     * <p>
+     * Returns the amount of traffic that would be generated by hosting the
+     * given event at this venue, as a read-only traffic record.
+     * </p>
+     * 
+     * <p>
+     * The traffic is the same as that returned by getTraffic(event), but the
+     * record is shared between all callers asking about events of the same
+     * size: it is computed at most once per size (while the size stays in this
+     * venue's TrafficCache), and attempts to modify it throw an
+     * UnsupportedOperationException.
+     * </p>
+     * 
+     * @param event
+     *            the event for which the traffic will be generated
+     * @return the read-only traffic generated by hosting the given event at
+     *         this venue
+     * @throws NullPointerException
+     *             if event is null
+     * @throws IllegalArgumentException
+     *             if the size of the event exceeds the capacity of the venue
+     */
+    public Traffic getSharedTraffic(Event event) {
         if (event.getSize() > capacity) {
             throw new IllegalArgumentException(
                     "The size of the event cannot exceed the venue's capacity");
         }
-        Traffic result = new Traffic(); // the traffic generated by the event
-        for (Corridor c : capacityTraffic.getCorridorsWithTraffic()) {
-            int traffic = (event.getSize() * capacityTraffic.getTraffic(c))
-                    / capacity;
-            result.updateTraffic(c, traffic);
+        // the cache of this venue (created on first use)
+        TrafficCache cache = trafficCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = trafficCache;
+                if (cache == null) {
+                    cache = new TrafficCache();
+                    trafficCache = cache;
+                }
+            }
         }
-        return result;
+        return cache.get(event.getSize(), capacityTraffic, capacity);
     }
 
     /**
@@ -209,26 +285,30 @@ public class Venue {
             return false;
         }
         Venue other = (Venue) object; // the venue to compare
-        return (name.equals(other.name) && capacity == other.capacity
+        return (fingerprint == other.fingerprint && name.equals(other.name)
+                && capacity == other.capacity
                 && capacityTraffic.sameTraffic(other.capacityTraffic));
     }
 
     @Override
     public int hashCode() {
-        /*
-         * We create a polynomial hash-code based on name and capacity and
-         * capacityTraffic.
-         * 
-         * We will cheat a bit here and use the fact that traffic objects that
-         * are the same according to the sameTraffic method will produce the
-         * same string representation. There might be neater ways to do this.
-         */
-        final int prime = 31; // an odd base prime
-        int result = 1; // the hash code under construction
-        result = prime * result + name.hashCode();
-        result = prime * result + capacity;
-        result = prime * result + (capacityTraffic.toString()).hashCode();
-        return result;
+        // computed once, from the fingerprint, when the venue was created
+        return hashCode;
+    }
+
+    /**
+     * Returns the fingerprint of a venue with the given name, capacity and
+     * capacity traffic.
+     */
+    private static long fingerprint(String name, int capacity,
+            Traffic capacityTraffic) {
+        // a 64-bit FNV-1a hash of the name
+        long result = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            result = (result ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        result = Traffic.mix(result * 31 + capacity);
+        return Traffic.mix(result * 31 + capacityTraffic.getFingerprint());
     }
 
     /**
@@ -258,7 +338,9 @@ public class Venue {
                 return false;
             }
         }
-        return true;
+        // the cached fingerprint and hash code must match the contents
+        return fingerprint == fingerprint(name, capacity, capacityTraffic)
+                && hashCode == (int) (fingerprint ^ (fingerprint >>> 32));
     }
 
 }
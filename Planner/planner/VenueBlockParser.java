@@ -0,0 +1,399 @@
+package planner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * <p>
+ * Parses venue descriptions directly from the bytes of a buffer (typically a
+ * memory-mapped venue file), without Scanners or regular expressions.
+ * </p>
+ *
+ * <p>
+ * The accepted format, and the FormatException messages produced for input
+ * that is not in that format, are the same as for
+ * {@link VenueReader#read(String)}. Lines may be terminated by "\n", "\r\n" or
+ * "\r". The delimiters of the format are ASCII, so venue and location names
+ * may be in any ASCII-compatible character set (such as UTF-8); they are
+ * decoded with the given charset.
+ * </p>
+ *
+ * <p>
+ * A parser can be given any region of a buffer that starts at the beginning
+ * of a venue description and ends just after the empty line that completes a
+ * venue description (or at the end of the input), together with the number of
+ * lines before the region, so that several regions of one file can be parsed
+ * independently and still report the line numbers of the whole file.
+ * </p>
+ */
+final class VenueBlockParser {
+
+    // value returned by parseInt if the bytes are not a valid integer
+    private final static long NOT_AN_INTEGER = Long.MIN_VALUE;
+
+    // the buffer holding the venue descriptions
+    private final ByteBuffer buffer;
+    // the position just after the end of the region to parse
+    private final int limit;
+    // the charset used to decode venue and location names
+    private final Charset charset;
+    // the position of the start of the next line
+    private int position;
+    // the number of lines consumed so far (counted from the start of the file)
+    private int lineNumber;
+    // the start and end (exclusive) of the last line consumed, excluding the
+    // line terminator
+    private int lineStart;
+    private int lineEnd;
+    // corridors already seen, keyed by their "START, END, CAPACITY" text
+    private final Map<String, Corridor> corridors;
+    // locations already seen, keyed by name
+    private final Map<String, Location> locations;
+
+    /**
+     * Creates a parser for the region [start, end) of the given buffer.
+     *
+     * @require buffer != null && 0 <= start <= end <= buffer.limit() &&
+     *          linesBefore >= 0 && charset != null && the region starts at the
+     *          beginning of a line
+     * @ensure Creates a parser that will report line numbers counted as if
+     *         the first line of the region was line linesBefore + 1.
+     */
+    VenueBlockParser(ByteBuffer buffer, int start, int end, int linesBefore,
+            Charset charset) {
+        this(buffer, start, end, linesBefore, charset, new HashMap<>(),
+                new HashMap<>());
+    }
+
+    /**
+     * Creates a parser for the region [start, end) of the given buffer that
+     * interns the corridors and locations it reads in the given maps, so that
+     * parsers sharing the maps share Corridor and Location objects. Maps that
+     * are shared by parsers running in different threads must be concurrent
+     * maps.
+     *
+     * @require buffer != null && 0 <= start <= end <= buffer.limit() &&
+     *          linesBefore >= 0 && charset != null && corridors != null &&
+     *          locations != null && the region starts at the beginning of a
+     *          line
+     * @ensure Creates a parser that will report line numbers counted as if
+     *         the first line of the region was line linesBefore + 1.
+     */
+    VenueBlockParser(ByteBuffer buffer, int start, int end, int linesBefore,
+            Charset charset, Map<String, Corridor> corridors,
+            Map<String, Location> locations) {
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = end;
+        this.lineNumber = linesBefore;
+        this.charset = charset;
+        this.corridors = corridors;
+        this.locations = locations;
+    }
+
+    /**
+     * Reads the venue descriptions in the region, in order, adding each venue
+     * to venues and the number of the (empty) line that completed it to
+     * endLines. Duplicate venues are not detected by this method.
+     *
+     * @require venues != null && endLines != null
+     * @ensure Appends the venues read to venues and their last line numbers
+     *         to endLines.
+     * @throws FormatException
+     *             if the region is not in the venue file format. The exception
+     *             message identifies the line (of the whole file) where the
+     *             problem was detected.
+     */
+    void parse(List<Venue> venues, List<Integer> endLines)
+            throws FormatException {
+        while (position < limit) {
+            // the name, capacity, and traffic of the venue being read
+            String name = readVenueName();
+            int capacity = readVenueCapacity();
+            Traffic capacityTraffic = readTraffic(capacity);
+            venues.add(new Venue(name, capacity, capacityTraffic));
+            endLines.add(lineNumber);
+        }
+    }
+
+    /**
+     * Returns the number of lines consumed so far, counted from the start of
+     * the file.
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Consumes the next line, returning the venue name on that line.
+     *
+     * @throws FormatException
+     *             if there is no next line, or it is empty.
+     */
+    private String readVenueName() throws FormatException {
+        if (!nextLine()) {
+            throw new FormatException("Line " + lineNumber
+                    + ": venue name missing");
+        }
+        if (lineStart == lineEnd) {
+            throw new FormatException("Line " + lineNumber
+                    + ": venue name cannot be the empty string");
+        }
+        return decode(lineStart, lineEnd);
+    }
+
+    /**
+     * Consumes the next line, returning the venue capacity on that line.
+     *
+     * @throws FormatException
+     *             if there is no next line, or the line does not contain one
+     *             positive integer.
+     */
+    private int readVenueCapacity() throws FormatException {
+        if (!nextLine()) {
+            throw new FormatException("Line " + lineNumber
+                    + ": venue capacity expected, but line is missing.");
+        }
+        // the capacity read from the line
+        long capacity = parseInt(lineStart, lineEnd);
+        if (capacity == NOT_AN_INTEGER) {
+            throw new FormatException("Line " + lineNumber
+                    + ": invalid venue capacity.");
+        }
+        if (capacity <= 0) {
+            throw new FormatException("Line " + lineNumber
+                    + ": capacity must be greater than or equal to zero.");
+        }
+        return (int) capacity;
+    }
+
+    /**
+     * Consumes traffic lines up to and including the next empty line,
+     * returning the traffic they describe.
+     *
+     * @throws FormatException
+     *             if a traffic line is incorrectly formatted, a corridor
+     *             appears twice, a traffic amount is out of range, or the input
+     *             ends before the empty line.
+     */
+    private Traffic readTraffic(int venueCapacity) throws FormatException {
+        // the traffic read from the lines
+        Traffic capacityTraffic = new Traffic();
+        if (!nextLine()) {
+            throw new FormatException("Line " + lineNumber
+                    + ": empty line expected to complete venue.");
+        }
+        while (lineStart != lineEnd) {
+            // the end of the corridor, i.e. the start of the first ": "
+            int corridorEnd = indexOf(lineStart, lineEnd, (byte) ':');
+            if (corridorEnd == lineStart) {
+                throw new FormatException("Line " + lineNumber
+                        + ": invalid corridor and traffic");
+            }
+            Corridor corridor = readCorridor(lineStart, corridorEnd);
+            if (corridorEnd == lineEnd) {
+                throw new FormatException("Line " + lineNumber
+                        + ": traffic is missing or incorrectly formatted.");
+            }
+            // the amount of traffic ends at the next ": " (if any)
+            int amountEnd = indexOf(corridorEnd + 2, lineEnd, (byte) ':');
+            int amount = readAmount(corridorEnd + 2, amountEnd, corridor
+                    .getCapacity(), venueCapacity);
+            if (amountEnd != lineEnd) {
+                throw new FormatException("Line " + lineNumber
+                        + ": extra information on line.");
+            }
+            if (capacityTraffic.getTraffic(corridor) > 0) {
+                throw new FormatException("Line " + lineNumber
+                        + ": corridor appears more than once.");
+            }
+            capacityTraffic.updateTraffic(corridor, amount);
+
+            if (!nextLine()) {
+                throw new FormatException("Line " + lineNumber
+                        + ": empty line expected to complete venue.");
+            }
+        }
+        return capacityTraffic;
+    }
+
+    /**
+     * Returns the corridor described by the bytes [from, to), which should be
+     * of the form "START, END, CAPACITY".
+     *
+     * @throws FormatException
+     *             if the corridor is incorrectly formatted.
+     */
+    private Corridor readCorridor(int from, int to) throws FormatException {
+        // the text of the corridor, which is also its cache key
+        String text = decode(from, to);
+        Corridor corridor = corridors.get(text);
+        if (corridor != null) {
+            return corridor;
+        }
+        // the ends of the start name and the end name
+        int startEnd = indexOf(from, to, (byte) ',');
+        int endEnd = indexOf(Math.min(startEnd + 2, to), to, (byte) ',');
+        if (startEnd == to || endEnd == to) {
+            throw new FormatException("Line " + lineNumber
+                    + ": invalid corridor.");
+        }
+        String startName = decode(from, startEnd);
+        String endName = decode(startEnd + 2, endEnd);
+        long capacity = parseInt(endEnd + 2, to);
+
+        if (startName.equals("") || endName.equals("") || capacity <= 0
+                || startName.equals(endName) || startName.contains(":")
+                || endName.contains(":") || startName.contains(",")
+                || endName.contains(",")) {
+            throw new FormatException("Line " + lineNumber
+                    + ": invalid corridor.");
+        }
+        corridor = new Corridor(location(startName), location(endName),
+                (int) capacity);
+        // another parser sharing the map may have interned it first
+        Corridor previous = corridors.putIfAbsent(text, corridor);
+        return previous != null ? previous : corridor;
+    }
+
+    /**
+     * Returns the interned location with the given name.
+     */
+    private Location location(String name) {
+        // the interned location, if there is one
+        Location location = locations.get(name);
+        if (location == null) {
+            location = new Location(name);
+            Location previous = locations.putIfAbsent(name, location);
+            if (previous != null) {
+                location = previous;
+            }
+        }
+        return location;
+    }
+
+    /**
+     * Returns the amount of traffic described by the bytes [from, to).
+     *
+     * @throws FormatException
+     *             if the amount is not an integer, or is out of range.
+     */
+    private int readAmount(int from, int to, int corridorCapacity,
+            int venueCapacity) throws FormatException {
+        // the amount of traffic read
+        long amount = parseInt(from, to);
+        if (amount == NOT_AN_INTEGER) {
+            throw new FormatException("Line " + lineNumber
+                    + ": traffic is missing or incorrectly formatted.");
+        }
+        if (amount <= 0) {
+            throw new FormatException("Line " + lineNumber
+                    + ": traffic is less than or equal to zero.");
+        }
+        if (amount > corridorCapacity) {
+            throw new FormatException("Line " + lineNumber
+                    + ": traffic exceeds the corridor capacity.");
+        }
+        if (amount > venueCapacity) {
+            throw new FormatException("Line " + lineNumber
+                    + ": traffic exceeds either the venue capacity.");
+        }
+        return (int) amount;
+    }
+
+    /**
+     * Consumes the next line of the region, setting lineStart and lineEnd to
+     * its bounds and incrementing lineNumber.
+     *
+     * @ensure Returns false (consuming nothing) if the region has no more
+     *         lines, and true otherwise.
+     */
+    private boolean nextLine() {
+        if (position >= limit) {
+            return false;
+        }
+        lineStart = position;
+        // the position of the line terminator (or the end of the region)
+        int end = position;
+        while (end < limit) {
+            byte b = buffer.get(end);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            end++;
+        }
+        lineEnd = end;
+        if (end < limit && buffer.get(end) == '\r' && end + 1 < limit && buffer
+                .get(end + 1) == '\n') {
+            position = end + 2;
+        } else {
+            position = Math.min(end + 1, limit);
+        }
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Returns the position of the first occurrence in [from, to) of the given
+     * byte followed by a space, or to if there is none.
+     */
+    private int indexOf(int from, int to, byte delimiter) {
+        for (int i = from; i + 1 < to; i++) {
+            if (buffer.get(i) == delimiter && buffer.get(i + 1) == ' ') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Returns the integer written in [from, to) with an optional leading sign
+     * and no other characters, or NOT_AN_INTEGER if it is not such an integer
+     * or does not fit in an int.
+     */
+    private long parseInt(int from, int to) {
+        if (from >= to) {
+            return NOT_AN_INTEGER;
+        }
+        // whether the number is negative
+        boolean negative = buffer.get(from) == '-';
+        if (negative || buffer.get(from) == '+') {
+            from++;
+            if (from == to) {
+                return NOT_AN_INTEGER;
+            }
+        }
+        // the magnitude of the number
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return NOT_AN_INTEGER;
+            }
+            result = result * 10 + (b - '0');
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                return NOT_AN_INTEGER;
+            }
+        }
+        result = negative ? -result : result;
+        if (result > Integer.MAX_VALUE) {
+            return NOT_AN_INTEGER;
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the bytes [from, to) of the buffer with the parser's charset.
+     */
+    private String decode(int from, int to) {
+        // the bytes to decode
+        byte[] bytes = new byte[to - from];
+        // a view of the buffer, so that the buffer's own position is untouched
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        view.get(bytes);
+        return new String(bytes, charset);
+    }
+
+}
@@ -0,0 +1,126 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable index of venues sorted by capacity, for finding the venues
+ * that can host an event without checking every venue.
+ * </p>
+ *
+ * <p>
+ * The venues that can host an event of a given size are exactly those with a
+ * capacity of at least that size, which form a suffix of the sorted venues.
+ * The start of that suffix is found by a binary search over the capacities,
+ * and the venues are returned as a read-only range view of the index, so a
+ * lookup takes logarithmic time and does not copy.
+ * </p>
+ */
+public class VenueCapacityIndex {
+
+    // the venues, in increasing order of capacity (venues with the same
+    // capacity are kept in the order they were given in)
+    private final List<Venue> venues;
+    // the capacity of each venue in venues
+    private final int[] capacities;
+
+    /*
+     * invariant:
+     *
+     * venues != null && capacities != null && capacities.length ==
+     * venues.size() &&
+     *
+     * capacities[i] == venues.get(i).getCapacity() for each i, and capacities
+     * is sorted in increasing order
+     */
+
+    /**
+     * Creates an index of the given venues.
+     *
+     * @param venues
+     *            the venues to index
+     * @throws NullPointerException
+     *             if venues is null or contains null
+     */
+    public VenueCapacityIndex(Collection<Venue> venues) {
+        // the venues in capacity order
+        List<Venue> sorted = new ArrayList<>(venues);
+        sorted.sort(Comparator.comparingInt(Venue::getCapacity));
+        this.venues = Collections.unmodifiableList(sorted);
+        capacities = new int[sorted.size()];
+        for (int i = 0; i < capacities.length; i++) {
+            capacities[i] = sorted.get(i).getCapacity();
+        }
+    }
+
+    /**
+     * Returns the number of venues in the index.
+     *
+     * @return the number of venues indexed
+     */
+    public int size() {
+        return capacities.length;
+    }
+
+    /**
+     * Returns every venue in the index, in increasing order of capacity.
+     *
+     * @return a read-only list of the indexed venues, smallest first
+     */
+    public List<Venue> getVenues() {
+        return venues;
+    }
+
+    /**
+     * Returns the position, in getVenues(), of the first venue whose capacity
+     * is at least the given size, or size() if there is none.
+     *
+     * @param size
+     *            the smallest capacity wanted
+     * @return the position of the smallest venue with a capacity of at least
+     *         size
+     */
+    public int indexOf(int size) {
+        // the bounds of the search: capacities[low - 1] < size and
+        // capacities[high] >= size
+        int low = 0;
+        int high = capacities.length;
+        while (low < high) {
+            // the middle of the range still to search
+            int middle = (low + high) >>> 1;
+            if (capacities[middle] < size) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the venues whose capacity is at least the given size.
+     *
+     * @param size
+     *            the smallest capacity wanted
+     * @return a read-only view of the venues with a capacity of at least size,
+     *         smallest first
+     */
+    public List<Venue> atLeast(int size) {
+        return venues.subList(indexOf(size), venues.size());
+    }
+
+    /**
+     * Returns the venues that can host the given event.
+     *
+     * @param event
+     *            the event to find venues for
+     * @return a read-only view of the venues that can host the event,
+     *         smallest first
+     * @throws NullPointerException
+     *             if event is null
+     */
+    public List<Venue> canHost(Event event) {
+        return atLeast(event.getSize());
+    }
+
+}
@@ -0,0 +1,363 @@
+package planner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * An immutable list of venues that is backed by a compiled, binary venue
+ * catalog file.
+ * </p>
+ *
+ * <p>
+ * A catalog file is written once (with {@link #compile(List, Path)}, or by
+ * running this class from the command line on a venue text file) and can then
+ * be opened almost instantly with {@link #open(Path)}: the file is
+ * memory-mapped, and a venue is only decoded (and then kept) the first time it
+ * is accessed, so the memory used is proportional to the number of venues
+ * actually used. The position of a venue in the list is its catalog ordinal.
+ * </p>
+ *
+ * <p>
+ * The file consists of (all integers are big-endian 32-bit values):
+ * </p>
+ * <ul>
+ * <li>a header: the magic number 0x45564354 ("EVCT"), the format version, the
+ * number of strings, corridors and venues, and the offset of the index;</li>
+ * <li>a string table of interned location names, each stored as its length in
+ * bytes followed by its UTF-8 bytes;</li>
+ * <li>a corridor table, each corridor stored as the string numbers of its
+ * start and end locations followed by its capacity;</li>
+ * <li>the venue records, each stored as the length and UTF-8 bytes of the venue
+ * name, the venue capacity, the number of corridors with traffic, and then a
+ * corridor number and an amount of traffic for each of those corridors;</li>
+ * <li>an index holding the offset of each venue record, in catalog order.</li>
+ * </ul>
+ */
+public class VenueCatalog extends AbstractList<Venue> implements RandomAccess {
+
+    // the magic number at the start of every catalog file ("EVCT")
+    private final static int MAGIC = 0x45564354;
+    // the version of the catalog format written by this class
+    private final static int VERSION = 1;
+    // the length of the header, in bytes
+    private final static int HEADER_LENGTH = 24;
+
+    // the mapped catalog file
+    private final ByteBuffer buffer;
+    // the location names of the string table
+    private final String[] strings;
+    // the corridors of the corridor table
+    private final Corridor[] corridors;
+    // the number of venues in the catalog
+    private final int size;
+    // the offset of the index in the file
+    private final int indexOffset;
+    // the venues decoded so far, keyed by catalog ordinal
+    private final Map<Integer, Venue> venues = new ConcurrentHashMap<>();
+
+    /*
+     * invariant:
+     *
+     * buffer != null && strings != null && corridors != null && size >= 0 &&
+     *
+     * every venue in venues is the decoding of the record with its key
+     */
+
+    /**
+     * Creates a catalog backed by the given mapped file, reading the string
+     * and corridor tables.
+     *
+     * @throws FormatException
+     *             if the buffer does not hold a catalog of this version.
+     */
+    private VenueCatalog(ByteBuffer buffer) throws FormatException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new FormatException("Not a venue catalog file.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new FormatException("Unsupported venue catalog version "
+                    + buffer.getInt(4) + ".");
+        }
+        // a view of the buffer for reading the tables in order
+        ByteBuffer in = buffer.duplicate();
+        in.position(8);
+        strings = new String[in.getInt()];
+        corridors = new Corridor[in.getInt()];
+        size = in.getInt();
+        indexOffset = in.getInt();
+        if (size < 0 || indexOffset < HEADER_LENGTH || (long) indexOffset
+                + 4L * size > buffer.limit()) {
+            throw new FormatException("Corrupt venue catalog header.");
+        }
+        try {
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            for (int i = 0; i < corridors.length; i++) {
+                corridors[i] = new Corridor(new Location(strings[in.getInt()]),
+                        new Location(strings[in.getInt()]), in.getInt());
+            }
+        } catch (RuntimeException e) {
+            throw new FormatException("Corrupt venue catalog tables: " + e);
+        }
+    }
+
+    /**
+     * Opens the compiled venue catalog in the given file.
+     *
+     * @param path
+     *            the catalog file to open
+     * @return a list of the venues in the catalog, in catalog order
+     * @throws IOException
+     *             if there is an error reading the file, or it is larger than
+     *             2GB
+     * @throws FormatException
+     *             if the file is not a venue catalog written by this version
+     *             of the program
+     */
+    public static VenueCatalog open(Path path) throws IOException,
+            FormatException {
+        return new VenueCatalog(MappedVenueReader.map(path));
+    }
+
+    /**
+     * Writes the given venues, in order, to a compiled venue catalog in the
+     * given file (replacing the file if it exists).
+     *
+     * @param venues
+     *            the venues to write
+     * @param path
+     *            the catalog file to write
+     * @throws NullPointerException
+     *             if venues or path are null, or venues contains null
+     * @throws IOException
+     *             if there is an error writing the file, or the catalog would
+     *             be larger than 2GB
+     */
+    public static void compile(List<Venue> venues, Path path)
+            throws IOException {
+        // the interned location names and corridors, in order of first use
+        Map<String, Integer> stringNumbers = new LinkedHashMap<>();
+        Map<Corridor, Integer> corridorNumbers = new LinkedHashMap<>();
+        for (Venue venue : venues) {
+            for (Corridor corridor : venue.getCapacityTraffic()
+                    .getCorridorsWithTraffic()) {
+                if (!corridorNumbers.containsKey(corridor)) {
+                    intern(stringNumbers, corridor.getStart().getName());
+                    intern(stringNumbers, corridor.getEnd().getName());
+                    corridorNumbers.put(corridor, corridorNumbers.size());
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CountingOutput counter = new CountingOutput(Channels
+                    .newOutputStream(channel));
+            DataOutputStream out = new DataOutputStream(counter);
+            // room for the header, which is written last
+            out.write(new byte[HEADER_LENGTH]);
+            for (String string : stringNumbers.keySet()) {
+                writeString(out, string);
+            }
+            for (Corridor corridor : corridorNumbers.keySet()) {
+                out.writeInt(stringNumbers.get(corridor.getStart().getName()));
+                out.writeInt(stringNumbers.get(corridor.getEnd().getName()));
+                out.writeInt(corridor.getCapacity());
+            }
+            // the offset of each venue record
+            int[] offsets = new int[venues.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = offset(counter);
+                Venue venue = venues.get(i);
+                writeString(out, venue.getName());
+                out.writeInt(venue.getCapacity());
+                Traffic traffic = venue.getCapacityTraffic();
+                out.writeInt(traffic.entryCount());
+                for (Corridor corridor : traffic.getCorridorsWithTraffic()) {
+                    out.writeInt(corridorNumbers.get(corridor));
+                    out.writeInt(traffic.getTraffic(corridor));
+                }
+            }
+            // the offset of the index
+            int indexOffset = offset(counter);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            offset(counter);
+            out.flush();
+
+            // the header
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).putInt(stringNumbers.size())
+                    .putInt(corridorNumbers.size()).putInt(venues.size())
+                    .putInt(indexOffset);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * Compiles a venue text file into a binary venue catalog.
+     *
+     * Usage: java planner.VenueCatalog VENUE_TEXT_FILE CATALOG_FILE
+     *
+     * @param args
+     *            the venue text file to read and the catalog file to write
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java planner.VenueCatalog "
+                    + "VENUE_TEXT_FILE CATALOG_FILE");
+            System.exit(2);
+        }
+        try {
+            List<Venue> venues = MappedVenueReader.readParallel(args[0]);
+            compile(venues, Paths.get(args[1]));
+            System.out.println("Compiled " + venues.size() + " venues into "
+                    + args[1]);
+        } catch (IOException | FormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the venue with the given catalog ordinal, decoding it from the
+     * catalog file the first time it is requested.
+     *
+     * @param index
+     *            the catalog ordinal of the venue
+     * @return the venue with the given ordinal
+     * @throws IndexOutOfBoundsException
+     *             if index is negative or not less than size()
+     */
+    @Override
+    public Venue get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No venue with ordinal "
+                    + index);
+        }
+        return venues.computeIfAbsent(index, this::decode);
+    }
+
+    /**
+     * Returns the number of venues in the catalog.
+     *
+     * @return the number of venues in the catalog
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of venues that have been decoded so far.
+     *
+     * @return the number of venues decoded from the file so far
+     */
+    public int getLoadedCount() {
+        return venues.size();
+    }
+
+    /**
+     * Decodes the venue record with the given ordinal.
+     *
+     * @require 0 <= index < size
+     */
+    private Venue decode(int index) {
+        // a view of the buffer positioned at the record
+        ByteBuffer in = buffer.duplicate();
+        in.position(buffer.getInt(indexOffset + 4 * index));
+        String name = readString(in);
+        int capacity = in.getInt();
+        // the number of corridors with traffic
+        int count = in.getInt();
+        Traffic capacityTraffic = new Traffic();
+        for (int i = 0; i < count; i++) {
+            capacityTraffic.updateTraffic(corridors[in.getInt()], in.getInt());
+        }
+        return new Venue(name, capacity, capacityTraffic);
+    }
+
+    /**
+     * Adds the given string to the string table, if it is not already there.
+     */
+    private static void intern(Map<String, Integer> strings, String string) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, strings.size());
+        }
+    }
+
+    /**
+     * Writes the length and UTF-8 bytes of the given string.
+     */
+    private static void writeString(DataOutputStream out, String string)
+            throws IOException {
+        // the encoded string
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString.
+     */
+    private static String readString(ByteBuffer in) {
+        // the encoded string
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of bytes written so far, as an int offset.
+     *
+     * @throws IOException
+     *             if the catalog has grown past 2GB.
+     */
+    private static int offset(CountingOutput counter) throws IOException {
+        if (counter.count > Integer.MAX_VALUE) {
+            throw new IOException("Venue catalog would be larger than 2GB.");
+        }
+        return (int) counter.count;
+    }
+
+    /**
+     * A buffered output stream that counts the bytes written to it.
+     */
+    private static class CountingOutput extends BufferedOutputStream {
+
+        // the number of bytes written so far
+        private long count;
+
+        private CountingOutput(OutputStream out) {
+            super(out, 1 << 16);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+            count++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+                throws IOException {
+            super.write(b, off, len);
+            count += len;
+        }
+    }
+
+}
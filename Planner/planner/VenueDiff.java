@@ -0,0 +1,158 @@
+package planner;
+
+import java.util.*;
+
+/**
+ * <p>
+ * An immutable description of how the venues of a venue file changed between
+ * two reads of the file.
+ * </p>
+ *
+ * <p>
+ * A venue that is in the new version of the file but not the old one is
+ * either <i>changed</i> (if exactly one venue with the same name was removed,
+ * e.g. because its capacity or traffic was edited) or <i>added</i>. Any other
+ * venue that is no longer in the file is <i>removed</i>. Venues that are in
+ * both versions are unchanged, and are the same Venue objects in both.
+ * </p>
+ */
+public class VenueDiff {
+
+    // all of the venues in the new version of the file, in file order
+    private final List<Venue> venues;
+    // the venues that were added, in file order
+    private final List<Venue> added;
+    // the venues that were removed, in their old file order
+    private final List<Venue> removed;
+    // the old version of each changed venue, mapped to its new version
+    private final Map<Venue, Venue> changed;
+
+    /*
+     * invariant:
+     *
+     * venues, added, removed and changed are not null and are unmodifiable &&
+     *
+     * added and the values of changed are in venues, and removed and the keys
+     * of changed are not
+     */
+
+    /**
+     * Computes the difference between the old and new venues of a file.
+     *
+     * @param oldVenues
+     *            the venues of the old version of the file, in file order
+     * @param newVenues
+     *            the venues of the new version of the file, in file order
+     * @throws NullPointerException
+     *             if either list is null
+     */
+    public VenueDiff(List<Venue> oldVenues, List<Venue> newVenues) {
+        // the venues of each version, for fast membership tests
+        Set<Venue> oldSet = new HashSet<>(oldVenues);
+        Set<Venue> newSet = new HashSet<>(newVenues);
+
+        // the new and gone venues, keyed by name
+        Map<String, List<Venue>> addedByName = new LinkedHashMap<>();
+        Map<String, List<Venue>> removedByName = new LinkedHashMap<>();
+        for (Venue venue : newVenues) {
+            if (!oldSet.contains(venue)) {
+                addedByName.computeIfAbsent(venue.getName(),
+                        name -> new ArrayList<>()).add(venue);
+            }
+        }
+        for (Venue venue : oldVenues) {
+            if (!newSet.contains(venue)) {
+                removedByName.computeIfAbsent(venue.getName(),
+                        name -> new ArrayList<>()).add(venue);
+            }
+        }
+
+        Map<Venue, Venue> changedVenues = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Venue>> entry : removedByName.entrySet()) {
+            // the new venues with the same name as the removed ones
+            List<Venue> candidates = addedByName.get(entry.getKey());
+            if (entry.getValue().size() == 1 && candidates != null
+                    && candidates.size() == 1) {
+                changedVenues.put(entry.getValue().get(0), candidates.get(0));
+            }
+        }
+
+        // the new versions of the changed venues, for fast membership tests
+        Set<Venue> changedSet = new HashSet<>(changedVenues.values());
+        List<Venue> addedVenues = new ArrayList<>();
+        for (Venue venue : newVenues) {
+            if (!oldSet.contains(venue) && !changedSet.contains(venue)) {
+                addedVenues.add(venue);
+            }
+        }
+        List<Venue> removedVenues = new ArrayList<>();
+        for (Venue venue : oldVenues) {
+            if (!newSet.contains(venue) && !changedVenues.containsKey(venue)) {
+                removedVenues.add(venue);
+            }
+        }
+
+        this.venues = Collections.unmodifiableList(new ArrayList<>(
+                newVenues));
+        this.added = Collections.unmodifiableList(addedVenues);
+        this.removed = Collections.unmodifiableList(removedVenues);
+        this.changed = Collections.unmodifiableMap(changedVenues);
+    }
+
+    /**
+     * Returns all of the venues in the new version of the file.
+     *
+     * @return an unmodifiable list of the new venues, in file order
+     */
+    public List<Venue> getVenues() {
+        return venues;
+    }
+
+    /**
+     * Returns the venues that are new in this version of the file.
+     *
+     * @return an unmodifiable list of the added venues, in file order
+     */
+    public List<Venue> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the venues that are no longer in the file.
+     *
+     * @return an unmodifiable list of the removed venues
+     */
+    public List<Venue> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the venues that were edited, each old version mapped to its new
+     * version.
+     *
+     * @return an unmodifiable map from the old to the new version of each
+     *         changed venue
+     */
+    public Map<Venue, Venue> getChanged() {
+        return changed;
+    }
+
+    /**
+     * Returns true if no venue was added, removed or changed.
+     *
+     * @return true if the diff is empty
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * Returns a summary of the diff, e.g. "1 added, 0 removed, 2 changed".
+     */
+    @Override
+    public String toString() {
+        return added.size() + " added, " + removed.size() + " removed, "
+                + changed.size() + " changed";
+    }
+
+}
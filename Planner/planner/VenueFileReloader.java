@@ -0,0 +1,249 @@
+package planner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Re-reads a venue file that may be edited while the program is running,
+ * re-parsing only the venue descriptions that have changed since the last
+ * read.
+ * </p>
+ *
+ * <p>
+ * The file is split into blocks, each ending just after an empty line (i.e.
+ * one venue description per block in a valid file). A block whose bytes are
+ * the same as a block of the previous read is not parsed again: the Venue
+ * object read from it last time is reused. Blocks are compared by a 64-bit
+ * hash of their bytes, so the previous contents of the file do not need to be
+ * kept in memory.
+ * </p>
+ *
+ * <p>
+ * The file is read in the same format, and with the same FormatException
+ * messages, as {@link VenueReader#read(String)}, and may likewise be
+ * compressed. If a read fails, the reloader
+ * keeps the venues of the last successful read.
+ * </p>
+ */
+public class VenueFileReloader {
+
+    // the venue file
+    private final Path path;
+    // the venues of the last successful read, in file order
+    private List<Venue> venues = Collections.emptyList();
+    // the venue read from each block of the last successful read, keyed by
+    // the hash of the block's bytes
+    private Map<Long, Venue> blocks = Collections.emptyMap();
+
+    /*
+     * invariant:
+     *
+     * path != null && venues != null && blocks != null &&
+     *
+     * every value of blocks is in venues
+     */
+
+    /**
+     * Creates a reloader for the given venue file. Nothing is read until
+     * {@link #reload()} is called.
+     *
+     * @param path
+     *            the venue file to read
+     * @throws NullPointerException
+     *             if path is null
+     */
+    public VenueFileReloader(Path path) {
+        if (path == null) {
+            throw new NullPointerException("path cannot be null");
+        }
+        this.path = path;
+    }
+
+    /**
+     * Returns the venue file read by this reloader.
+     *
+     * @return the path of the venue file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the venues of the last successful read.
+     *
+     * @return an unmodifiable list of the venues, in file order (empty if the
+     *         file has not been read yet)
+     */
+    public synchronized List<Venue> getVenues() {
+        return venues;
+    }
+
+    /**
+     * Reads the file again, and returns how its venues differ from those of
+     * the last successful read (on the first read, every venue is added).
+     *
+     * @return the difference between the previous and the current venues
+     * @throws IOException
+     *             if there is an error reading the file
+     * @throws FormatException
+     *             if the file is not in the venue file format, or contains
+     *             duplicate venues. The exception message identifies the line
+     *             where the problem was detected.
+     */
+    public synchronized VenueDiff reload() throws IOException,
+            FormatException {
+        return reload(Integer.MAX_VALUE, batch -> {
+        });
+    }
+
+    /**
+     * <p>
+     * Reads the file again like {@link #reload()}, also passing the venues of
+     * the new version of the file to the consumer, in file order, in batches
+     * of batchSize venues (the last batch may hold fewer) as the file is
+     * parsed. This lets a caller show the venues of a large file before all
+     * of them have been read.
+     * </p>
+     *
+     * <p>
+     * The batches are passed on the calling thread, before the file has been
+     * checked for duplicate venues. If the read fails, the venues already
+     * passed are not a valid version of the file, and should be discarded.
+     * </p>
+     *
+     * @param batchSize
+     *            the number of venues in each batch
+     * @param consumer
+     *            the consumer of each batch of venues
+     * @return the difference between the previous and the current venues
+     * @throws IllegalArgumentException
+     *             if batchSize is less than one
+     * @throws IOException
+     *             if there is an error reading the file
+     * @throws FormatException
+     *             if the file is not in the venue file format, or contains
+     *             duplicate venues
+     */
+    public synchronized VenueDiff reload(int batchSize,
+            Consumer<? super List<Venue>> consumer) throws IOException,
+            FormatException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "The batch size must be at least one.");
+        }
+        ByteBuffer buffer = load(path);
+        // the charset used to decode names
+        Charset charset = Charset.defaultCharset();
+
+        // the venues of the new version, the lines that completed them, and
+        // the venue read from each block
+        List<Venue> newVenues = new ArrayList<>();
+        List<Integer> endLines = new ArrayList<>();
+        Map<Long, Venue> newBlocks = new HashMap<>();
+        // the venues not yet passed to the consumer
+        List<Venue> batch = new ArrayList<>();
+        // the number of lines before the current block
+        int linesBefore = 0;
+        // the start of the current block
+        int start = 0;
+        while (start < buffer.limit()) {
+            int end = MappedVenueReader.nextBoundary(buffer, start);
+            long hash = hash(buffer, start, end);
+            Venue venue = blocks.get(hash);
+            if (venue == null) {
+                // the venue read from the block (a valid block holds one)
+                List<Venue> parsed = new ArrayList<>(1);
+                new VenueBlockParser(buffer, start, end, linesBefore, charset)
+                        .parse(parsed, new ArrayList<>(1));
+                venue = parsed.get(0);
+            }
+            linesBefore += countLines(buffer, start, end);
+            newVenues.add(venue);
+            endLines.add(linesBefore);
+            newBlocks.put(hash, venue);
+            start = end;
+            batch.add(venue);
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+        MappedVenueReader.checkDuplicates(newVenues, endLines);
+
+        VenueDiff diff = new VenueDiff(venues, newVenues);
+        venues = diff.getVenues();
+        blocks = newBlocks;
+        return diff;
+    }
+
+    /**
+     * Returns the contents of the given file: its bytes, or its decompressed
+     * bytes if it is compressed.
+     */
+    private static ByteBuffer load(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (!MappedVenueReader.isCompressed(buffer)) {
+            return buffer;
+        }
+        // the decompressed contents
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = VenueReader.openStream(path)) {
+            byte[] bytes = new byte[1 << 16];
+            int count;
+            while ((count = in.read(bytes)) > 0) {
+                out.write(bytes, 0, count);
+            }
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * Returns a 64-bit hash of the bytes [from, to) of the buffer.
+     */
+    private static long hash(ByteBuffer buffer, int from, int to) {
+        // FNV-1a, finished with a mixing step to spread the bits
+        long result = 0xCBF29CE484222325L;
+        for (int i = from; i < to; i++) {
+            result ^= buffer.get(i) & 0xFF;
+            result *= 0x100000001B3L;
+        }
+        return Traffic.mix(result ^ (to - from));
+    }
+
+    /**
+     * Returns the number of lines that start in [from, to) of the buffer.
+     *
+     * @require from is the start of a line, and to is the start of a line or
+     *          the end of the buffer
+     */
+    private static int countLines(ByteBuffer buffer, int from, int to) {
+        // the number of line terminators seen
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || (b == '\r' && (i + 1 == to || buffer.get(
+                    i + 1) != '\n'))) {
+                result++;
+            }
+        }
+        if (to > from) {
+            // the last byte of the region
+            byte last = buffer.get(to - 1);
+            if (last != '\n' && last != '\r') {
+                result++; // the last line has no terminator
+            }
+        }
+        return result;
+    }
+
+}
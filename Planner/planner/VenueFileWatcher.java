@@ -0,0 +1,138 @@
+package planner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * Watches a venue file for changes, and reloads it (with a
+ * {@link VenueFileReloader}) on a background thread whenever it is modified.
+ * </p>
+ *
+ * <p>
+ * Editors often save a file in several steps, so after a change is seen the
+ * watcher waits until the file has been quiet for a short time before
+ * reloading it. A successful reload that changes the venues is passed to the
+ * change handler; a failed reload (e.g. a format error in the edited file) is
+ * passed to the error handler. Both handlers are called on the watcher's
+ * thread.
+ * </p>
+ */
+public class VenueFileWatcher implements Closeable {
+
+    // the time, in milliseconds, the file must be quiet before it is reloaded
+    private final static long SETTLE_MILLIS = 200;
+
+    // the reloader for the watched file
+    private final VenueFileReloader reloader;
+    // the handler for successful reloads that change the venues
+    private final Consumer<VenueDiff> onChange;
+    // the handler for failed reloads
+    private final Consumer<Exception> onError;
+    // the watch service for the directory holding the file
+    private final WatchService watchService;
+    // the thread that waits for changes and reloads the file
+    private final Thread thread;
+
+    /**
+     * Creates a watcher for the file of the given reloader. The file is not
+     * watched until {@link #start()} is called.
+     *
+     * @param reloader
+     *            the reloader for the file to watch
+     * @param onChange
+     *            called with the diff of each reload that changes the venues
+     * @param onError
+     *            called with the exception thrown by each failed reload
+     * @throws NullPointerException
+     *             if any of the arguments are null
+     * @throws IOException
+     *             if the directory of the file cannot be watched
+     */
+    public VenueFileWatcher(VenueFileReloader reloader,
+            Consumer<VenueDiff> onChange, Consumer<Exception> onError)
+            throws IOException {
+        if (reloader == null || onChange == null || onError == null) {
+            throw new NullPointerException("arguments cannot be null");
+        }
+        this.reloader = reloader;
+        this.onChange = onChange;
+        this.onError = onError;
+        // the directory holding the file
+        Path directory = reloader.getPath().toAbsolutePath().getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, "venue-file-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the file.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching the file. Handlers may still be called by a reload that
+     * is already in progress.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Waits for changes to the file and reloads it, until the watch service
+     * is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                if (!isFileChanged(watchService.take())) {
+                    continue;
+                }
+                // wait until no more changes arrive for a while
+                WatchKey key;
+                while ((key = watchService.poll(SETTLE_MILLIS,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    isFileChanged(key);
+                }
+                try {
+                    VenueDiff diff = reloader.reload();
+                    if (!diff.isEmpty()) {
+                        onChange.accept(diff);
+                    }
+                } catch (IOException | FormatException e) {
+                    onError.accept(e);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * Returns true if any of the events of the given key are for the watched
+     * file (or events may have been lost), and resets the key.
+     */
+    private boolean isFileChanged(WatchKey key) {
+        // the name of the watched file
+        Path name = reloader.getPath().getFileName();
+        // whether an event for the file was seen
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || name
+                    .equals(event.context())) {
+                result = true;
+            }
+        }
+        key.reset();
+        return result;
+    }
+
+}
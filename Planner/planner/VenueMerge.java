@@ -0,0 +1,409 @@
+package planner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.*;
+
+/**
+ * <p>
+ * The venues of several venue files (e.g. one per regional council), merged
+ * into one catalog.
+ * </p>
+ *
+ * <p>
+ * The files are read concurrently, one file per thread, in the format
+ * described in {@link VenueReader#read(String)}. All of the files share one
+ * pool of interned corridors and locations, so a corridor that appears in
+ * many files is represented by a single Corridor object. Compressed files are
+ * decompressed into memory before they are parsed.
+ * </p>
+ *
+ * <p>
+ * The merged venues are in file order (the files in the order given, and the
+ * venues of each file in the order they appear in it). A venue that appears
+ * in more than one file is only included once, from the first file it
+ * appears in, and is reported as a duplicate. Corridors between the same two
+ * locations (in the same direction) that have different capacities in
+ * different venue descriptions are reported as conflicts.
+ * </p>
+ */
+public class VenueMerge {
+
+    // the files that were merged, in order
+    private final List<Path> paths;
+    // the merged venues, in file order
+    private final List<Venue> venues;
+    // the venues that appear in more than one file
+    private final List<Duplicate> duplicates;
+    // the corridors with conflicting capacities
+    private final List<Conflict> conflicts;
+
+    /*
+     * invariant:
+     *
+     * paths, venues, duplicates and conflicts are not null and are
+     * unmodifiable && venues has no duplicates
+     */
+
+    /**
+     * Creates a merge with the given (unmodifiable) contents.
+     */
+    private VenueMerge(List<Path> paths, List<Venue> venues,
+            List<Duplicate> duplicates, List<Conflict> conflicts) {
+        this.paths = paths;
+        this.venues = venues;
+        this.duplicates = duplicates;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * Reads the given venue files concurrently, and merges their venues.
+     *
+     * @param paths
+     *            the venue files to read, in the order their venues should be
+     *            merged
+     * @return the merge of the venues in the files
+     * @throws NullPointerException
+     *             if paths is null or contains null
+     * @throws IOException
+     *             if there is an error reading one of the files, or one is
+     *             too large to be read
+     * @throws FormatException
+     *             if one of the files is not in the venue file format, or
+     *             contains the same venue twice. The message identifies the
+     *             file and the line where the problem was detected (for the
+     *             first file in the list with a problem).
+     */
+    public static VenueMerge read(List<Path> paths) throws IOException,
+            FormatException {
+        // the interned corridors and locations shared by every file
+        Map<String, Corridor> corridors = new ConcurrentHashMap<>();
+        Map<String, Location> locations = new ConcurrentHashMap<>();
+        // the result of reading each file, in order
+        List<VenueFile> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (path == null) {
+                throw new NullPointerException("paths cannot contain null");
+            }
+            files.add(new VenueFile(path));
+        }
+        files.parallelStream().forEach(file -> file.read(corridors,
+                locations));
+        for (VenueFile file : files) {
+            if (file.ioError != null) {
+                throw file.ioError;
+            }
+            if (file.formatError != null) {
+                throw new FormatException(file.path + ": " + file.formatError
+                        .getMessage());
+            }
+        }
+
+        // the file each venue was first read from, in merge order
+        Map<Venue, Path> merged = new LinkedHashMap<>();
+        List<Duplicate> duplicates = new ArrayList<>();
+        for (VenueFile file : files) {
+            for (Venue venue : file.venues) {
+                // the first file with the venue, if it was already merged
+                Path first = merged.putIfAbsent(venue, file.path);
+                if (first != null) {
+                    duplicates.add(new Duplicate(venue, first, file.path));
+                }
+            }
+        }
+
+        return new VenueMerge(Collections.unmodifiableList(new ArrayList<>(
+                paths)), Collections.unmodifiableList(new ArrayList<>(merged
+                        .keySet())), Collections.unmodifiableList(duplicates),
+                Collections.unmodifiableList(findConflicts(files)));
+    }
+
+    /**
+     * Reads every regular, non-hidden file in the given directory as a venue
+     * file (in order of file name), and merges their venues.
+     *
+     * @param directory
+     *            the directory holding the venue files
+     * @return the merge of the venues in the files
+     * @throws NullPointerException
+     *             if directory is null
+     * @throws IOException
+     *             if the directory can't be listed, or there is an error
+     *             reading one of the files
+     * @throws FormatException
+     *             if one of the files is not in the venue file format, or
+     *             contains the same venue twice
+     */
+    public static VenueMerge readDirectory(Path directory) throws IOException,
+            FormatException {
+        // the venue files in the directory
+        List<Path> paths;
+        try (Stream<Path> entries = Files.list(directory)) {
+            paths = entries.filter(Files::isRegularFile).filter(
+                    path -> !path.getFileName().toString().startsWith("."))
+                    .sorted().collect(Collectors.toList());
+        }
+        return read(paths);
+    }
+
+    /**
+     * Returns the files that were merged.
+     *
+     * @return an unmodifiable list of the files, in merge order
+     */
+    public List<Path> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Returns the merged venues.
+     *
+     * @return an unmodifiable list of the different venues in the files, in
+     *         file order
+     */
+    public List<Venue> getVenues() {
+        return venues;
+    }
+
+    /**
+     * Returns the venues that appear in more than one file.
+     *
+     * @return an unmodifiable list with one entry for each repeated
+     *         appearance of a venue, in file order
+     */
+    public List<Duplicate> getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the corridors whose capacity differs between venue
+     * descriptions.
+     *
+     * @return an unmodifiable list of the conflicts, in order of the first
+     *         appearance of each corridor
+     */
+    public List<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Returns the corridors of the given files that have more than one
+     * capacity.
+     */
+    private static List<Conflict> findConflicts(List<VenueFile> files) {
+        // the files using each capacity of each corridor, keyed by the
+        // corridor's start and end locations
+        Map<List<Location>, SortedMap<Integer, Set<Path>>> capacities =
+                new LinkedHashMap<>();
+        for (VenueFile file : files) {
+            for (Corridor corridor : file.corridors) {
+                capacities.computeIfAbsent(Arrays.asList(corridor.getStart(),
+                        corridor.getEnd()), ends -> new TreeMap<>())
+                        .computeIfAbsent(corridor.getCapacity(),
+                                capacity -> new LinkedHashSet<>())
+                        .add(file.path);
+            }
+        }
+        // the conflicts found
+        List<Conflict> result = new ArrayList<>();
+        for (Map.Entry<List<Location>, SortedMap<Integer, Set<Path>>> entry
+                : capacities.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                result.add(new Conflict(entry.getKey().get(0), entry.getKey()
+                        .get(1), entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A venue that appears in more than one venue file.
+     */
+    public static class Duplicate {
+
+        // the repeated venue
+        private final Venue venue;
+        // the first file the venue appears in, and the file repeating it
+        private final Path first;
+        private final Path duplicate;
+
+        private Duplicate(Venue venue, Path first, Path duplicate) {
+            this.venue = venue;
+            this.first = first;
+            this.duplicate = duplicate;
+        }
+
+        /**
+         * Returns the repeated venue.
+         *
+         * @return the venue
+         */
+        public Venue getVenue() {
+            return venue;
+        }
+
+        /**
+         * Returns the first file the venue appears in (the one it was merged
+         * from).
+         *
+         * @return the first file with the venue
+         */
+        public Path getFirstPath() {
+            return first;
+        }
+
+        /**
+         * Returns the file that repeats the venue.
+         *
+         * @return the file with the repeated venue
+         */
+        public Path getDuplicatePath() {
+            return duplicate;
+        }
+
+        /**
+         * Returns a string of the form "NAME (CAPACITY) in FIRST and
+         * DUPLICATE".
+         */
+        @Override
+        public String toString() {
+            return venue.getName() + " (" + venue.getCapacity() + ") in "
+                    + first + " and " + duplicate;
+        }
+    }
+
+    /**
+     * A corridor whose capacity differs between venue descriptions.
+     */
+    public static class Conflict {
+
+        // the start and end of the corridor
+        private final Location start;
+        private final Location end;
+        // the files using each capacity of the corridor
+        private final SortedMap<Integer, Set<Path>> capacities;
+
+        private Conflict(Location start, Location end,
+                SortedMap<Integer, Set<Path>> capacities) {
+            this.start = start;
+            this.end = end;
+            this.capacities = Collections.unmodifiableSortedMap(capacities);
+        }
+
+        /**
+         * Returns the start location of the corridor.
+         *
+         * @return the start of the corridor
+         */
+        public Location getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the end location of the corridor.
+         *
+         * @return the end of the corridor
+         */
+        public Location getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns the capacities given to the corridor, each mapped to the
+         * files that use it.
+         *
+         * @return an unmodifiable map from each capacity (in ascending order)
+         *         to the files in which the corridor has that capacity
+         */
+        public SortedMap<Integer, Set<Path>> getCapacities() {
+            return capacities;
+        }
+
+        /**
+         * Returns a string of the form "START to END: CAPACITY in FILES, ...".
+         */
+        @Override
+        public String toString() {
+            // the description under construction
+            StringBuilder result = new StringBuilder(start + " to " + end
+                    + ":");
+            for (Map.Entry<Integer, Set<Path>> entry : capacities.entrySet()) {
+                result.append(" " + entry.getKey() + " in " + entry.getValue());
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * A venue file being read as part of a merge.
+     */
+    private static class VenueFile {
+
+        // the file
+        private final Path path;
+        // the venues read from the file
+        private List<Venue> venues;
+        // the corridors used by the venues of the file
+        private Set<Corridor> corridors;
+        // the error reading the file, if there was one
+        private IOException ioError;
+        private FormatException formatError;
+
+        private VenueFile(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Reads the file, interning its corridors and locations in the given
+         * concurrent maps, and records the venues read or the error.
+         */
+        private void read(Map<String, Corridor> corridorPool,
+                Map<String, Location> locationPool) {
+            try {
+                ByteBuffer buffer = load(path);
+                venues = new ArrayList<>();
+                // the lines that completed each venue
+                List<Integer> endLines = new ArrayList<>();
+                new VenueBlockParser(buffer, 0, buffer.limit(), 0, Charset
+                        .defaultCharset(), corridorPool, locationPool).parse(
+                                venues, endLines);
+                MappedVenueReader.checkDuplicates(venues, endLines);
+                corridors = new LinkedHashSet<>();
+                for (Venue venue : venues) {
+                    corridors.addAll(venue.getCapacityTraffic()
+                            .getCorridorsWithTraffic());
+                }
+            } catch (IOException e) {
+                ioError = e;
+            } catch (FormatException e) {
+                formatError = e;
+            }
+        }
+
+        /**
+         * Returns the contents of the given file: the mapped file itself, or
+         * its decompressed bytes if it is compressed.
+         */
+        private static ByteBuffer load(Path path) throws IOException {
+            ByteBuffer buffer = MappedVenueReader.map(path);
+            if (!MappedVenueReader.isCompressed(buffer)) {
+                return buffer;
+            }
+            // the decompressed contents
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = VenueReader.openStream(path)) {
+                byte[] bytes = new byte[1 << 16];
+                int count;
+                while ((count = in.read(bytes)) > 0) {
+                    out.write(bytes, 0, count);
+                }
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        }
+    }
+
+}
@@ -1,16 +1,26 @@
 package planner;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
- * Provides a method to read in a list of venues from a text file.
+ * Provides methods to read in venues from a text file, either all at once as
+ * a list, or lazily as a stream.
  */
 public class VenueReader {
 
     // definition of an empty line
     private final static String EMPTY_LINE = "";
+    // the first two bytes of a gzip stream
+    private final static int GZIP_MAGIC = 0x1F8B;
+    // the size of the buffers used when reading (possibly compressed) files
+    private final static int BUFFER_SIZE = 1 << 16;
 
     /**
      * <p>
@@ -90,6 +100,13 @@ public class VenueReader {
      * </p>
      * 
      * <p>
+     * The file may be compressed with gzip or zlib (deflate), in which case it
+     * is decompressed while it is being read, without writing the
+     * decompressed text anywhere. Compression is detected from the first
+     * bytes of the file, not its name.
+     * </p>
+     * 
+     * <p>
      * Two equivalent venues shouldn't appear twice in the file.
      * </p>
      * 
@@ -116,31 +133,204 @@ public class VenueReader {
      */
     public static List<Venue> read(String fileName) throws IOException,
             FormatException {
-        // scanner for reading the file a line at a time
-        Scanner in = new Scanner(new FileReader(fileName));
         // the number of the line being read
         AtomicInteger lineNumber = new AtomicInteger(0);
         // the venues that will be read from the file
         List<Venue> venues = new ArrayList<>();
+        // the same venues, indexed by their (cached) hash codes so that
+        // duplicates are found without comparing against every earlier venue
+        Set<Venue> seen = new HashSet<>();
 
-        // read venues one at a time from the file
-        while (in.hasNextLine()) {
-            // the name, capacity, and traffic of the venue being read
-            String name = readVenueName(lineNumber, in);
-            int capacity = readVenueCapacity(lineNumber, in);
-            Traffic capacityTraffic = readTraffic(lineNumber, in, capacity);
-            // the venue read
-            Venue venue = new Venue(name, capacity, capacityTraffic);
+        // scanner for reading the file a line at a time
+        try (Scanner in = new Scanner(openReader(Paths.get(fileName)))) {
+            // read venues one at a time from the file
+            while (hasNextLine(in)) {
+                // the name, capacity, and traffic of the venue being read
+                String name = readVenueName(lineNumber, in);
+                int capacity = readVenueCapacity(lineNumber, in);
+                Traffic capacityTraffic = readTraffic(lineNumber, in,
+                        capacity);
+                // the venue read
+                Venue venue = new Venue(name, capacity, capacityTraffic);
 
-            if (venues.contains(venue)) {
-                throw new FormatException("Line " + lineNumber
-                        + ": duplicate venue detected.");
+                if (!seen.add(venue)) {
+                    throw new FormatException("Line " + lineNumber
+                            + ": duplicate venue detected.");
+                }
+                venues.add(venue);
             }
-            venues.add(venue);
         }
         return venues;
     }
 
+    /**
+     * Returns a lazy stream of the venues described in the given file, in the
+     * order that they appear in the file, without checking for duplicate
+     * venues. This is the same as stream(path, false).
+     * 
+     * @param path
+     *            the file to read from.
+     * @return a stream of the venues in the file, which must be closed to
+     *         close the file.
+     * @throws IOException
+     *             if the file can't be opened.
+     */
+    public static Stream<Venue> stream(Path path) throws IOException {
+        return stream(path, false);
+    }
+
+    /**
+     * <p>
+     * Returns a lazy stream of the venues described in the given file (in the
+     * format described in read(String)), in the order that they appear in the
+     * file.
+     * </p>
+     * 
+     * <p>
+     * Venues are read from the file one at a time as the stream is consumed,
+     * so the memory used does not depend on the size of the file. The file is
+     * closed when the stream is closed, so the stream should be used in a
+     * try-with-resources statement.
+     * </p>
+     * 
+     * <p>
+     * If checkDuplicates is true, the stream remembers the fingerprint of each
+     * venue read (about 16 bytes per venue) and reports a venue that is the
+     * same as an earlier one in the same way as read(String).
+     * </p>
+     * 
+     * <p>
+     * Errors found while the stream is being consumed are thrown from the
+     * stream operation that was consuming it: an UncheckedFormatException
+     * (wrapping the FormatException that read(String) would have thrown) for
+     * format errors, and an UncheckedIOException for errors reading the file.
+     * </p>
+     * 
+     * @param path
+     *            the file to read from.
+     * @param checkDuplicates
+     *            whether duplicate venues should be reported as format errors.
+     * @return a stream of the venues in the file, which must be closed to
+     *         close the file.
+     * @throws IOException
+     *             if the file can't be opened.
+     */
+    public static Stream<Venue> stream(Path path, boolean checkDuplicates)
+            throws IOException {
+        // scanner for reading the file a line at a time
+        Scanner in = new Scanner(openReader(path));
+        // the number of the line being read
+        AtomicInteger lineNumber = new AtomicInteger(0);
+        // the fingerprints of the venues read so far (if checking duplicates)
+        FingerprintSet seen = checkDuplicates ? new FingerprintSet() : null;
+
+        Iterator<Venue> venues = new Iterator<Venue>() {
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    return hasNextLine(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public Venue next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    // the name, capacity, and traffic of the venue being read
+                    String name = readVenueName(lineNumber, in);
+                    int capacity = readVenueCapacity(lineNumber, in);
+                    Traffic capacityTraffic = readTraffic(lineNumber, in,
+                            capacity);
+                    // the venue read
+                    Venue venue = new Venue(name, capacity, capacityTraffic);
+
+                    if (seen != null && !seen.add(venue.getFingerprint())) {
+                        throw new FormatException("Line " + lineNumber
+                                + ": duplicate venue detected.");
+                    }
+                    return venue;
+                } catch (FormatException e) {
+                    throw new UncheckedFormatException(e);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                venues, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(in::close);
+    }
+
+    /**
+     * Opens the given venue file for reading as text in the default charset,
+     * transparently decompressing it if it is compressed with gzip or zlib.
+     * 
+     * @throws IOException
+     *             if the file can't be opened, or its compression header is
+     *             invalid.
+     */
+    static Reader openReader(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(openStream(path),
+                Charset.defaultCharset()), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens the given file for reading as bytes, transparently decompressing
+     * it if it is compressed with gzip or zlib.
+     * 
+     * @throws IOException
+     *             if the file can't be opened, or its compression header is
+     *             invalid.
+     */
+    static InputStream openStream(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path),
+                BUFFER_SIZE);
+        try {
+            // peek at the first two bytes of the file (negative if the file
+            // is shorter than that)
+            in.mark(2);
+            int header = (in.read() << 8) | in.read();
+            in.reset();
+            if (header == GZIP_MAGIC) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (isZlibHeader(header)) {
+                in = new InflaterInputStream(in);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Returns true if the given first two bytes of a file are the magic number
+     * of a gzip stream or the header of a zlib stream, i.e. if the file must
+     * be decompressed before it can be parsed.
+     * 
+     * @param header
+     *            the first two bytes of a file, as an unsigned 16-bit number
+     */
+    static boolean isCompressed(int header) {
+        return header == GZIP_MAGIC || isZlibHeader(header);
+    }
+
+    /**
+     * Returns true if the given two bytes are the header written by zlib for
+     * a deflate stream with a 32K window (the only window size in use), at any
+     * of the standard compression levels. Text starting with "x^" has a valid
+     * header checksum but is not a standard header, so it is not mistaken for
+     * compressed data.
+     */
+    private static boolean isZlibHeader(int header) {
+        return header == 0x7801 || header == 0x789C || header == 0x78DA;
+    }
+
     /**
      * Consumes the next line from the scanner, returning the venue name read
      * from that line.
@@ -149,6 +339,8 @@ public class VenueReader {
      * @ensure Consumes the next line from scanner, and returns the venue name
      *         from that line (i.e. the whole line). The lineNumber is
      *         incremented once for each line that is consumed from in.
+     * @throws IOException
+     *             if there is an error reading from the file.
      * @throws FormatException
      *             if there is no next line in the scanner, or the line is the
      *             empty string "" (i.e. a venue name can't be the empty
@@ -156,11 +348,11 @@ public class VenueReader {
      *             lineNumber given, and describes the nature of the error.
      */
     private static String readVenueName(AtomicInteger lineNumber, Scanner in)
-            throws FormatException {
+            throws IOException, FormatException {
         // the name of the venue to be read from the next line
         String name = null;
-        if (in.hasNextLine()) {
-            name = in.nextLine();
+        if (hasNextLine(in)) {
+            name = nextLine(in);
             lineNumber.incrementAndGet();
         } else {
             throw new FormatException("Line " + lineNumber
@@ -181,6 +373,8 @@ public class VenueReader {
      * @ensure reads next line from scanner, and returns the venue capacity from
      *         that line. The lineNumber is incremented once for each line that
      *         is consumed from in.
+     * @throws IOException
+     *             if there is an error reading from the file.
      * @throws FormatException
      *             if there is no next line in the scanner, or the line does not
      *             contain one positive integer denoting the venue capacity. The
@@ -188,8 +382,8 @@ public class VenueReader {
      *             and describes the nature of the error.
      */
     private static int readVenueCapacity(AtomicInteger lineNumber, Scanner in)
-            throws FormatException {
-        if (!in.hasNextLine()) {
+            throws IOException, FormatException {
+        if (!hasNextLine(in)) {
             throw new FormatException("Line " + lineNumber
                     + ": venue capacity expected, but line is missing.");
         }
@@ -198,7 +392,7 @@ public class VenueReader {
         int capacity = 0;
         try {
             // the line holding the capacity
-            String capacityString = in.nextLine();
+            String capacityString = nextLine(in);
             lineNumber.incrementAndGet();
             capacity = Integer.parseInt(capacityString);
         } catch (NumberFormatException e) {
@@ -225,6 +419,8 @@ public class VenueReader {
      *         consumed, and returns the traffic read from those lines. The
      *         lineNumber is incremented once for each line that is consumed
      *         from the scanner in.
+     * @throws IOException
+     *             if there is an error reading from the file.
      * @throws FormatException
      *             If any one of the traffic lines read are incorrectly
      *             formatted; if the end of the scanner is reached before an
@@ -235,7 +431,7 @@ public class VenueReader {
      *             the nature of the error.
      */
     private static Traffic readTraffic(AtomicInteger lineNumber, Scanner in,
-            int venueCapacity) throws FormatException {
+            int venueCapacity) throws IOException, FormatException {
         // the traffic read from the scanner
         Traffic capacityTraffic = new Traffic();
         // the current line being read
@@ -274,16 +470,18 @@ public class VenueReader {
      * @ensure Consumes and returns the next line from the given scanner. The
      *         lineNumber is incremented once for each line that is consumed
      *         from in.
+     * @throws IOException
+     *             if there is an error reading from the file.
      * @throws FormatException
      *             If there is no next line to read from the input. The
      *             exception has a message that identifies the lineNumber given,
      *             and describes the nature of the error.
      */
     private static String getNextLine(AtomicInteger lineNumber, Scanner in)
-            throws FormatException {
+            throws IOException, FormatException {
         String line = null;
-        if (in.hasNextLine()) {
-            line = in.nextLine();
+        if (hasNextLine(in)) {
+            line = nextLine(in);
             lineNumber.incrementAndGet();
         } else {
             throw new FormatException("Line " + lineNumber
@@ -292,6 +490,42 @@ public class VenueReader {
         return line;
     }
 
+    /**
+     * Returns whether the scanner has another line, rethrowing the error (if
+     * any) that ended its input. A Scanner treats an error reading its source
+     * (such as a truncated compressed file) as the end of the input, so
+     * without this check the error would be reported as a format error, or
+     * not at all.
+     * 
+     * @throws IOException
+     *             if reading the scanner's source failed.
+     */
+    private static boolean hasNextLine(Scanner in) throws IOException {
+        if (in.hasNextLine()) {
+            return true;
+        }
+        if (in.ioException() != null) {
+            throw in.ioException();
+        }
+        return false;
+    }
+
+    /**
+     * Consumes and returns the next line from the given scanner, rethrowing
+     * the error (if any) that cut the line short.
+     * 
+     * @throws IOException
+     *             if reading the scanner's source failed.
+     */
+    private static String nextLine(Scanner in) throws IOException {
+        // the line read
+        String line = in.nextLine();
+        if (in.ioException() != null) {
+            throw in.ioException();
+        }
+        return line;
+    }
+
     /**
      * Consumes the next token from the lineScanner, and returns the associated
      * corridor object. The token denoting the corridor should be of the form
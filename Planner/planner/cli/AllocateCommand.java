@@ -0,0 +1,331 @@
+package planner.cli;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import planner.*;
+
+/**
+ * <p>
+ * A command-line program that allocates the events in an event file to the
+ * venues in a venue file, without a graphical user interface, and writes the
+ * allocation and the resulting traffic on each corridor to standard output.
+ * </p>
+ *
+ * <p>
+ * Usage: java planner.cli.AllocateCommand [--engine=backtracking|exhaustive]
+ * [--format=csv|json] [--timeout=SECONDS] VENUES EVENTS
+ * </p>
+ *
+ * <p>
+ * VENUES is a venue file (which may be compressed) or a directory of venue
+ * files to merge, and EVENTS is an event file as read by
+ * {@link EventReader}. The backtracking engine (the default) stops at the
+ * first safe allocation it finds; the exhaustive engine enumerates every safe
+ * allocation, and is only practical for a handful of events. If a timeout is
+ * given, the search is abandoned after that many seconds.
+ * </p>
+ *
+ * <p>
+ * In CSV format, the output is a table of the allocations (one row per event,
+ * in the order of the event file), a blank line, and a table of the corridors
+ * with traffic (in the natural ordering of corridors). In JSON format, it is a
+ * single object with an "allocations" array and a "corridors" array. Nothing
+ * is written to standard output unless a safe allocation is found.
+ * </p>
+ *
+ * <p>
+ * This class only uses the planner package, so it does not load any JavaFX
+ * classes.
+ * </p>
+ */
+public class AllocateCommand {
+
+    /** The exit status when a safe allocation was found and written. */
+    public final static int EXIT_ALLOCATED = 0;
+    /** The exit status when a venue or event file could not be read. */
+    public final static int EXIT_INPUT_ERROR = 1;
+    /** The exit status when the command line is not valid. */
+    public final static int EXIT_USAGE = 2;
+    /** The exit status when there is no safe allocation. */
+    public final static int EXIT_INFEASIBLE = 3;
+    /** The exit status when the search did not finish before the timeout. */
+    public final static int EXIT_TIMEOUT = 4;
+
+    // the usage message
+    private final static String USAGE = "Usage: java planner.cli."
+            + "AllocateCommand [--engine=backtracking|exhaustive] "
+            + "[--format=csv|json] [--timeout=SECONDS] VENUES EVENTS";
+
+    // the search engine to use
+    private String engine = "backtracking";
+    // the output format
+    private String format = "csv";
+    // the timeout in milliseconds, or 0 for no timeout
+    private long timeoutMillis;
+    // the venue file or directory
+    private Path venuePath;
+    // the event file
+    private Path eventPath;
+
+    /**
+     * Runs the program with the given command-line arguments, and exits with
+     * the status returned by {@link #run(String[], PrintStream, PrintStream)}.
+     *
+     * @param args
+     *            the command-line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the program with the given command-line arguments, writing the
+     * allocation to out and any messages to err.
+     *
+     * @param args
+     *            the command-line arguments
+     * @param out
+     *            the stream to write the allocation and corridor loads to
+     * @param err
+     *            the stream to write error messages to
+     * @return one of the EXIT_ constants of this class
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        // the parsed command line
+        AllocateCommand command = new AllocateCommand();
+        try {
+            command.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        List<Venue> venues;
+        List<Event> events;
+        try {
+            venues = Files.isDirectory(command.venuePath) ? VenueMerge
+                    .readDirectory(command.venuePath).getVenues()
+                    : MappedVenueReader.read(command.venuePath.toString());
+            events = EventReader.read(command.eventPath.toString());
+        } catch (IOException | FormatException e) {
+            err.println(e.getMessage());
+            return EXIT_INPUT_ERROR;
+        }
+
+        // the allocation found, or null if there is none
+        Map<Event, Venue> allocation;
+        try {
+            allocation = command.allocate(events, venues);
+        } catch (TimeoutException e) {
+            err.println("No allocation was found within the timeout.");
+            return EXIT_TIMEOUT;
+        }
+        if (allocation == null) {
+            err.println("There is no safe allocation of the events to the "
+                    + "venues.");
+            return EXIT_INFEASIBLE;
+        }
+
+        // the writer for the output, flushed once at the end
+        PrintWriter writer = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        if (command.format.equals("json")) {
+            writeJson(writer, events, allocation);
+        } else {
+            writeCsv(writer, events, allocation);
+        }
+        writer.flush();
+        return EXIT_ALLOCATED;
+    }
+
+    /**
+     * Parses the command-line arguments into the fields of this command.
+     *
+     * @throws IllegalArgumentException
+     *             if the arguments are not valid
+     */
+    private void parse(String[] args) {
+        // the file arguments, in order
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+                if (!engine.equals("backtracking") && !engine.equals(
+                        "exhaustive")) {
+                    throw new IllegalArgumentException("Unknown engine: "
+                            + engine);
+                }
+            } else if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+                if (!format.equals("csv") && !format.equals("json")) {
+                    throw new IllegalArgumentException("Unknown format: "
+                            + format);
+                }
+            } else if (arg.startsWith("--timeout=")) {
+                try {
+                    timeoutMillis = (long) (Double.parseDouble(arg.substring(
+                            "--timeout=".length())) * 1000);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid timeout: "
+                            + arg);
+                }
+                if (timeoutMillis <= 0) {
+                    throw new IllegalArgumentException(
+                            "The timeout must be positive.");
+                }
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.size() != 2) {
+            throw new IllegalArgumentException(
+                    "Expected a venue file and an event file.");
+        }
+        venuePath = Paths.get(files.get(0));
+        eventPath = Paths.get(files.get(1));
+    }
+
+    /**
+     * Runs the chosen engine on a background thread, waiting for it for at
+     * most the timeout. The backtracking search is cancelled when the timeout
+     * expires; the exhaustive search can't be cancelled, but runs on a daemon
+     * thread, so it does not stop the program from exiting.
+     *
+     * @return a safe allocation, or null if there is none
+     * @throws TimeoutException
+     *             if the search did not finish within the timeout
+     */
+    private Map<Event, Venue> allocate(List<Event> events,
+            List<Venue> venues) throws TimeoutException {
+        // the search, run on its own thread
+        FutureTask<Map<Event, Venue>> search = new FutureTask<>(() -> {
+            if (engine.equals("exhaustive")) {
+                return Allocator.allocate(new ArrayList<>(events),
+                        new ArrayList<>(venues));
+            }
+            return Allocator.allocate(events, venues, new Traffic(),
+                    new SearchMonitor() {
+                        @Override
+                        public void onProgress(long nodes) {
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return Thread.currentThread().isInterrupted();
+                        }
+                    });
+        });
+        // the thread running the search
+        Thread thread = new Thread(search, "allocator");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            return timeoutMillis > 0 ? search.get(timeoutMillis,
+                    TimeUnit.MILLISECONDS) : search.get();
+        } catch (TimeoutException e) {
+            search.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            search.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while searching.");
+        } catch (ExecutionException e) {
+            // the engines only throw unchecked exceptions
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Returns the traffic booked on each corridor by the given allocation, in
+     * the natural ordering of corridors.
+     */
+    private static SortedMap<Corridor, Integer> loads(
+            Map<Event, Venue> allocation) {
+        // the ledger the allocation's traffic is booked in
+        CorridorLedger ledger = new CorridorLedger();
+        for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+            ledger.reserve(entry.getValue().getSharedTraffic(entry.getKey()));
+        }
+        return ledger.getLoads();
+    }
+
+    /**
+     * Writes the allocation and the corridor loads as two CSV tables
+     * separated by a blank line.
+     */
+    private static void writeCsv(PrintWriter writer, List<Event> events,
+            Map<Event, Venue> allocation) {
+        writer.print("event,size,venue,capacity\r\n");
+        for (Event event : events) {
+            // the venue of the event
+            Venue venue = allocation.get(event);
+            writer.print(csv(event.getName()) + "," + event.getSize() + ","
+                    + csv(venue.getName()) + "," + venue.getCapacity()
+                    + "\r\n");
+        }
+        writer.print("\r\n");
+        writer.print("start,end,capacity,load\r\n");
+        for (Map.Entry<Corridor, Integer> entry : loads(allocation)
+                .entrySet()) {
+            // the corridor with traffic
+            Corridor corridor = entry.getKey();
+            writer.print(csv(corridor.getStart().getName()) + "," + csv(
+                    corridor.getEnd().getName()) + "," + corridor
+                            .getCapacity() + "," + entry.getValue() + "\r\n");
+        }
+    }
+
+    /**
+     * Writes the allocation and the corridor loads as a JSON object.
+     */
+    private static void writeJson(PrintWriter writer, List<Event> events,
+            Map<Event, Venue> allocation) {
+        writer.print("{\"allocations\":[");
+        for (int i = 0; i < events.size(); i++) {
+            // the event and its venue
+            Event event = events.get(i);
+            Venue venue = allocation.get(event);
+            writer.print((i == 0 ? "" : ",") + "\n{\"event\":" + Json.quote(
+                    event.getName()) + ",\"size\":" + event.getSize()
+                    + ",\"venue\":" + Json.quote(venue.getName())
+                    + ",\"capacity\":" + venue.getCapacity() + "}");
+        }
+        writer.print("],\n\"corridors\":[");
+        // whether the next corridor is the first
+        boolean first = true;
+        for (Map.Entry<Corridor, Integer> entry : loads(allocation)
+                .entrySet()) {
+            // the corridor with traffic
+            Corridor corridor = entry.getKey();
+            writer.print((first ? "" : ",") + "\n{\"start\":" + Json.quote(
+                    corridor.getStart().getName()) + ",\"end\":" + Json.quote(
+                            corridor.getEnd().getName()) + ",\"capacity\":"
+                    + corridor.getCapacity() + ",\"load\":" + entry.getValue()
+                    + "}");
+            first = false;
+        }
+        writer.print("]}\n");
+    }
+
+    /**
+     * Returns the given value as a CSV field, quoted if it contains a comma,
+     * a quote or a line break.
+     */
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value
+                .indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+}
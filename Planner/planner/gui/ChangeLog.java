@@ -0,0 +1,52 @@
+package planner.gui;
+
+import planner.Event;
+import planner.Venue;
+
+/**
+ * Is told about every change to the events and allocations of the model of
+ * the event allocator program, in the order the changes are made, so that
+ * they can be recorded.
+ *
+ * The methods are called while the model is locked, just after the change
+ * has been made, and must not change the model themselves.
+ */
+public interface ChangeLog {
+
+	/**
+	 * This method is called after an event has been added to the events.
+	 *
+	 * @param event
+	 *            which is the event that was added.
+	 */
+	void eventAdded(Event event);
+
+	/**
+	 * This method is called after an event has been allocated to a venue.
+	 *
+	 * @param event
+	 *            which is the event that was allocated.
+	 * @param venue
+	 *            which is the venue it was allocated to.
+	 */
+	void allocated(Event event, Venue venue);
+
+	/**
+	 * This method is called after the allocation of an event has been
+	 * removed.
+	 *
+	 * @param event
+	 *            which is the event whose allocation was removed.
+	 * @param venue
+	 *            which is the venue it was allocated to.
+	 */
+	void deallocated(Event event, Venue venue);
+
+	/**
+	 * This method is called after the venues, the events, the allocations or
+	 * the corridor loads have been replaced in a way that is not described by
+	 * the other methods.
+	 */
+	void stateReplaced();
+
+}
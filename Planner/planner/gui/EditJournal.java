@@ -0,0 +1,141 @@
+package planner.gui;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import planner.Event;
+import planner.Traffic;
+import planner.Venue;
+
+/**
+ * A bounded journal of the changes made to the allocations of the model, for
+ * undoing and redoing them.
+ *
+ * Each step of the journal is a group of edits that are undone (or redone)
+ * together, such as a single allocation or a whole transaction. An edit keeps
+ * the traffic of its event at its venue, so that undoing or redoing it only
+ * has to adjust the ledger by that traffic; the traffic is the venue's shared,
+ * read-only record, so keeping it costs a reference rather than a copy. When
+ * the journal is full, the oldest step is forgotten.
+ */
+class EditJournal {
+
+	/**
+	 * A single allocation or removal of an allocation.
+	 */
+	static final class Edit {
+
+		// the event whose allocation changed
+		final Event event;
+		// the venue the event was allocated to or removed from
+		final Venue venue;
+		// the traffic of the event at the venue
+		final Traffic traffic;
+		// true if the event was allocated, false if its allocation was removed
+		final boolean allocated;
+
+		/**
+		 * Creates an edit recording the given change.
+		 */
+		Edit(Event event, Venue venue, Traffic traffic, boolean allocated) {
+			this.event = event;
+			this.venue = venue;
+			this.traffic = traffic;
+			this.allocated = allocated;
+		}
+	}
+
+	// the largest number of steps that can be undone
+	private final int limit;
+	// the steps that can be undone, the most recent last
+	private final Deque<Edit[]> undoSteps;
+	// the steps that can be redone, the most recently undone last
+	private final Deque<Edit[]> redoSteps;
+
+	/*
+	 * invariant:
+	 *
+	 * limit >= 0 && undoSteps.size() + redoSteps.size() <= limit
+	 */
+
+	/**
+	 * Creates an empty journal that keeps at most limit steps.
+	 *
+	 * @param limit
+	 *            which is the largest number of steps kept.
+	 * @throws IllegalArgumentException
+	 *             if limit is negative.
+	 */
+	EditJournal(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException(
+					"The journal length cannot be negative.");
+		}
+		this.limit = limit;
+		undoSteps = new ArrayDeque<>();
+		redoSteps = new ArrayDeque<>();
+	}
+
+	/**
+	 * This method is used to record a new step, which can no longer be redone
+	 * once something else has been undone. Recording a step forgets the steps
+	 * that could be redone, and the oldest step if the journal is full.
+	 *
+	 * @param step
+	 *            which is the edits of the step, in the order they were made.
+	 */
+	void record(Edit... step) {
+		redoSteps.clear();
+		if (limit == 0 || step.length == 0) {
+			return;
+		}
+		if (undoSteps.size() == limit) {
+			undoSteps.removeFirst();
+		}
+		undoSteps.addLast(step);
+	}
+
+	/**
+	 * This method is used to get the step that would be undone next.
+	 *
+	 * @return the most recent step, or null if there is nothing to undo.
+	 */
+	Edit[] peekUndo() {
+		return undoSteps.peekLast();
+	}
+
+	/**
+	 * This method is used to get the step that would be redone next.
+	 *
+	 * @return the most recently undone step, or null if there is nothing to
+	 *         redo.
+	 */
+	Edit[] peekRedo() {
+		return redoSteps.peekLast();
+	}
+
+	/**
+	 * This method is used to record that the step returned by peekUndo has
+	 * been undone.
+	 */
+	void undone() {
+		redoSteps.addLast(undoSteps.removeLast());
+	}
+
+	/**
+	 * This method is used to record that the step returned by peekRedo has
+	 * been redone.
+	 */
+	void redone() {
+		undoSteps.addLast(redoSteps.removeLast());
+	}
+
+	/**
+	 * This method is used to forget every step, when the allocations have
+	 * been changed in a way that the journal does not record.
+	 */
+	void clear() {
+		undoSteps.clear();
+		redoSteps.clear();
+	}
+}
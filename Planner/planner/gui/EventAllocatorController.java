@@ -1,20 +1,35 @@
 package planner.gui;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.stage.FileChooser;
+import planner.Allocator;
 import planner.Corridor;
 import planner.Event;
+import planner.EventReader;
 import planner.FormatException;
 import planner.InvalidTrafficException;
+import planner.SearchMonitor;
 import planner.Traffic;
 import planner.Venue;
-import planner.VenueReader;
+import planner.VenueDiff;
+import planner.VenueFileReloader;
+import planner.VenueFileWatcher;
 import planner.gui.EventAllocatorView.Pair;
 
 /**
@@ -22,6 +37,12 @@ import planner.gui.EventAllocatorView.Pair;
  */
 public class EventAllocatorController {
 
+	// the number of venues added to the venue box at a time while loading
+	private final static int VENUE_BATCH_SIZE = 500;
+	// the files the session is kept in, so that it survives a crash
+	private final static String SESSION_SNAPSHOT = "session.snapshot";
+	private final static String SESSION_LOG = "session.log";
+
 	// the model of the event allocator
 	private EventAllocatorModel model;
 	// the view of the event allocator
@@ -30,6 +51,22 @@ public class EventAllocatorController {
 	private final ObservableList<Pair> allocationData;
 	// the list of listeners to track changes when they occur
 	private final ObservableList<Pair> corridorData;
+	// the allocated events, in the order of the rows of allocationData
+	private final List<Event> allocationRows;
+	// the corridors with traffic, in the order of the rows of corridorData
+	private final List<Corridor> corridorRows;
+	// the order of the rows of the allocation table
+	private final EventComparator eventComparator;
+	// the watcher that reloads the venue file when it changes
+	private VenueFileWatcher venueWatcher;
+	// the executor that runs automatic allocations off the FX thread
+	private final ExecutorService allocationExecutor;
+	// the automatic allocation that is running, if there is one
+	private AutoAllocateTask autoAllocateTask;
+	// whether the venues have been read for the first time
+	private boolean venuesLoaded;
+	// the store that keeps the session safe, or null if it could not be opened
+	private SessionStore sessionStore;
 
 	/**
 	 * Initializes the controller for the event allocator program. If file name
@@ -46,19 +83,40 @@ public class EventAllocatorController {
 		this.view = view;
 		this.allocationData = FXCollections.observableArrayList();
 		this.corridorData = FXCollections.observableArrayList();
+		this.allocationRows = new ArrayList<>();
+		this.corridorRows = new ArrayList<>();
+		this.eventComparator = new EventComparator();
+		view.getAllocationTable().setItems(allocationData);
+		view.getCorridorTable().setItems(corridorData);
+		model.addModelListener(new ModelListener() {
 
-		try {
-			// filename is to be specified here
-			String fileName = "venues.txt";
-			if (fileName.isEmpty()) {
-				view.showMessage("Please give the filename of venues.");
-				return;
+			/**
+			 * Shows the model again after a transaction, undo or redo has
+			 * changed it. The controller only makes these on the FX thread.
+			 */
+			@Override
+			public void modelChanged() {
+				view.getEventDeleteBox().getItems()
+						.setAll(model.getAllocationMap().keySet());
+				writeData();
+				showFeasibleVenues();
 			}
-			model.setVenues(VenueReader.read(fileName));
-			view.getVenueBox().getItems().setAll(model.getVenues());
-		} catch (IOException | FormatException | InvalidTrafficException ex) {
-			view.showWarning(ex);
+		});
+		this.allocationExecutor = Executors.newSingleThreadExecutor(task -> {
+			// the thread running automatic allocations
+			Thread thread = new Thread(task, "auto-allocator");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// filename is to be specified here
+		String fileName = "venues.txt";
+		if (fileName.isEmpty()) {
+			view.showMessage("Please give the filename of venues.");
+			return;
 		}
+		// the reloader, which also reads the venues for the first time
+		loadVenues(new VenueFileReloader(Paths.get(fileName)));
 		view.getAllocateButton().setOnAction(new EventHandler<ActionEvent>() {
 
 			/**
@@ -81,25 +139,22 @@ public class EventAllocatorController {
 					view.showMessage("Please select event and venue properly.");
 					return;
 				}
-				if (model.getAllocationMap().containsKey(curEvent)) {
+				if (model.isEventAllocated(curEvent)) {
 					view.showMessage("The specified event is currently\n"
 							+ " allocated to a venue in the municipality");
 					return;
 				}
-				if (model.getAllocationMap().containsValue(curVenue)) {
+				if (model.isVenueAllocated(curVenue)) {
 					view.showMessage("The selected venue is currently\n "
 							+ "allocated to another event");
 					return;
 				}
 				if (curVenue.canHost(curEvent)) {
-					// getting the traffic from venue
-					Traffic curTraffic = curVenue.getTraffic(curEvent);
-					if (model.isSafe(curTraffic)) {
-						model.getAllocationMap().put(curEvent, curVenue);
-						model.updateCorridorMap(curTraffic);
-						view.getEventDeleteBox().getItems()
-								.setAll(model.getAllocationMap().keySet());
-						writeData();
+					if (model.allocate(curEvent, curVenue)) {
+						view.getEventDeleteBox().getItems().add(curEvent);
+						addAllocationRow(curEvent, curVenue);
+						updateCorridorRows(curVenue.getSharedTraffic(curEvent));
+						showFeasibleVenues();
 					} else {
 						view.showMessage("The venue is large enough to "
 								+ "host the event\n"
@@ -162,6 +217,209 @@ public class EventAllocatorController {
 			}
 		});
 
+		view.getImportEventsButton().setOnAction(
+				new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to import events from a file chosen by the
+			 * user. Events that already exist are skipped, and if the file is
+			 * not in the correct format, a warning message is shown (the
+			 * events before the incorrect line are still imported).
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				FileChooser chooser = new FileChooser();
+				chooser.setTitle("Import Events");
+				// the file chosen by the user
+				File file = chooser.showOpenDialog(view.getScene().getWindow());
+				if (file == null) {
+					return;
+				}
+				// the number of new events imported
+				int[] added = new int[1];
+				try {
+					EventReader.read(file.toPath(),
+							EventReader.DEFAULT_BATCH_SIZE,
+							batch -> added[0] += model.addEvents(batch));
+					view.showMessage(added[0] + " events imported.");
+				} catch (IOException | FormatException ex) {
+					view.showWarning(ex);
+				}
+				view.getEventBox().getItems().setAll(model.getEvents());
+			}
+		});
+
+		view.getEventBox().setOnAction(new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a change of the selected event by showing only the
+			 * venues that can still host it safely.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				showFeasibleVenues();
+			}
+		});
+
+		view.getAutoAllocateButton().setOnAction(
+				new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to allocate every unallocated event
+			 * automatically. The search runs on a background thread, and its
+			 * result is only shown when it has finished.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				// the events that are not allocated yet
+				List<Event> events = new ArrayList<>();
+				for (Event e : model.getEvents()) {
+					if (!model.isEventAllocated(e)) {
+						events.add(e);
+					}
+				}
+				if (events.isEmpty()) {
+					view.showMessage("Every event is already allocated.");
+					return;
+				}
+				// the venues that are not allocated yet
+				List<Venue> venues = new ArrayList<>();
+				for (Venue v : model.getVenues()) {
+					if (!model.isVenueAllocated(v)) {
+						venues.add(v);
+					}
+				}
+				startAutoAllocation(new AutoAllocateTask(events, venues,
+						model.getLedger().getTraffic()));
+			}
+		});
+
+		view.getCancelAutoAllocateButton().setOnAction(
+				new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to cancel the running automatic allocation.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				if (autoAllocateTask != null) {
+					autoAllocateTask.cancel();
+				}
+			}
+		});
+
+		view.getUndoButton().setOnAction(new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to undo the last change to the allocations.
+			 * The model listener shows the result.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				if (!model.canUndo()) {
+					view.showMessage("There is nothing to undo.");
+				} else if (!model.undo()) {
+					view.showMessage("The change cannot be undone, as the"
+							+ "\ntraffic would no longer be safe.");
+				}
+			}
+		});
+
+		view.getRedoButton().setOnAction(new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to redo the last undone change to the
+			 * allocations. The model listener shows the result.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				if (!model.canRedo()) {
+					view.showMessage("There is nothing to redo.");
+				} else if (!model.redo()) {
+					view.showMessage("The change cannot be redone, as the"
+							+ "\ntraffic would no longer be safe.");
+				}
+			}
+		});
+
+		view.getSaveSessionButton().setOnAction(
+				new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to save the session to a snapshot file chosen
+			 * by the user.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				FileChooser chooser = new FileChooser();
+				chooser.setTitle("Save Session");
+				// the file chosen by the user
+				File file = chooser.showSaveDialog(view.getScene().getWindow());
+				if (file == null) {
+					return;
+				}
+				try {
+					SessionSnapshot.save(model, file.toPath());
+				} catch (IOException ex) {
+					view.showWarning(ex);
+				} catch (IllegalArgumentException ex) {
+					view.showMessage("The session cannot be saved:\n"
+							+ ex.getMessage());
+				}
+			}
+		});
+
+		view.getOpenSessionButton().setOnAction(
+				new EventHandler<ActionEvent>() {
+
+			/**
+			 * Handles a request to replace the session with the one saved in
+			 * a snapshot file chosen by the user. The snapshot must have been
+			 * saved with the same venues.
+			 * 
+			 * @param event
+			 *            the event which is to be handled.
+			 */
+			@Override
+			public void handle(ActionEvent event) {
+				FileChooser chooser = new FileChooser();
+				chooser.setTitle("Open Session");
+				// the file chosen by the user
+				File file = chooser.showOpenDialog(view.getScene().getWindow());
+				if (file == null) {
+					return;
+				}
+				try {
+					SessionSnapshot.load(model, file.toPath(), false);
+				} catch (IOException | FormatException ex) {
+					view.showWarning(ex);
+					return;
+				}
+				showSession();
+			}
+		});
+
 		view.getDeleteButton().setOnAction(new EventHandler<ActionEvent>() {
 			/**
 			 * Handles a specific of event based on user inputs. If the users'
@@ -176,21 +434,283 @@ public class EventAllocatorController {
 				// getting event from EventAllocatorView class
 				Event curEvent = (Event) view.getEventDeleteBox()
 						.getSelectionModel().getSelectedItem();
-				if (!model.getAllocationMap().containsKey(curEvent)) {
+				// getting the venue from EventAllocatorModel class
+				Venue curVenue = model.deallocate(curEvent);
+				if (curVenue == null) {
 					view.showMessage("Please select event properly.");
 					return;
 				}
-				// getting the venue from EventAllocatorModel class
-				Venue curVenue = model.getAllocationMap().get(curEvent);
-				// getting traffic form curVenue
-				Traffic curTraffic = curVenue.getTraffic(curEvent);
-				model.removeFromCorridorMap(curTraffic);
-				model.getAllocationMap().remove(curEvent);
-				view.getEventDeleteBox().getItems()
-						.setAll(model.getAllocationMap().keySet());
-				writeData();
+				view.getEventDeleteBox().getItems().remove(curEvent);
+				removeAllocationRow(curEvent);
+				updateCorridorRows(curVenue.getSharedTraffic(curEvent));
+				showFeasibleVenues();
+			}
+		});
+	}
+
+	/**
+	 * Shows the venues that can host the selected event without making the
+	 * traffic unsafe (those with the most room to spare first), or every venue
+	 * if no event is selected. While the venues are being loaded, the venue
+	 * box is left as it is.
+	 */
+	private void showFeasibleVenues() {
+		if (!venuesLoaded) {
+			return;
+		}
+		// the selected event
+		Event curEvent = view.getEventBox().getSelectionModel()
+				.getSelectedItem();
+		if (curEvent == null) {
+			view.getVenueBox().getItems().setAll(model.getVenues());
+		} else {
+			view.getVenueBox().getItems()
+					.setAll(model.getFeasibleVenues(curEvent));
+		}
+	}
+
+	/**
+	 * Runs the given automatic allocation on the background executor, showing
+	 * its progress and disabling the allocation controls until it finishes.
+	 * 
+	 * @param task
+	 *            the automatic allocation to run.
+	 */
+	private void startAutoAllocation(AutoAllocateTask task) {
+		autoAllocateTask = task;
+		setAllocationDisabled(true);
+		view.getAutoAllocateProgress().progressProperty()
+				.bind(task.progressProperty());
+		view.getAutoAllocateStatus().textProperty()
+				.bind(task.messageProperty());
+		task.setOnSucceeded(e -> {
+			finishAutoAllocation(1);
+			publishAllocation(task.getValue());
+		});
+		task.setOnCancelled(e -> {
+			finishAutoAllocation(0);
+			view.getAutoAllocateStatus().setText("Cancelled");
+		});
+		task.setOnFailed(e -> {
+			finishAutoAllocation(0);
+			view.showMessage("The automatic allocation failed:\n"
+					+ task.getException());
+		});
+		allocationExecutor.submit(task);
+	}
+
+	/**
+	 * Stops showing the progress of the automatic allocation, and enables the
+	 * allocation controls again.
+	 * 
+	 * @param progress
+	 *            the progress to leave on the progress bar.
+	 */
+	private void finishAutoAllocation(double progress) {
+		view.getAutoAllocateProgress().progressProperty().unbind();
+		view.getAutoAllocateProgress().setProgress(progress);
+		view.getAutoAllocateStatus().textProperty().unbind();
+		autoAllocateTask = null;
+		setAllocationDisabled(false);
+	}
+
+	/**
+	 * Disables (or enables) the controls that change the allocation while an
+	 * automatic allocation is running, and enables (or disables) the cancel
+	 * button.
+	 * 
+	 * @param disabled
+	 *            whether an automatic allocation is running.
+	 */
+	private void setAllocationDisabled(boolean disabled) {
+		view.getAllocateButton().setDisable(disabled);
+		view.getDeleteButton().setDisable(disabled);
+		view.getUndoButton().setDisable(disabled);
+		view.getRedoButton().setDisable(disabled);
+		view.getOpenSessionButton().setDisable(disabled);
+		view.getAutoAllocateButton().setDisable(disabled);
+		view.getCancelAutoAllocateButton().setDisable(!disabled);
+	}
+
+	/**
+	 * Adds the allocation found by an automatic allocation to the model, and
+	 * shows it in the tables.
+	 * 
+	 * @param allocation
+	 *            the allocation found, or null if there was none.
+	 */
+	private void publishAllocation(Map<Event, Venue> allocation) {
+		if (allocation == null) {
+			view.showMessage("There is no safe allocation of the unallocated"
+					+ "\nevents to the venues that are still free.");
+			return;
+		}
+		// the allocations found, made (and shown) all at once
+		EventAllocatorModel.Transaction transaction = model.begin();
+		for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+			// skip allocations that a reload of the venue file has made
+			// impossible since the search started
+			if (!model.isEventAllocated(entry.getKey())
+					&& !model.isVenueAllocated(entry.getValue())
+					&& entry.getValue().canHost(entry.getKey())) {
+				transaction.allocate(entry.getKey(), entry.getValue());
+			}
+		}
+		if (!transaction.commit()) {
+			view.showMessage("The allocation found is no longer safe, as the"
+					+ "\nvenue file has changed since the search started.");
+		}
+	}
+
+	/**
+	 * Reads the venues for the first time on a background thread, so that the
+	 * window can be shown straight away. The venue box is filled in batches
+	 * as the venues are read, and allocation is only enabled once every venue
+	 * has been read; then the venue file is watched for changes.
+	 * 
+	 * @param reloader
+	 *            the reloader for the venue file.
+	 */
+	private void loadVenues(VenueFileReloader reloader) {
+		view.getAllocateButton().setDisable(true);
+		view.getAutoAllocateButton().setDisable(true);
+		view.getOpenSessionButton().setDisable(true);
+		view.getVenueLoadStatus().setText("Loading venues...");
+		// the time the loading started, in nanoseconds
+		long start = System.nanoTime();
+		// the loading, run on its own thread
+		Task<VenueDiff> task = new Task<VenueDiff>() {
+
+			@Override
+			protected VenueDiff call() throws Exception {
+				return reloader.reload(VENUE_BATCH_SIZE,
+						batch -> Platform.runLater(() -> {
+							view.getVenueBox().getItems().addAll(batch);
+							view.getVenueLoadStatus().setText("Loading venues"
+									+ "... (" + view.getVenueBox().getItems()
+											.size() + " read)");
+						}));
+			}
+		};
+		task.setOnSucceeded(e -> {
+			model.setVenues(new ArrayList<>(task.getValue().getVenues()));
+			venuesLoaded = true;
+			showFeasibleVenues();
+			view.getAllocateButton().setDisable(false);
+			view.getAutoAllocateButton().setDisable(false);
+			view.getOpenSessionButton().setDisable(false);
+			view.getVenueLoadStatus().setText("Loaded " + model.getVenues()
+					.size() + " venues in " + (System.nanoTime() - start)
+							/ 1000000 + " ms");
+			openSessionStore();
+			try {
+				watchVenues(reloader);
+			} catch (IOException ex) {
+				view.showWarning(ex);
 			}
 		});
+		task.setOnFailed(e -> {
+			view.getVenueBox().getItems().clear();
+			view.getVenueLoadStatus().setText("The venues could not be "
+					+ "loaded.");
+			// the reason the venues could not be read
+			Throwable ex = task.getException();
+			if (ex instanceof IOException || ex instanceof FormatException
+					|| ex instanceof InvalidTrafficException) {
+				view.showWarning((Exception) ex);
+			} else {
+				view.showMessage("The venues could not be loaded:\n" + ex);
+			}
+		});
+		// the thread reading the venues
+		Thread thread = new Thread(task, "venue-loader");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Recovers the session that was being worked on when the program last
+	 * stopped (from the session snapshot and the log of the changes made
+	 * after it), and from then on keeps every change to the session in them.
+	 * The log is forced to the disk when the program exits. If the session
+	 * cannot be recovered, the part of it that was recovered is discarded (so
+	 * the view shows what the model holds), a warning is shown and the
+	 * session is not kept.
+	 */
+	private void openSessionStore() {
+		// the store for the session
+		SessionStore store = new SessionStore(model, Paths.get(
+				SESSION_SNAPSHOT), Paths.get(SESSION_LOG),
+				SessionStore.COMPACT_SIZE, ex -> Platform.runLater(() -> view
+						.showWarning(ex)));
+		try {
+			store.open();
+		} catch (IOException | FormatException ex) {
+			model.restore(new ArrayList<>(), Collections.emptyMap(),
+					Collections.emptyMap());
+			showSession();
+			view.showMessage("The session could not be recovered, and is not "
+					+ "being saved:\n" + ex.getMessage());
+			return;
+		}
+		sessionStore = store;
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				sessionStore.close();
+			} catch (IOException ex) {
+				// nothing more can be done while exiting
+			}
+		}, "session-close"));
+		showSession();
+	}
+
+	/**
+	 * Shows the whole session held by the model, after it has been replaced.
+	 */
+	private void showSession() {
+		view.getEventBox().getItems().setAll(model.getEvents());
+		view.getEventDeleteBox().getItems()
+				.setAll(model.getAllocationMap().keySet());
+		writeData();
+		showFeasibleVenues();
+	}
+
+	/**
+	 * Starts watching the venue file, so that changes to it are applied to the
+	 * model while the program is running.
+	 * 
+	 * @param reloader
+	 *            the reloader for the venue file.
+	 * @throws IOException
+	 *             if the venue file cannot be watched.
+	 */
+	private void watchVenues(VenueFileReloader reloader) throws IOException {
+		venueWatcher = new VenueFileWatcher(reloader,
+				diff -> Platform.runLater(() -> applyVenueDiff(diff)),
+				ex -> Platform.runLater(() -> view.showWarning(ex)));
+		venueWatcher.start();
+	}
+
+	/**
+	 * Applies a change to the venue file to the model, and shows the
+	 * allocations (if any) that the change has made unsafe.
+	 * 
+	 * @param diff
+	 *            the change to the venue file.
+	 */
+	private void applyVenueDiff(VenueDiff diff) {
+		// the allocations made unsafe by the change
+		List<Event> flagged = model.applyVenueDiff(diff);
+		showFeasibleVenues();
+		writeData();
+		if (!flagged.isEmpty()) {
+			// the flagged events, in the order of the allocation table
+			TreeSet<Event> eventlist = new TreeSet<>(new EventComparator());
+			eventlist.addAll(flagged);
+			view.showMessage("The venue file has changed (" + diff + ").\n"
+					+ "These allocations are no longer safe and should be "
+					+ "removed:\n" + eventlist);
+		}
 	}
 
 	/**
@@ -198,42 +718,154 @@ public class EventAllocatorController {
 	 * corridor and event are changed to string format according to toString()
 	 * representation. And, the newly handled data are displayed.
 	 * 
+	 * This rebuilds every row of both tables, so it is only used after changes
+	 * to many allocations at once (such as a committed transaction); single
+	 * allocations and removals update the rows they change with
+	 * addAllocationRow, removeAllocationRow and updateCorridorRows.
 	 */
 	public void writeData() {
-		allocationData.clear();
-		corridorData.clear();
-		// declaring variable for eventString and venueString
-		String eventString, venueString;
-		// creating an instance for TreeSet for looping
-		TreeSet<Event> eventlist = new TreeSet<>(new EventComparator());
-		eventlist.addAll(model.getAllocationMap().keySet());
-
-		for (Event e : eventlist) {
-			// getting venues from EventAllocatorModel class
-			Venue venue = model.getAllocationMap().get(e);
-			// getting toString representation of event
-			eventString = e.toString();
-			// getting right format for venue name and venue capacity
-			venueString = venue.getName() + " (" + venue.getCapacity() + ")";
-			// creating instance from pair sub class for table view
-			Pair pair = new Pair(eventString, venueString);
-			allocationData.add(pair);
+		allocationRows.clear();
+		allocationRows.addAll(model.getAllocationMap().keySet());
+		allocationRows.sort(eventComparator);
+		// the new rows of the allocation table
+		List<Pair> pairs = new ArrayList<>(allocationRows.size());
+		for (Event e : allocationRows) {
+			pairs.add(allocationPair(e, model.getAllocationMap().get(e)));
+		}
+		allocationData.setAll(pairs);
+
+		corridorRows.clear();
+		pairs = new ArrayList<>();
+		// the corridors with traffic, in order, mapped to their traffic
+		for (Map.Entry<Corridor, Integer> entry : model.getCorridorMap()
+				.entrySet()) {
+			corridorRows.add(entry.getKey());
+			pairs.add(new Pair(entry.getKey().toString(),
+					entry.getValue().toString()));
 		}
-		// getting keyset for corridor and put them into corridorList
-		Set<Corridor> corridorList = model.getCorridorMap().keySet();
-		for (Corridor c : corridorList) {
-			// getting amount of corridorMap
-			Integer amount = model.getCorridorMap().get(c);
-			if (amount > 0) {
-				eventString = c.toString();
-				venueString = amount.toString();
-				// creating instance from Pair subclass for updating data
-				Pair pair = new Pair(eventString, venueString);
-				corridorData.add(pair);
+		corridorData.setAll(pairs);
+	}
+
+	/**
+	 * Returns the row of the allocation table for the given allocation.
+	 * 
+	 * @param event
+	 *            the allocated event.
+	 * @param venue
+	 *            the venue the event is allocated to.
+	 * @return a new row showing the event and the venue.
+	 */
+	private Pair allocationPair(Event event, Venue venue) {
+		return new Pair(event.toString(),
+				venue.getName() + " (" + venue.getCapacity() + ")");
+	}
+
+	/**
+	 * Adds the row for the given allocation to the allocation table, at its
+	 * place in the order of the table (found by binary search).
+	 * 
+	 * @param event
+	 *            the allocated event.
+	 * @param venue
+	 *            the venue the event is allocated to.
+	 */
+	private void addAllocationRow(Event event, Venue venue) {
+		// the position of the row (or where it should be inserted)
+		int index = Collections.binarySearch(allocationRows, event,
+				eventComparator);
+		if (index >= 0) {
+			allocationData.set(index, allocationPair(event, venue));
+		} else {
+			index = -(index + 1);
+			allocationRows.add(index, event);
+			allocationData.add(index, allocationPair(event, venue));
+		}
+	}
+
+	/**
+	 * Removes the row for the given event from the allocation table, if it has
+	 * one.
+	 * 
+	 * @param event
+	 *            the event whose allocation was removed.
+	 */
+	private void removeAllocationRow(Event event) {
+		// the position of the row
+		int index = Collections.binarySearch(allocationRows, event,
+				eventComparator);
+		if (index >= 0) {
+			allocationRows.remove(index);
+			allocationData.remove(index);
+		}
+	}
+
+	/**
+	 * Brings the rows of the corridor table up to date for the corridors of
+	 * the given traffic, which has just been booked or released. Rows of
+	 * corridors whose load is unchanged are not touched.
+	 * 
+	 * @param traffic
+	 *            the traffic that was booked or released.
+	 */
+	private void updateCorridorRows(Traffic traffic) {
+		for (Corridor corridor : traffic.getCorridorsWithTraffic()) {
+			// the new load on the corridor
+			int load = model.getLedger().getLoad(corridor);
+			// the position of the row (or where it should be inserted)
+			int index = Collections.binarySearch(corridorRows, corridor);
+			if (index >= 0 && load > 0) {
+				corridorData.get(index).setVenue(Integer.toString(load));
+			} else if (index >= 0) {
+				corridorRows.remove(index);
+				corridorData.remove(index);
+			} else if (load > 0) {
+				index = -(index + 1);
+				corridorRows.add(index, corridor);
+				corridorData.add(index,
+						new Pair(corridor.toString(), Integer.toString(load)));
 			}
 		}
-		view.getAllocationTable().getItems().setAll(allocationData);
-		view.getCorridorTable().getItems().setAll(corridorData);
+	}
+
+	/**
+	 * An automatic allocation of events to venues, which runs the allocator's
+	 * backtracking search as a task and reports the nodes explored and the
+	 * time taken as its message.
+	 */
+	private class AutoAllocateTask extends Task<Map<Event, Venue>>
+			implements SearchMonitor {
+
+		// the events to allocate and the venues they may be allocated to
+		private final List<Event> events;
+		private final List<Venue> venues;
+		// the traffic booked when the task was created
+		private final Traffic booked;
+		// the time the search started, from System.nanoTime()
+		private long start;
+
+		/**
+		 * Creates a task that allocates the given events to the given venues,
+		 * on top of the given booked traffic.
+		 */
+		private AutoAllocateTask(List<Event> events, List<Venue> venues,
+				Traffic booked) {
+			this.events = events;
+			this.venues = venues;
+			this.booked = booked;
+		}
+
+		@Override
+		protected Map<Event, Venue> call() {
+			start = System.nanoTime();
+			updateMessage("Searching...");
+			return Allocator.allocate(events, venues, booked, this);
+		}
+
+		@Override
+		public void onProgress(long nodes) {
+			updateMessage(String.format("%,d nodes explored in %.1f s", nodes,
+					(System.nanoTime() - start) / 1e9));
+		}
 	}
 
 	/**
@@ -1,30 +1,56 @@
 package planner.gui;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-//import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import planner.Corridor;
+import planner.CorridorLedger;
 import planner.Event;
+import planner.FeasibilityIndex;
 import planner.Traffic;
 import planner.Venue;
+import planner.VenueDiff;
 
 /**
  * The model for the event allocator program.
  */
 public class EventAllocatorModel {
 
+	// the largest number of changes that can be undone
+	private final static int JOURNAL_LENGTH = 100;
+
 	// array list of venue type
 	private List<Venue> venues;
 	// array list of event type
 	private List<Event> events;
+	// the same events, so that a batch of events can be checked for ones that
+	// are already in the list without copying it (always updated together
+	// with events)
+	private Set<Event> eventSet;
 	// map of event and venue
 	private Map<Event, Venue> allocationMap;
-	// map of corridor and integer
-	private Map<Corridor, Integer> corridorMap;
+	// map of venue and the event allocated to it (the inverse of
+	// allocationMap, always updated together with it)
+	private Map<Venue, Event> venueMap;
+	// the traffic currently booked on each corridor
+	private final CorridorLedger ledger;
+	// the free venues that can still host the selected event (replaced while
+	// holding the lock of the model, but read without it by the methods that
+	// book and give back traffic)
+	private volatile FeasibilityIndex feasibility;
+	// the listeners told about committed transactions, undos and redos
+	private final List<ModelListener> listeners;
+	// the changes to the allocations that can be undone and redone
+	private final EditJournal journal;
+	// the log told about every change to the events and allocations, or null
+	private ChangeLog changeLog;
 
 	/**
 	 * the model for the event allocator program.
@@ -32,51 +58,221 @@ public class EventAllocatorModel {
 	public EventAllocatorModel() {
 		venues = new ArrayList<>();
 		events = new ArrayList<>();
+		eventSet = new HashSet<>();
 		allocationMap = new HashMap<>();
-		corridorMap = new HashMap<>();
+		venueMap = new HashMap<>();
+		ledger = new CorridorLedger();
+		feasibility = new FeasibilityIndex(venues, ledger);
+		listeners = new CopyOnWriteArrayList<>();
+		journal = new EditJournal(JOURNAL_LENGTH);
 	}
 
 	/**
 	 * Returns allocationMap which is the map representation of event and venue.
+	 * The returned map is a read-only view: allocations are changed with
+	 * allocate and deallocate.
 	 * 
 	 * @return allocationMap which is the map representation of event and venue.
 	 * 
 	 */
 	public Map<Event, Venue> getAllocationMap() {
-		return allocationMap;
+		return Collections.unmodifiableMap(allocationMap);
+	}
+
+	/**
+	 * This method is used to check whether the event is allocated to a venue.
+	 * 
+	 * @param event
+	 *            which is the event to be checked.
+	 * @return true if the event is allocated and false otherwise.
+	 */
+	public synchronized boolean isEventAllocated(Event event) {
+		return allocationMap.containsKey(event);
+	}
+
+	/**
+	 * This method is used to check whether an event is allocated to the venue.
+	 * This takes constant time, however many allocations there are.
+	 * 
+	 * @param venue
+	 *            which is the venue to be checked.
+	 * @return true if some event is allocated to the venue and false
+	 *         otherwise.
+	 */
+	public synchronized boolean isVenueAllocated(Venue venue) {
+		return venueMap.containsKey(venue);
+	}
+
+	/**
+	 * This method is used to get the venue that the event is allocated to.
+	 * 
+	 * @param event
+	 *            which is the allocated event.
+	 * @return the venue of the event, or null if it is not allocated.
+	 */
+	public synchronized Venue getVenueOf(Event event) {
+		return allocationMap.get(event);
+	}
+
+	/**
+	 * This method is used to get the event that is allocated to the venue.
+	 * 
+	 * @param venue
+	 *            which is the allocated venue.
+	 * @return the event at the venue, or null if no event is allocated to it.
+	 */
+	public synchronized Event getEventAt(Venue venue) {
+		return venueMap.get(venue);
+	}
+
+	/**
+	 * This method is used to allocate the event to the venue, booking the
+	 * traffic of the event at the venue if (and only if) doing so keeps every
+	 * corridor within its capacity. Both directions of the allocation index
+	 * and the traffic are updated together.
+	 * 
+	 * @param event
+	 *            which is the event to be allocated.
+	 * @param venue
+	 *            which is the venue to allocate it to.
+	 * @return true if the event was allocated and false if it would have made
+	 *         the traffic unsafe.
+	 * @throws IllegalArgumentException
+	 *             if the event or the venue is already allocated, or the venue
+	 *             cannot host the event.
+	 */
+	public synchronized boolean allocate(Event event, Venue venue) {
+		if (allocationMap.containsKey(event)) {
+			throw new IllegalArgumentException(
+					"The event is already allocated to a venue.");
+		}
+		if (venueMap.containsKey(venue)) {
+			throw new IllegalArgumentException(
+					"The venue is already allocated to an event.");
+		}
+		if (!venue.canHost(event)) {
+			throw new IllegalArgumentException(
+					"The venue is not large enough to host the event.");
+		}
+		// the traffic of the event at the venue
+		Traffic traffic = venue.getSharedTraffic(event);
+		if (!ledger.tryReserve(traffic)) {
+			return false;
+		}
+		allocationMap.put(event, venue);
+		venueMap.put(venue, event);
+		feasibility.setAllocated(venue, true);
+		feasibility.trafficChanged(traffic);
+		journal.record(new EditJournal.Edit(event, venue, traffic, true));
+		if (changeLog != null) {
+			changeLog.allocated(event, venue);
+		}
+		return true;
+	}
+
+	/**
+	 * This method is used to remove the allocation of the event, giving back
+	 * the traffic it booked.
+	 * 
+	 * @param event
+	 *            which is the event whose allocation is to be removed.
+	 * @return the venue the event was allocated to, or null if it was not
+	 *         allocated.
+	 */
+	public synchronized Venue deallocate(Event event) {
+		// the venue of the event
+		Venue venue = allocationMap.remove(event);
+		if (venue != null) {
+			// the traffic of the event at the venue
+			Traffic traffic = venue.getSharedTraffic(event);
+			venueMap.remove(venue);
+			ledger.release(traffic);
+			feasibility.setAllocated(venue, false);
+			feasibility.trafficChanged(traffic);
+			journal.record(new EditJournal.Edit(event, venue, traffic, false));
+			if (changeLog != null) {
+				changeLog.deallocated(event, venue);
+			}
+		}
+		return venue;
 	}
 
 	/**
-	 * Returns corridorMap which is the map representation of corridor and
-	 * integer.
+	 * Returns a snapshot of the corridor map, which maps each corridor with
+	 * traffic to the amount of traffic currently booked on it. Changes to the
+	 * returned map do not affect the model.
 	 * 
 	 * @return corridorMap which is the map representation of corridor and
 	 *         integer.
 	 */
 	public Map<Corridor, Integer> getCorridorMap() {
-		return corridorMap;
+		return ledger.getLoads();
+	}
+
+	/**
+	 * Returns the ledger that records the traffic booked on each corridor.
+	 * 
+	 * @return the corridor ledger of the model.
+	 */
+	public CorridorLedger getLedger() {
+		return ledger;
 	}
 
 	/**
 	 * This method is used to set allocationMap which is the map representation
-	 * of event and venue.
+	 * of event and venue. The map is copied, and the venue to event index is
+	 * rebuilt from it; the traffic on the corridor map is not changed. The
+	 * changes that could be undone are forgotten.
 	 * 
 	 * @param allocationMap
 	 *            which is used to set the allocationMap.
 	 */
-	public void setAllocationMap(Map<Event, Venue> allocationMap) {
-		this.allocationMap = allocationMap;
+	public synchronized void setAllocationMap(
+			Map<Event, Venue> allocationMap) {
+		replaceAllocations(allocationMap);
+		journal.clear();
+		rebuildFeasibility();
+		stateReplaced();
 	}
 
 	/**
 	 * This method is used to set corridorMap which is the map representation of
-	 * corridor and integer.
+	 * corridor and integer. The changes that could be undone are forgotten.
 	 * 
 	 * @param corridorMap
 	 *            which is used to set corridorMap.
 	 */
-	public void setCorridorMap(Map<Corridor, Integer> corridorMap) {
-		this.corridorMap = corridorMap;
+	public synchronized void setCorridorMap(
+			Map<Corridor, Integer> corridorMap) {
+		replaceLoads(corridorMap);
+		journal.clear();
+		feasibility.refresh();
+		stateReplaced();
+	}
+
+	/**
+	 * This method is used to replace the events, the traffic on the corridor
+	 * map and the allocations all at once, as setEvents, setCorridorMap and
+	 * setAllocationMap would, so that the change log sees a single change.
+	 * The changes that could be undone are forgotten.
+	 * 
+	 * @param events
+	 *            which is used to set events.
+	 * @param corridorMap
+	 *            which is used to set corridorMap.
+	 * @param allocationMap
+	 *            which is used to set the allocationMap.
+	 */
+	public synchronized void restore(List<Event> events,
+			Map<Corridor, Integer> corridorMap,
+			Map<Event, Venue> allocationMap) {
+		this.events = events;
+		this.eventSet = new HashSet<>(events);
+		replaceLoads(corridorMap);
+		replaceAllocations(allocationMap);
+		journal.clear();
+		rebuildFeasibility();
+		stateReplaced();
 	}
 
 	/**
@@ -85,8 +281,10 @@ public class EventAllocatorModel {
 	 * @param venues
 	 *            which is used to set venues.
 	 */
-	public void setVenues(List<Venue> venues) {
+	public synchronized void setVenues(List<Venue> venues) {
 		this.venues = venues;
+		rebuildFeasibility();
+		stateReplaced();
 	}
 
 	/**
@@ -95,8 +293,10 @@ public class EventAllocatorModel {
 	 * @param events
 	 *            which is used to set events.
 	 */
-	public void setEvents(List<Event> events) {
+	public synchronized void setEvents(List<Event> events) {
 		this.events = events;
+		this.eventSet = new HashSet<>(events);
+		stateReplaced();
 	}
 
 	/**
@@ -110,6 +310,7 @@ public class EventAllocatorModel {
 
 	/**
 	 * This method is used to get events which is array list of event type.
+	 * Events are added with addEvents, not by changing the list returned.
 	 * 
 	 * @return events which is array list of event type.
 	 */
@@ -124,8 +325,35 @@ public class EventAllocatorModel {
 	 *            which is used to add the event to the array list of event
 	 *            type.
 	 */
-	public void addEvents(Event event) {
+	public synchronized void addEvents(Event event) {
 		events.add(event);
+		eventSet.add(event);
+		if (changeLog != null) {
+			changeLog.eventAdded(event);
+		}
+	}
+
+	/**
+	 * This method is used to add a batch of events to the array list of event
+	 * type. Events that are already in the list are skipped.
+	 * 
+	 * @param batch
+	 *            which is the list of events to be added.
+	 * @return the number of events that were added.
+	 */
+	public synchronized int addEvents(List<Event> batch) {
+		// the number of events added
+		int added = 0;
+		for (Event event : batch) {
+			if (eventSet.add(event)) {
+				events.add(event);
+				added++;
+				if (changeLog != null) {
+					changeLog.eventAdded(event);
+				}
+			}
+		}
+		return added;
 	}
 
 	/**
@@ -135,17 +363,8 @@ public class EventAllocatorModel {
 	 *            which is used to get corridor with traffic.
 	 */
 	public void updateCorridorMap(Traffic traffic) {
-		// getting corridors with traffic
-		Set<Corridor> corridorSet = traffic.getCorridorsWithTraffic();
-		for (Corridor c : corridorSet) {
-			// getting the number of traffic caused
-			int value = traffic.getTraffic(c);
-			if (corridorMap.containsKey(c)) {
-				corridorMap.put(c, corridorMap.get(c) + value);
-			} else {
-				corridorMap.put(c, value);
-			}
-		}
+		ledger.reserve(traffic);
+		trafficChanged(traffic);
 	}
 
 	/**
@@ -156,12 +375,8 @@ public class EventAllocatorModel {
 	 * 
 	 */
 	public void removeFromCorridorMap(Traffic traffic) {
-		Set<Corridor> corridorSet = traffic.getCorridorsWithTraffic();
-		for (Corridor c : corridorSet) {
-			// getting the number of traffic caused
-			int value = traffic.getTraffic(c);
-			corridorMap.put(c, corridorMap.get(c) - value);
-		}
+		ledger.release(traffic);
+		trafficChanged(traffic);
 	}
 
 	/**
@@ -172,18 +387,652 @@ public class EventAllocatorModel {
 	 * @return true if the traffic is safe and false otherwise.
 	 */
 	public boolean isSafe(Traffic traffic) {
-		// getting corridor with traffic
-		Set<Corridor> corridorSet = traffic.getCorridorsWithTraffic();
-
-		for (Corridor c : corridorSet) {
-			// getting the number of traffic caused
-			int value = traffic.getTraffic(c);
-			if (corridorMap.containsKey(c)) {
-				if (corridorMap.get(c) + value > c.getCapacity()) {
-					return false;
+		return ledger.canReserve(traffic);
+	}
+
+	/**
+	 * This method is used to book the traffic on the corridor map if, and
+	 * only if, doing so keeps every corridor within its capacity. The check
+	 * and the update happen atomically, so this method is safe to call from
+	 * several threads at once.
+	 * 
+	 * @param traffic
+	 *            which is the traffic to be booked.
+	 * @return true if the traffic was booked and false if it would have made
+	 *         the traffic unsafe.
+	 */
+	public boolean tryReserve(Traffic traffic) {
+		if (!ledger.tryReserve(traffic)) {
+			return false;
+		}
+		trafficChanged(traffic);
+		return true;
+	}
+
+	/**
+	 * This method is used to give back traffic that was booked with
+	 * tryReserve or updateCorridorMap.
+	 * 
+	 * @param traffic
+	 *            which is the traffic to be given back.
+	 */
+	public void release(Traffic traffic) {
+		ledger.release(traffic);
+		trafficChanged(traffic);
+	}
+
+	/**
+	 * This method is used to tell the index of feasible venues about traffic
+	 * that has been booked or given back without holding the lock of the
+	 * model. If the index is replaced meanwhile, the new index may have been
+	 * built before the change, so it is told as well.
+	 * 
+	 * @param traffic
+	 *            which is the traffic that has changed.
+	 */
+	private void trafficChanged(Traffic traffic) {
+		// the index told about the change
+		FeasibilityIndex told = feasibility;
+		told.trafficChanged(traffic);
+		while (feasibility != told) {
+			told = feasibility;
+			told.trafficChanged(traffic);
+		}
+	}
+
+	/**
+	 * This method is used to apply a change to the venue file to the model.
+	 * The venues are replaced by the new venues of the diff (unchanged venues
+	 * are the same objects as before). Allocations to a changed venue are
+	 * moved to its new version, and their traffic is rebooked. Allocations to
+	 * a removed venue are kept, so that the user can decide what to do with
+	 * them. The changes that could be undone are forgotten.
+	 * 
+	 * @param diff
+	 *            which is the change to the venue file.
+	 * @return the allocated events, in no particular order, whose venue was
+	 *         removed, can no longer host them, or now makes the traffic on
+	 *         some corridor unsafe.
+	 */
+	public synchronized List<Event> applyVenueDiff(VenueDiff diff) {
+		// the events whose allocation the change makes unsafe
+		Set<Event> flagged = new HashSet<>();
+		// the removed venues, looked up once for each allocation
+		Set<Venue> removed = new HashSet<>(diff.getRemoved());
+		for (Map.Entry<Event, Venue> entry : allocationMap.entrySet()) {
+			// the allocated event and venue
+			Event event = entry.getKey();
+			Venue venue = entry.getValue();
+			if (removed.contains(venue)) {
+				flagged.add(event);
+				continue;
+			}
+			// the new version of the venue, if it has changed
+			Venue newVenue = diff.getChanged().get(venue);
+			if (newVenue == null) {
+				continue;
+			}
+			if (!newVenue.canHost(event)) {
+				// the old traffic stays booked until the user removes it
+				flagged.add(event);
+				continue;
+			}
+			ledger.release(venue.getSharedTraffic(event));
+			ledger.reserve(newVenue.getSharedTraffic(event));
+			entry.setValue(newVenue);
+			venueMap.remove(venue);
+			venueMap.put(newVenue, event);
+		}
+
+		// corridors with more traffic booked than their (possibly new)
+		// capacity
+		Set<Corridor> overloaded = new HashSet<>();
+		for (Map.Entry<Corridor, Integer> entry : ledger.getLoads()
+				.entrySet()) {
+			if (entry.getValue() > entry.getKey().getCapacity()) {
+				overloaded.add(entry.getKey());
+			}
+		}
+		if (!overloaded.isEmpty()) {
+			for (Map.Entry<Event, Venue> entry : allocationMap.entrySet()) {
+				// the traffic of the allocation
+				Traffic traffic = entry.getValue().getSharedTraffic(entry
+						.getKey());
+				for (Corridor corridor : traffic.getCorridorsWithTraffic()) {
+					if (overloaded.contains(corridor)) {
+						flagged.add(entry.getKey());
+					}
+				}
+			}
+		}
+		venues = new ArrayList<>(diff.getVenues());
+		journal.clear();
+		rebuildFeasibility();
+		stateReplaced();
+		return new ArrayList<>(flagged);
+	}
+
+	/**
+	 * This method is used to get the free venues that can host the event
+	 * without making the traffic unsafe, given the traffic that is currently
+	 * booked. The answer is kept up to date as allocations change, so asking
+	 * again for the same event is fast.
+	 * 
+	 * @param event
+	 *            which is the event to find venues for.
+	 * @return the venues that can safely host the event, those that would
+	 *         leave the most room on their busiest corridor first.
+	 */
+	public synchronized List<Venue> getFeasibleVenues(Event event) {
+		return feasibility.getFeasibleVenues(event);
+	}
+
+	/**
+	 * This method is used to add a listener that is told about every committed
+	 * transaction, undo and redo. The single-change methods (such as allocate
+	 * and deallocate) do not notify listeners: their callers update the view
+	 * themselves.
+	 * 
+	 * @param listener
+	 *            which is the listener to be added.
+	 */
+	public void addModelListener(ModelListener listener) {
+		listeners.add(Objects.requireNonNull(listener));
+	}
+
+	/**
+	 * This method is used to remove a listener added with addModelListener.
+	 * 
+	 * @param listener
+	 *            which is the listener to be removed.
+	 */
+	public void removeModelListener(ModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * This method is used to begin a transaction, which collects many changes
+	 * to the model and then makes all of them at once, or none of them.
+	 * 
+	 * @return a new transaction on this model.
+	 */
+	public Transaction begin() {
+		return new Transaction();
+	}
+
+	/**
+	 * This method is used to set the log that is told about every change to
+	 * the events and allocations, including those made by transactions, undos
+	 * and redos, in the order they are made. Replacing the venues, events,
+	 * allocations or corridor map as a whole is reported as a replaced state.
+	 * Traffic booked directly on the corridor map (with updateCorridorMap,
+	 * tryReserve and the like) is not reported.
+	 * 
+	 * @param changeLog
+	 *            which is the log to be told, or null for none.
+	 */
+	public synchronized void setChangeLog(ChangeLog changeLog) {
+		this.changeLog = changeLog;
+	}
+
+	/**
+	 * This method is used to check whether there is a change to undo.
+	 * 
+	 * @return true if undo would undo a change and false otherwise.
+	 */
+	public synchronized boolean canUndo() {
+		return journal.peekUndo() != null;
+	}
+
+	/**
+	 * This method is used to check whether there is an undone change to redo.
+	 * 
+	 * @return true if redo would redo a change and false otherwise.
+	 */
+	public synchronized boolean canRedo() {
+		return journal.peekRedo() != null;
+	}
+
+	/**
+	 * This method is used to undo the most recent allocation, removal of an
+	 * allocation or committed transaction that has not been undone, and then
+	 * to tell the listeners. Only the ledger and the allocation index are
+	 * adjusted: the traffic of the change was kept when it was made, so none
+	 * is recomputed. Up to 100 changes can be undone.
+	 * 
+	 * @return true if a change was undone and false if there was nothing to
+	 *         undo, or undoing it would have made the traffic unsafe (because
+	 *         traffic was booked without going through the allocations).
+	 */
+	public boolean undo() {
+		synchronized (this) {
+			// the change to undo
+			EditJournal.Edit[] step = journal.peekUndo();
+			if (step == null || !applyStep(step, true)) {
+				return false;
+			}
+			journal.undone();
+		}
+		fireModelChanged();
+		return true;
+	}
+
+	/**
+	 * This method is used to redo the most recently undone change, and then
+	 * to tell the listeners. Making any other change to the allocations
+	 * forgets the changes that could be redone.
+	 * 
+	 * @return true if a change was redone and false if there was nothing to
+	 *         redo, or redoing it would have made the traffic unsafe (because
+	 *         traffic was booked without going through the allocations).
+	 */
+	public boolean redo() {
+		synchronized (this) {
+			// the change to redo
+			EditJournal.Edit[] step = journal.peekRedo();
+			if (step == null || !applyStep(step, false)) {
+				return false;
+			}
+			journal.redone();
+		}
+		fireModelChanged();
+		return true;
+	}
+
+	/**
+	 * This method is used to make (or, if undo is true, reverse) the edits of
+	 * a step of the journal. The traffic that the step gives back is swapped
+	 * for the traffic it books in one step on the ledger, so the traffic given
+	 * back counts towards the room for the traffic booked; if the traffic
+	 * booked does not fit, nothing is changed.
+	 * 
+	 * @param step
+	 *            which is the edits to make, in the order they were first
+	 *            made.
+	 * @param undo
+	 *            which is true to reverse the edits and false to make them.
+	 * @return true if the edits were made and false if they would have made
+	 *         the traffic unsafe.
+	 */
+	private boolean applyStep(EditJournal.Edit[] step, boolean undo) {
+		// the traffic the step gives back and books
+		Traffic freed = new Traffic();
+		Traffic booked = new Traffic();
+		for (EditJournal.Edit edit : step) {
+			if (edit.allocated == undo) {
+				freed.addTraffic(edit.traffic);
+			} else {
+				booked.addTraffic(edit.traffic);
+			}
+		}
+		// checked and made in one step, so that traffic booked directly on
+		// the ledger by another thread can't take the room freed
+		if (!ledger.tryReplace(freed, booked)) {
+			return false;
+		}
+		for (int i = 0; i < step.length; i++) {
+			// the next edit, last first when undoing
+			EditJournal.Edit edit = step[undo ? step.length - 1 - i : i];
+			if (edit.allocated != undo) {
+				allocationMap.put(edit.event, edit.venue);
+				venueMap.put(edit.venue, edit.event);
+			} else {
+				allocationMap.remove(edit.event);
+				venueMap.remove(edit.venue);
+			}
+			feasibility.setAllocated(edit.venue, edit.allocated != undo);
+			feasibility.trafficChanged(edit.traffic);
+		}
+		if (changeLog != null) {
+			// removals are logged first, so that replaying the log never books
+			// more traffic than the step does
+			for (EditJournal.Edit edit : step) {
+				if (edit.allocated == undo) {
+					changeLog.deallocated(edit.event, edit.venue);
+				}
+			}
+			for (EditJournal.Edit edit : step) {
+				if (edit.allocated != undo) {
+					changeLog.allocated(edit.event, edit.venue);
 				}
 			}
 		}
 		return true;
 	}
+
+	/**
+	 * This method is used to tell every listener that the allocations have
+	 * been changed by a transaction, an undo or a redo.
+	 */
+	private void fireModelChanged() {
+		for (ModelListener listener : listeners) {
+			listener.modelChanged();
+		}
+	}
+
+	/**
+	 * This method is used to tell the change log that the state has been
+	 * replaced as a whole.
+	 */
+	private void stateReplaced() {
+		if (changeLog != null) {
+			changeLog.stateReplaced();
+		}
+	}
+
+	/**
+	 * This method is used to copy the allocations, rebuilding the venue to
+	 * event index from them.
+	 */
+	private void replaceAllocations(Map<Event, Venue> allocationMap) {
+		this.allocationMap = new HashMap<>(allocationMap);
+		this.venueMap = new HashMap<>();
+		for (Map.Entry<Event, Venue> entry : allocationMap.entrySet()) {
+			venueMap.put(entry.getValue(), entry.getKey());
+		}
+	}
+
+	/**
+	 * This method is used to replace the traffic booked on the ledger with
+	 * the traffic described by the corridor map.
+	 */
+	private void replaceLoads(Map<Corridor, Integer> corridorMap) {
+		// the traffic described by corridorMap
+		Traffic traffic = new Traffic();
+		for (Map.Entry<Corridor, Integer> entry : corridorMap.entrySet()) {
+			traffic.updateTraffic(entry.getKey(), entry.getValue());
+		}
+		ledger.clear();
+		ledger.reserve(traffic);
+	}
+
+	/**
+	 * This method is used to rebuild the index of feasible venues after the
+	 * venues or the allocations have been replaced.
+	 */
+	private void rebuildFeasibility() {
+		// the event that was selected in the old index
+		Event selected = feasibility.getSelectedEvent();
+		feasibility = new FeasibilityIndex(venues, ledger);
+		for (Venue venue : venueMap.keySet()) {
+			feasibility.setAllocated(venue, true);
+		}
+		feasibility.select(selected);
+	}
+
+	/**
+	 * <p>
+	 * A set of changes to the model (allocations, removals of allocations and
+	 * new events) that are made together when the transaction is committed.
+	 * </p>
+	 * 
+	 * <p>
+	 * Each change is checked against the model and the changes staged before
+	 * it when it is staged, so an event may, for example, be moved from one
+	 * venue to another by deallocating and then allocating it. The traffic is
+	 * only checked when the transaction is committed, once, against the total
+	 * change in traffic of the whole transaction: a transaction may therefore
+	 * free the room on a corridor that one of its own allocations needs. If the
+	 * total change is unsafe, the transaction is rolled back and the model is
+	 * left as it was. Listeners are told about a committed transaction once,
+	 * and the whole transaction is undone (and redone) as one change.
+	 * </p>
+	 * 
+	 * <p>
+	 * A transaction can only be committed or rolled back once. It is not meant
+	 * to be shared between threads.
+	 * </p>
+	 */
+	public class Transaction {
+
+		// the venue of each changed event before the transaction (or null)
+		private final Map<Event, Venue> eventsBefore = new HashMap<>();
+		// the venue of each changed event after the transaction (or null)
+		private final Map<Event, Venue> eventsAfter = new HashMap<>();
+		// the event at each changed venue before the transaction (or null)
+		private final Map<Venue, Event> venuesBefore = new HashMap<>();
+		// the event at each changed venue after the transaction (or null)
+		private final Map<Venue, Event> venuesAfter = new HashMap<>();
+		// the events to be added, in order
+		private final List<Event> newEvents = new ArrayList<>();
+		// whether the transaction has been committed or rolled back
+		private boolean finished;
+
+		/**
+		 * Creates an empty transaction on the model.
+		 */
+		private Transaction() {
+		}
+
+		/**
+		 * This method is used to stage the allocation of the event to the
+		 * venue. Its traffic is only checked when the transaction is
+		 * committed.
+		 * 
+		 * @param event
+		 *            which is the event to be allocated.
+		 * @param venue
+		 *            which is the venue to allocate it to.
+		 * @throws IllegalArgumentException
+		 *             if the event or the venue is allocated (in the model or
+		 *             by this transaction), or the venue cannot host the
+		 *             event.
+		 * @throws IllegalStateException
+		 *             if the transaction has been committed or rolled back.
+		 */
+		public void allocate(Event event, Venue venue) {
+			synchronized (EventAllocatorModel.this) {
+				checkOpen();
+				if (venueOf(event) != null) {
+					throw new IllegalArgumentException(
+							"The event is already allocated to a venue.");
+				}
+				if (eventAt(venue) != null) {
+					throw new IllegalArgumentException(
+							"The venue is already allocated to an event.");
+				}
+				if (!venue.canHost(event)) {
+					throw new IllegalArgumentException(
+							"The venue is not large enough to host the event.");
+				}
+				stage(event, venue, venue, event);
+			}
+		}
+
+		/**
+		 * This method is used to stage the removal of the allocation of the
+		 * event.
+		 * 
+		 * @param event
+		 *            which is the event whose allocation is to be removed.
+		 * @return the venue the event is allocated to (in the model or by this
+		 *         transaction), or null if it is not allocated.
+		 * @throws IllegalStateException
+		 *             if the transaction has been committed or rolled back.
+		 */
+		public Venue deallocate(Event event) {
+			synchronized (EventAllocatorModel.this) {
+				checkOpen();
+				// the venue the event is allocated to
+				Venue venue = venueOf(event);
+				if (venue != null) {
+					stage(event, null, venue, null);
+				}
+				return venue;
+			}
+		}
+
+		/**
+		 * This method is used to stage the addition of the event to the array
+		 * list of event type. Events that are already in the list when the
+		 * transaction is committed are skipped.
+		 * 
+		 * @param event
+		 *            which is the event to be added.
+		 * @throws IllegalStateException
+		 *             if the transaction has been committed or rolled back.
+		 */
+		public void addEvent(Event event) {
+			checkOpen();
+			newEvents.add(Objects.requireNonNull(event));
+		}
+
+		/**
+		 * This method is used to make every staged change to the model, if the
+		 * total change in traffic keeps every corridor within its capacity,
+		 * and then to tell the listeners. Otherwise the transaction is rolled
+		 * back. Either way the transaction is finished.
+		 * 
+		 * @return true if the changes were made and false if they would have
+		 *         made the traffic unsafe (and none of them were made).
+		 * @throws IllegalStateException
+		 *             if the transaction has already been committed or rolled
+		 *             back, or some allocation it changes has been changed in
+		 *             the model since it was staged (in which case none of the
+		 *             changes are made).
+		 */
+		public boolean commit() {
+			synchronized (EventAllocatorModel.this) {
+				checkOpen();
+				finished = true;
+				for (Map.Entry<Event, Venue> entry : eventsBefore.entrySet()) {
+					if (allocationMap.get(entry.getKey()) != entry.getValue()) {
+						throw new IllegalStateException("The allocation of "
+								+ entry.getKey() + " has changed.");
+					}
+				}
+				for (Map.Entry<Venue, Event> entry : venuesBefore.entrySet()) {
+					if (venueMap.get(entry.getKey()) != entry.getValue()) {
+						throw new IllegalStateException("The allocation of "
+								+ entry.getKey() + " has changed.");
+					}
+				}
+
+				// the traffic given back and booked by the transaction
+				Traffic freed = new Traffic();
+				Traffic booked = new Traffic();
+				// the edits of the transaction, removals first, for the
+				// journal
+				List<EditJournal.Edit> removals = new ArrayList<>();
+				List<EditJournal.Edit> additions = new ArrayList<>();
+				for (Map.Entry<Event, Venue> entry : eventsAfter.entrySet()) {
+					// the event, and its venue before and after
+					Event event = entry.getKey();
+					Venue before = eventsBefore.get(event);
+					Venue after = entry.getValue();
+					if (before != after) {
+						if (before != null) {
+							// the traffic of the event at its old venue
+							Traffic traffic = before.getSharedTraffic(event);
+							freed.addTraffic(traffic);
+							removals.add(new EditJournal.Edit(event, before,
+									traffic, false));
+						}
+						if (after != null) {
+							// the traffic of the event at its new venue
+							Traffic traffic = after.getSharedTraffic(event);
+							booked.addTraffic(traffic);
+							additions.add(new EditJournal.Edit(event, after,
+									traffic, true));
+						}
+					}
+				}
+				// checked and made in one step, so that traffic booked directly
+				// on the ledger by another thread can't take the room freed
+				if (!ledger.tryReplace(freed, booked)) {
+					return false;
+				}
+
+				for (Map.Entry<Event, Venue> entry : eventsAfter.entrySet()) {
+					if (entry.getValue() == null) {
+						allocationMap.remove(entry.getKey());
+					} else {
+						allocationMap.put(entry.getKey(), entry.getValue());
+					}
+				}
+				for (Map.Entry<Venue, Event> entry : venuesAfter.entrySet()) {
+					if (entry.getValue() == null) {
+						venueMap.remove(entry.getKey());
+					} else {
+						venueMap.put(entry.getKey(), entry.getValue());
+					}
+					feasibility.setAllocated(entry.getKey(),
+							entry.getValue() != null);
+				}
+				feasibility.trafficChanged(freed);
+				feasibility.trafficChanged(booked);
+				removals.addAll(additions);
+				journal.record(removals.toArray(new EditJournal.Edit[0]));
+				if (changeLog != null) {
+					for (EditJournal.Edit edit : removals) {
+						if (edit.allocated) {
+							changeLog.allocated(edit.event, edit.venue);
+						} else {
+							changeLog.deallocated(edit.event, edit.venue);
+						}
+					}
+				}
+				addEvents(newEvents);
+			}
+			fireModelChanged();
+			return true;
+		}
+
+		/**
+		 * This method is used to discard every staged change. Rolling back a
+		 * finished transaction does nothing.
+		 */
+		public void rollback() {
+			finished = true;
+		}
+
+		/**
+		 * This method is used to check that the transaction can still be
+		 * changed.
+		 * 
+		 * @throws IllegalStateException
+		 *             if the transaction has been committed or rolled back.
+		 */
+		private void checkOpen() {
+			if (finished) {
+				throw new IllegalStateException(
+						"The transaction has already finished.");
+			}
+		}
+
+		/**
+		 * This method is used to get the venue of the event, taking the
+		 * staged changes into account.
+		 */
+		private Venue venueOf(Event event) {
+			return eventsAfter.containsKey(event) ? eventsAfter.get(event)
+					: allocationMap.get(event);
+		}
+
+		/**
+		 * This method is used to get the event at the venue, taking the
+		 * staged changes into account.
+		 */
+		private Event eventAt(Venue venue) {
+			return venuesAfter.containsKey(venue) ? venuesAfter.get(venue)
+					: venueMap.get(venue);
+		}
+
+		/**
+		 * This method is used to record that the event is now at eventVenue
+		 * and the venue now holds venueEvent (either may be null), remembering
+		 * their state in the model the first time they are changed.
+		 */
+		private void stage(Event event, Venue eventVenue, Venue venue,
+				Event venueEvent) {
+			if (!eventsBefore.containsKey(event)) {
+				eventsBefore.put(event, allocationMap.get(event));
+			}
+			eventsAfter.put(event, eventVenue);
+			if (!venuesBefore.containsKey(venue)) {
+				venuesBefore.put(venue, venueMap.get(venue));
+			}
+			venuesAfter.put(venue, venueEvent);
+		}
+	}
 }
@@ -9,6 +9,7 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
@@ -30,6 +31,8 @@ public class EventAllocatorView {
 	private Scene scene;
 	// instance variable for buttons of event for adding event button
 	private Button addEventButton;
+	// button for importing events from a file
+	private Button importEventsButton;
 	// instance variable for text field for event name for event name
 	private TextField eventName;
 	// instance variable for size of the event for text field for event size
@@ -44,6 +47,24 @@ public class EventAllocatorView {
 	private ComboBox<Event> eventDeleteBox;
 	// instance variable for button for delete button for delete button
 	private Button deleteButton;
+	// button for undoing the last change to the allocations
+	private Button undoButton;
+	// button for redoing the last undone change to the allocations
+	private Button redoButton;
+	// button for saving the session to a snapshot file
+	private Button saveSessionButton;
+	// button for restoring the session from a snapshot file
+	private Button openSessionButton;
+	// button for automatically allocating the unallocated events
+	private Button autoAllocateButton;
+	// button for cancelling an automatic allocation
+	private Button cancelAutoAllocateButton;
+	// the progress of an automatic allocation
+	private ProgressBar autoAllocateProgress;
+	// the nodes explored and time taken by an automatic allocation
+	private Label autoAllocateStatus;
+	// the progress and time taken of loading the venues
+	private Label venueLoadStatus;
 	// instance variable of table view for Pair sub-class type for allocation
 	// table
 	private TableView<Pair> allocationTable;
@@ -73,8 +94,11 @@ public class EventAllocatorView {
 		eventPane.getChildren().add(addEvent);
 
 		addEventButton = new Button("Add Event");
-		GridPane.setConstraints(addEventButton, 0, 3);
-		eventPane.getChildren().add(addEventButton);
+		importEventsButton = new Button("Import Events...");
+		// the row of buttons for adding events
+		HBox addEventButtons = new HBox(5, addEventButton, importEventsButton);
+		GridPane.setConstraints(addEventButtons, 0, 3);
+		eventPane.getChildren().add(addEventButtons);
 
 		eventName = new TextField();
 		eventName.setPromptText("Enter name of the event");
@@ -121,6 +145,17 @@ public class EventAllocatorView {
 		GridPane.setConstraints(deleteButton, 2, 2);
 		eventPane.getChildren().add(deleteButton);
 
+		undoButton = new Button("Undo");
+		redoButton = new Button("Redo");
+		saveSessionButton = new Button("Save Session...");
+		openSessionButton = new Button("Open Session...");
+		// the buttons for undoing and redoing changes, and for saving and
+		// restoring the session
+		HBox undoButtons = new HBox(5, undoButton, redoButton,
+				saveSessionButton, openSessionButton);
+		GridPane.setConstraints(undoButtons, 2, 3);
+		eventPane.getChildren().add(undoButtons);
+
 		// creating an instance of table column called "Events"
 		TableColumn<Pair, String> eventCol = new TableColumn<>("Events");
 		eventCol.setMinWidth(150);
@@ -155,6 +190,23 @@ public class EventAllocatorView {
 		GridPane.setConstraints(corridorTable, 2, 4);
 		eventPane.getChildren().add(corridorTable);
 
+		autoAllocateButton = new Button("Auto allocate");
+		cancelAutoAllocateButton = new Button("Cancel");
+		cancelAutoAllocateButton.setDisable(true);
+		autoAllocateProgress = new ProgressBar(0);
+		autoAllocateProgress.setPrefWidth(200);
+		autoAllocateStatus = new Label();
+		// the row of controls for automatic allocation
+		HBox autoAllocatePane = new HBox(5, autoAllocateButton,
+				cancelAutoAllocateButton, autoAllocateProgress,
+				autoAllocateStatus);
+		GridPane.setConstraints(autoAllocatePane, 0, 5, 3, 1);
+		eventPane.getChildren().add(autoAllocatePane);
+
+		venueLoadStatus = new Label();
+		GridPane.setConstraints(venueLoadStatus, 0, 6, 3, 1);
+		eventPane.getChildren().add(venueLoadStatus);
+
 		scene = new Scene(eventPane);
 	}
 
@@ -186,6 +238,17 @@ public class EventAllocatorView {
 		return addEventButton;
 	}
 
+	/**
+	 * This method is used to return the button for importing events from a
+	 * file.
+	 * 
+	 * @return importEventsButton which is used for importing events from a
+	 *         file.
+	 */
+	public Button getImportEventsButton() {
+		return importEventsButton;
+	}
+
 	/**
 	 * This method is used to get event names for a text field.
 	 * 
@@ -231,6 +294,60 @@ public class EventAllocatorView {
 		return allocateButton;
 	}
 
+	/**
+	 * This method is used to return the button for automatically allocating
+	 * the unallocated events.
+	 * 
+	 * @return autoAllocateButton which is used to start an automatic
+	 *         allocation.
+	 */
+	public Button getAutoAllocateButton() {
+		return autoAllocateButton;
+	}
+
+	/**
+	 * This method is used to return the button for cancelling an automatic
+	 * allocation.
+	 * 
+	 * @return cancelAutoAllocateButton which is used to cancel an automatic
+	 *         allocation.
+	 */
+	public Button getCancelAutoAllocateButton() {
+		return cancelAutoAllocateButton;
+	}
+
+	/**
+	 * This method is used to return the progress bar of an automatic
+	 * allocation.
+	 * 
+	 * @return autoAllocateProgress which shows whether an automatic
+	 *         allocation is running.
+	 */
+	public ProgressBar getAutoAllocateProgress() {
+		return autoAllocateProgress;
+	}
+
+	/**
+	 * This method is used to return the status label of an automatic
+	 * allocation.
+	 * 
+	 * @return autoAllocateStatus which shows the nodes explored and the time
+	 *         taken by an automatic allocation.
+	 */
+	public Label getAutoAllocateStatus() {
+		return autoAllocateStatus;
+	}
+
+	/**
+	 * This method is used to return the label showing the progress of loading
+	 * the venues, and how long it took.
+	 * 
+	 * @return venueLoadStatus which shows whether the venues are loaded.
+	 */
+	public Label getVenueLoadStatus() {
+		return venueLoadStatus;
+	}
+
 	/**
 	 * This method is used to get combo box for event delete box.
 	 * 
@@ -250,6 +367,46 @@ public class EventAllocatorView {
 		return deleteButton;
 	}
 
+	/**
+	 * This method is used to return the button for undoing the last change to
+	 * the allocations.
+	 * 
+	 * @return undoButton which is used to undo a change.
+	 */
+	public Button getUndoButton() {
+		return undoButton;
+	}
+
+	/**
+	 * This method is used to return the button for redoing the last undone
+	 * change to the allocations.
+	 * 
+	 * @return redoButton which is used to redo a change.
+	 */
+	public Button getRedoButton() {
+		return redoButton;
+	}
+
+	/**
+	 * This method is used to return the button for saving the session to a
+	 * snapshot file.
+	 * 
+	 * @return saveSessionButton which is used to save the session.
+	 */
+	public Button getSaveSessionButton() {
+		return saveSessionButton;
+	}
+
+	/**
+	 * This method is used to return the button for restoring the session from
+	 * a snapshot file.
+	 * 
+	 * @return openSessionButton which is used to restore a session.
+	 */
+	public Button getOpenSessionButton() {
+		return openSessionButton;
+	}
+
 	/**
 	 * This method is used to get a table for a allocation table.
 	 * 
@@ -333,5 +490,37 @@ public class EventAllocatorView {
 		public String getVenue() {
 			return venue.get();
 		}
+
+		/**
+		 * This method is used to change the string format of venues (or of
+		 * the traffic, for a row of the corridor table). The change is shown
+		 * by the table at once.
+		 * 
+		 * @param venueString
+		 *            which is the new string representation of venues.
+		 */
+		public void setVenue(String venueString) {
+			venue.set(venueString);
+		}
+
+		/**
+		 * This method is used to return the property holding the string
+		 * format of events, so that tables can observe it.
+		 * 
+		 * @return event which is the property of the string of events.
+		 */
+		public SimpleStringProperty eventProperty() {
+			return event;
+		}
+
+		/**
+		 * This method is used to return the property holding the string
+		 * format of venues, so that tables can observe it.
+		 * 
+		 * @return venue which is the property of the string of venues.
+		 */
+		public SimpleStringProperty venueProperty() {
+			return venue;
+		}
 	}
 }
@@ -0,0 +1,15 @@
+package planner.gui;
+
+/**
+ * Is told when the allocations of the model of the event allocator program
+ * have been changed by a transaction, an undo or a redo.
+ */
+public interface ModelListener {
+
+	/**
+	 * This method is called once after each committed transaction, undo or
+	 * redo, on the thread that made it, however many allocations it changed.
+	 */
+	void modelChanged();
+
+}
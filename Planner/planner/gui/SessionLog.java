@@ -0,0 +1,547 @@
+package planner.gui;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import planner.Event;
+import planner.FormatException;
+import planner.Venue;
+
+/**
+ * <p>
+ * A write-ahead log of the changes to the events and allocations of the model
+ * of the event allocator program (added events, allocations and removals of
+ * allocations), which can be replayed on top of the session snapshot it
+ * follows to recover the changes made since that snapshot was saved.
+ * </p>
+ *
+ * <p>
+ * Appending a change only encodes it into memory, so it can be done while the
+ * model is locked. A writer thread writes the changes to the file and forces
+ * them to the disk; the changes appended while it is forcing one batch are
+ * written and forced together as the next batch, so there is at most one
+ * force in progress however quickly changes are made. A change is therefore
+ * durable shortly after it is appended; sync waits until it is.
+ * </p>
+ *
+ * <p>
+ * Each change has a sequence number, one more than that of the change before
+ * it. The file consists of (all integers are big-endian): the magic number
+ * 0x4556574C ("EVWL"), the format version, and the sequence number of the last
+ * change included in the snapshot the log follows; then a record for each
+ * change: the length of its body, the CRC-32 of its body, and the body. The
+ * body is the sequence number, the kind of change (1 for an added event, 2 for
+ * an allocation and 3 for a removal of an allocation), the name of the event
+ * (its length in bytes and its UTF-8 bytes) and its size, and, for an
+ * allocation or a removal, the catalog ordinal and 64-bit fingerprint of the
+ * venue. A record that is incomplete or does not match its CRC (because the
+ * program stopped while writing it) ends the log.
+ * </p>
+ */
+public class SessionLog implements Closeable {
+
+	// the magic number at the start of every log file ("EVWL")
+	private final static int MAGIC = 0x4556574C;
+	// the version of the log format written by this class
+	private final static int VERSION = 1;
+	// the length of the header of the file
+	private final static int HEADER_LENGTH = 16;
+	// the largest length of the body of a record that is read
+	private final static int MAX_RECORD_LENGTH = 1 << 20;
+	// the kinds of change
+	private final static byte EVENT_ADDED = 1;
+	private final static byte ALLOCATED = 2;
+	private final static byte DEALLOCATED = 3;
+	// the size of the buffer used to read logs
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	// the file the log is written to
+	private final FileChannel channel;
+	// the catalog ordinal of each venue
+	private final Map<Venue, Integer> ordinals;
+	// the sequence number of the last change of the snapshot the log follows
+	private final long base;
+	// told about an error writing the log, on the writer thread
+	private final Consumer<IOException> onError;
+	// the thread that writes and forces the appended changes
+	private final Thread writer;
+
+	// the records appended but not yet taken by the writer thread
+	private ByteArrayOutputStream pending;
+	// the body of the record being appended
+	private final ByteArrayOutputStream body;
+	// the stream the body is encoded with
+	private final DataOutputStream bodyOut;
+	// the checksum of the body
+	private final CRC32 crc;
+	// the sequence number of the last change appended
+	private long appended;
+	// the sequence number of the last change forced to the disk
+	private long durable;
+	// the error that stopped the writer thread, or null
+	private IOException failure;
+	// whether the log has been closed
+	private boolean closed;
+
+	/*
+	 * invariant:
+	 *
+	 * base <= durable <= appended &&
+	 *
+	 * the records of the changes after durable, up to appended, are in pending
+	 * or are being written by the writer thread
+	 */
+
+	/**
+	 * Creates a new, empty log in the given file (replacing any log already
+	 * there) that follows the snapshot with the given sequence number, and
+	 * starts the thread that writes it.
+	 *
+	 * @param path
+	 *            which is the file of the log.
+	 * @param venues
+	 *            which is the venues of the model, whose positions are the
+	 *            catalog ordinals recorded in the log.
+	 * @param base
+	 *            which is the sequence number of the last change included in
+	 *            the snapshot the log follows.
+	 * @param onError
+	 *            which is told, on the writer thread, if there is an error
+	 *            writing the log. No more changes are then written.
+	 * @throws IOException
+	 *             if there is an error creating the file.
+	 */
+	public SessionLog(Path path, List<Venue> venues, long base,
+			Consumer<IOException> onError) throws IOException {
+		if (base < 0) {
+			throw new IllegalArgumentException(
+					"The sequence number cannot be negative.");
+		}
+		this.ordinals = new HashMap<>(venues.size() * 2);
+		for (int i = 0; i < venues.size(); i++) {
+			ordinals.put(venues.get(i), i);
+		}
+		this.base = base;
+		this.appended = base;
+		this.durable = base;
+		this.onError = onError;
+		this.pending = new ByteArrayOutputStream();
+		this.body = new ByteArrayOutputStream();
+		this.bodyOut = new DataOutputStream(body);
+		this.crc = new CRC32();
+
+		channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			// the header of the file
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.putInt(MAGIC).putInt(VERSION).putLong(base).flip();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			channel.force(true);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		writer = new Thread(this::writeLoop, "session-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * This method is used to append the addition of the event.
+	 *
+	 * @param event
+	 *            which is the event that was added.
+	 * @return the sequence number of the change.
+	 */
+	public synchronized long eventAdded(Event event) {
+		return append(EVENT_ADDED, event, null);
+	}
+
+	/**
+	 * This method is used to append the allocation of the event to the venue.
+	 *
+	 * @param event
+	 *            which is the event that was allocated.
+	 * @param venue
+	 *            which is the venue it was allocated to.
+	 * @return the sequence number of the change.
+	 * @throws IllegalArgumentException
+	 *             if the venue is not one of the venues of the log.
+	 */
+	public synchronized long allocated(Event event, Venue venue) {
+		return append(ALLOCATED, event, venue);
+	}
+
+	/**
+	 * This method is used to append the removal of the allocation of the event
+	 * to the venue.
+	 *
+	 * @param event
+	 *            which is the event whose allocation was removed.
+	 * @param venue
+	 *            which is the venue it was allocated to.
+	 * @return the sequence number of the change.
+	 * @throws IllegalArgumentException
+	 *             if the venue is not one of the venues of the log.
+	 */
+	public synchronized long deallocated(Event event, Venue venue) {
+		return append(DEALLOCATED, event, venue);
+	}
+
+	/**
+	 * This method is used to get the sequence number of the last change
+	 * appended, or of the snapshot the log follows if there is none.
+	 *
+	 * @return the sequence number of the last change.
+	 */
+	public synchronized long getSequence() {
+		return appended;
+	}
+
+	/**
+	 * This method is used to get the number of changes appended to the log.
+	 *
+	 * @return the number of changes in the log.
+	 */
+	public synchronized long getSize() {
+		return appended - base;
+	}
+
+	/**
+	 * This method is used to wait until every change appended so far has been
+	 * forced to the disk.
+	 *
+	 * @throws IOException
+	 *             if there was an error writing the log.
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting.
+	 */
+	public synchronized void sync() throws IOException {
+		// the last change to wait for
+		long target = appended;
+		while (durable < target && failure == null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(
+						"Interrupted while waiting for the session log.");
+			}
+		}
+		if (durable < target) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * This method is used to force every change appended so far to the disk,
+	 * and then to stop the writer thread and close the file. Closing a closed
+	 * log does nothing.
+	 *
+	 * @throws IOException
+	 *             if there was an error writing the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		synchronized (this) {
+			if (durable < appended) {
+				throw failure != null ? failure
+						: new InterruptedIOException(
+								"Interrupted while closing the session log.");
+			}
+		}
+	}
+
+	/**
+	 * This method is used to apply the changes of the log in the given file
+	 * that come after the snapshot with the given sequence number to the
+	 * model, which must hold that snapshot. The log ends at its first
+	 * incomplete or damaged record. The model's change log is not told about
+	 * the changes, so it should not be set while replaying.
+	 *
+	 * @param path
+	 *            which is the file of the log. A missing file is an empty log.
+	 * @param model
+	 *            which is the model to apply the changes to.
+	 * @param sequence
+	 *            which is the sequence number of the last change included in
+	 *            the model.
+	 * @return the sequence number of the last change in the model after
+	 *         replaying the log.
+	 * @throws IOException
+	 *             if there is an error reading the file.
+	 * @throws FormatException
+	 *             if the file is not a log of this version, does not follow
+	 *             the snapshot, or has a change that cannot be made to the
+	 *             model (in which case the changes before it have been made).
+	 */
+	public static long replay(Path path, EventAllocatorModel model,
+			long sequence) throws IOException, FormatException {
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(path), BUFFER_SIZE));
+		} catch (NoSuchFileException e) {
+			return sequence;
+		}
+		try {
+			// the sequence number the log starts after
+			long logBase;
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new FormatException("Not a session log file.");
+				}
+				// the version of the file
+				int version = in.readInt();
+				if (version != VERSION) {
+					throw new FormatException("Unsupported session log version "
+							+ version + ".");
+				}
+				logBase = in.readLong();
+			} catch (EOFException e) {
+				// the program stopped while creating the log
+				return sequence;
+			}
+			if (logBase > sequence) {
+				throw new FormatException("The session log does not follow "
+						+ "the session snapshot.");
+			}
+			// the sequence number of the previous change in the log
+			long previous = logBase;
+			// the body of the next record
+			byte[] bytes;
+			while ((bytes = readRecord(in)) != null) {
+				DataInputStream record = new DataInputStream(
+						new ByteArrayInputStream(bytes));
+				// the sequence number of the change
+				long number = record.readLong();
+				if (number != previous + 1) {
+					throw new FormatException("The session log skips from "
+							+ "change " + previous + " to " + number + ".");
+				}
+				previous = number;
+				if (number > sequence) {
+					apply(model, record);
+					sequence = number;
+				}
+			}
+			return sequence;
+		} catch (EOFException e) {
+			throw new FormatException("Corrupt session log.");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * This method is used to encode a change and add it to the pending
+	 * records. The caller holds the lock of the log.
+	 */
+	private long append(byte kind, Event event, Venue venue) {
+		// the catalog ordinal of the venue
+		Integer ordinal = null;
+		if (venue != null) {
+			ordinal = ordinals.get(venue);
+			if (ordinal == null) {
+				throw new IllegalArgumentException(venue.getName()
+						+ " is not one of the venues of the session log.");
+			}
+		}
+		body.reset();
+		try {
+			bodyOut.writeLong(appended + 1);
+			bodyOut.writeByte(kind);
+			// the encoded name of the event
+			byte[] name = event.getName().getBytes(StandardCharsets.UTF_8);
+			bodyOut.writeInt(name.length);
+			bodyOut.write(name);
+			bodyOut.writeInt(event.getSize());
+			if (venue != null) {
+				bodyOut.writeInt(ordinal);
+				bodyOut.writeLong(venue.getFingerprint());
+			}
+			crc.reset();
+			crc.update(body.toByteArray());
+			// the stream the record is added to the pending records with
+			DataOutputStream out = new DataOutputStream(pending);
+			out.writeInt(body.size());
+			out.writeInt((int) crc.getValue());
+			body.writeTo(out);
+		} catch (IOException e) {
+			// writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+		appended++;
+		notifyAll();
+		return appended;
+	}
+
+	/**
+	 * This method is run by the writer thread: it repeatedly takes the
+	 * pending records, writes them and forces them to the disk, until the log
+	 * is closed and every record has been written, or writing fails.
+	 */
+	private void writeLoop() {
+		while (true) {
+			// the records to write, and the last change among them
+			byte[] batch;
+			long last;
+			synchronized (this) {
+				while (pending.size() == 0 && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// only closing the log stops the writer
+					}
+				}
+				if (pending.size() == 0) {
+					return;
+				}
+				batch = pending.toByteArray();
+				pending = new ByteArrayOutputStream();
+				last = appended;
+			}
+			try {
+				// the records, as a buffer
+				ByteBuffer buffer = ByteBuffer.wrap(batch);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				onError.accept(e);
+				return;
+			}
+			synchronized (this) {
+				durable = last;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * This method is used to read the body of the next record, checking its
+	 * CRC.
+	 *
+	 * @return the body, or null if there are no more complete, undamaged
+	 *         records.
+	 */
+	private static byte[] readRecord(DataInputStream in) throws IOException {
+		// the length and CRC of the body
+		int length;
+		int expected;
+		try {
+			length = in.readInt();
+			expected = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (length < 0 || length > MAX_RECORD_LENGTH) {
+			return null;
+		}
+		// the body of the record
+		byte[] bytes = new byte[length];
+		try {
+			in.readFully(bytes);
+		} catch (EOFException e) {
+			return null;
+		}
+		// the checksum of the body
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return (int) crc.getValue() == expected ? bytes : null;
+	}
+
+	/**
+	 * This method is used to make the change in the body of a record, after
+	 * its sequence number, to the model.
+	 */
+	private static void apply(EventAllocatorModel model, DataInputStream in)
+			throws IOException, FormatException {
+		// the kind of change
+		byte kind = in.readByte();
+		// the encoded name of the event
+		byte[] name = new byte[in.readInt()];
+		in.readFully(name);
+		Event event;
+		try {
+			event = new Event(new String(name, StandardCharsets.UTF_8), in
+					.readInt());
+		} catch (IllegalArgumentException e) {
+			throw new FormatException("Invalid event in the session log: "
+					+ e.getMessage());
+		}
+		if (kind == EVENT_ADDED) {
+			model.addEvents(event);
+			return;
+		}
+		if (kind != ALLOCATED && kind != DEALLOCATED) {
+			throw new FormatException("Corrupt session log.");
+		}
+		List<Venue> venues = model.getVenues();
+		// the catalog ordinal of the venue
+		int ordinal = in.readInt();
+		if (ordinal < 0 || ordinal >= venues.size()
+				|| venues.get(ordinal).getFingerprint() != in.readLong()) {
+			throw new FormatException("The session log was written with "
+					+ "different venues.");
+		}
+		// the venue of the change
+		Venue venue = venues.get(ordinal);
+		if (kind == ALLOCATED) {
+			try {
+				if (model.allocate(event, venue)) {
+					return;
+				}
+			} catch (IllegalArgumentException e) {
+				// reported below
+			}
+			throw new FormatException("The session log allocates " + event
+					+ " to " + venue.getName() + ", which is not possible.");
+		}
+		if (model.getVenueOf(event) != venue) {
+			throw new FormatException("The session log removes an allocation "
+					+ "of " + event + " that is not in the session.");
+		}
+		model.deallocate(event);
+	}
+}
@@ -0,0 +1,415 @@
+package planner.gui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import planner.Corridor;
+import planner.Event;
+import planner.FormatException;
+import planner.Location;
+import planner.Traffic;
+import planner.Venue;
+
+/**
+ * <p>
+ * Saves the session of the event allocator program (the events, the
+ * allocations and the traffic booked on each corridor) to a compact binary
+ * snapshot file, and restores it.
+ * </p>
+ *
+ * <p>
+ * Venues are not stored in the snapshot: an allocated venue is recorded by its
+ * position (its catalog ordinal) in the venues of the model, together with
+ * its fingerprint, so a snapshot can only be restored into a model with the
+ * same venues, and restoring it into a model with different venues is
+ * detected. Names are stored once each, in a table, and referred to by their
+ * number in it. The traffic on each corridor is stored too, so restoring a
+ * snapshot does not recompute any traffic unless it is asked to verify the
+ * snapshot.
+ * </p>
+ *
+ * <p>
+ * The file consists of (all integers are big-endian): the magic number
+ * 0x45565353 ("EVSS"), the format version and the 64-bit sequence number of
+ * the last change of the session log (see {@link SessionLog}) that the
+ * snapshot includes (0 if there is none); the name table (the number of
+ * names, then each name as its length in bytes and its UTF-8 bytes); the
+ * events (their number, then the name number and size of each); the
+ * allocations (their number, then the event number, venue ordinal and 64-bit
+ * venue fingerprint of each); and the corridor loads (their number, then the
+ * start and end name numbers, capacity and load of each). Snapshots of version
+ * 1, which have no sequence number, can still be read.
+ * </p>
+ */
+public class SessionSnapshot {
+
+	// the magic number at the start of every snapshot file ("EVSS")
+	private final static int MAGIC = 0x45565353;
+	// the version of the snapshot format written by this class
+	private final static int VERSION = 2;
+	// the size of the buffers used to read and write snapshots
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * This method is used to save the session held by the model to the given
+	 * file. The snapshot is written to a temporary file in the same directory,
+	 * forced to the disk, and then moved over the file, so the file always
+	 * holds either the old or the new snapshot, even if the program stops
+	 * while saving.
+	 *
+	 * @param model
+	 *            which is the model whose session is saved.
+	 * @param path
+	 *            which is the file to save the snapshot to.
+	 * @throws IOException
+	 *             if there is an error writing the file.
+	 * @throws IllegalArgumentException
+	 *             if an allocated venue or an event of an allocation is not in
+	 *             the venues or events of the model.
+	 */
+	public static void save(EventAllocatorModel model, Path path)
+			throws IOException {
+		save(model, path, 0);
+	}
+
+	/**
+	 * This method is used to save the session held by the model to the given
+	 * file, as save(model, path) does, recording that it includes every change
+	 * of the session log up to the given sequence number.
+	 *
+	 * @param model
+	 *            which is the model whose session is saved.
+	 * @param path
+	 *            which is the file to save the snapshot to.
+	 * @param sequence
+	 *            which is the sequence number of the last change of the
+	 *            session log that the session includes.
+	 * @throws IOException
+	 *             if there is an error writing the file.
+	 * @throws IllegalArgumentException
+	 *             if an allocated venue or an event of an allocation is not in
+	 *             the venues or events of the model.
+	 */
+	public static void save(EventAllocatorModel model, Path path,
+			long sequence) throws IOException {
+		// the temporary file the snapshot is written to
+		Path temp = Files.createTempFile(path.toAbsolutePath().getParent(),
+				path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.WRITE)) {
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(Channels.newOutputStream(
+								channel), BUFFER_SIZE));
+				synchronized (model) {
+					write(model, out, sequence);
+				}
+				out.flush();
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * This method is used to replace the session held by the model with the
+	 * one saved in the given file. The venues of the model are kept, and must
+	 * be the venues the snapshot was saved with. The changes that could be
+	 * undone are forgotten.
+	 *
+	 * @param model
+	 *            which is the model to restore the session into.
+	 * @param path
+	 *            which is the snapshot file to read.
+	 * @param verify
+	 *            which is true to check that every allocated venue can host
+	 *            its event, and that the stored corridor loads are the traffic
+	 *            of the allocations (which recomputes that traffic).
+	 * @return the sequence number of the last change of the session log that
+	 *         the snapshot includes, or 0 if there is none.
+	 * @throws IOException
+	 *             if there is an error reading the file.
+	 * @throws FormatException
+	 *             if the file is not a snapshot of a known version, refers to
+	 *             venues that are not those of the model, or (if verify is
+	 *             true) fails the checks above. The model is not changed.
+	 */
+	public static long load(EventAllocatorModel model, Path path,
+			boolean verify) throws IOException, FormatException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(path), BUFFER_SIZE))) {
+			// the length of the file, which bounds every count in it
+			long length = Files.size(path);
+			synchronized (model) {
+				return read(model, in, length, verify);
+			}
+		} catch (EOFException e) {
+			throw new FormatException("The session snapshot is truncated.");
+		}
+	}
+
+	/**
+	 * This method is used to write the session held by the model.
+	 */
+	private static void write(EventAllocatorModel model, DataOutputStream out,
+			long sequence) throws IOException {
+		List<Venue> venues = model.getVenues();
+		// the catalog ordinal of each venue
+		Map<Venue, Integer> ordinals = new HashMap<>(venues.size() * 2);
+		for (int i = 0; i < venues.size(); i++) {
+			ordinals.put(venues.get(i), i);
+		}
+		List<Event> events = model.getEvents();
+		// the number of each event, in the order of the events
+		Map<Event, Integer> eventNumbers = new LinkedHashMap<>(events.size()
+				* 2);
+		// the interned names, in order of first use
+		Map<String, Integer> names = new LinkedHashMap<>();
+		for (Event event : events) {
+			eventNumbers.putIfAbsent(event, eventNumbers.size());
+			intern(names, event.getName());
+		}
+		Map<Corridor, Integer> loads = model.getCorridorMap();
+		for (Corridor corridor : loads.keySet()) {
+			intern(names, corridor.getStart().getName());
+			intern(names, corridor.getEnd().getName());
+		}
+
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(sequence);
+		out.writeInt(names.size());
+		for (String name : names.keySet()) {
+			// the encoded name
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.writeInt(eventNumbers.size());
+		for (Event event : eventNumbers.keySet()) {
+			out.writeInt(names.get(event.getName()));
+			out.writeInt(event.getSize());
+		}
+		Map<Event, Venue> allocations = model.getAllocationMap();
+		out.writeInt(allocations.size());
+		for (Map.Entry<Event, Venue> entry : allocations.entrySet()) {
+			// the numbers of the event and the venue
+			Integer event = eventNumbers.get(entry.getKey());
+			Integer venue = ordinals.get(entry.getValue());
+			if (event == null || venue == null) {
+				throw new IllegalArgumentException("The allocation of "
+						+ entry.getKey() + " is not to one of the venues of "
+						+ "the model, or of one of its events.");
+			}
+			out.writeInt(event);
+			out.writeInt(venue);
+			out.writeLong(entry.getValue().getFingerprint());
+		}
+		out.writeInt(loads.size());
+		for (Map.Entry<Corridor, Integer> entry : loads.entrySet()) {
+			out.writeInt(names.get(entry.getKey().getStart().getName()));
+			out.writeInt(names.get(entry.getKey().getEnd().getName()));
+			out.writeInt(entry.getKey().getCapacity());
+			out.writeInt(entry.getValue());
+		}
+	}
+
+	/**
+	 * This method is used to read a session into the model, changing the
+	 * model only once the whole snapshot has been read and checked. No count
+	 * read is trusted to size an array unless the file is long enough to hold
+	 * that many items, so a damaged file is reported as a FormatException
+	 * rather than running out of memory.
+	 *
+	 * @return the sequence number stored in the snapshot.
+	 */
+	private static long read(EventAllocatorModel model, DataInputStream in,
+			long length, boolean verify) throws IOException,
+			FormatException {
+		if (in.readInt() != MAGIC) {
+			throw new FormatException("Not a session snapshot file.");
+		}
+		// the version of the file
+		int version = in.readInt();
+		if (version != 1 && version != VERSION) {
+			throw new FormatException("Unsupported session snapshot version "
+					+ version + ".");
+		}
+		// the last change of the session log included in the snapshot
+		long sequence = version == 1 ? 0 : in.readLong();
+		if (sequence < 0) {
+			throw new FormatException("Corrupt session snapshot.");
+		}
+		// each name takes at least its 4-byte length
+		String[] names = new String[count(in, length / 4)];
+		for (int i = 0; i < names.length; i++) {
+			// the encoded name
+			byte[] bytes = new byte[count(in, length)];
+			in.readFully(bytes);
+			names[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		// each event takes 8 bytes
+		Event[] events = new Event[count(in, length / 8)];
+		try {
+			for (int i = 0; i < events.length; i++) {
+				events[i] = new Event(names[number(in, names.length)], in
+						.readInt());
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FormatException("Invalid event in the session "
+					+ "snapshot: " + e.getMessage());
+		}
+
+		List<Venue> venues = model.getVenues();
+		// the allocations, and the events at each venue
+		Map<Event, Venue> allocations = new HashMap<>();
+		Map<Venue, Event> allocated = new HashMap<>();
+		// the number of allocations
+		int allocationCount = count(in, length / 16);
+		for (int i = 0; i < allocationCount; i++) {
+			Event event = events[number(in, events.length)];
+			Venue venue = venues.get(number(in, venues.size()));
+			if (in.readLong() != venue.getFingerprint()) {
+				throw new FormatException("The session snapshot was saved "
+						+ "with different venues.");
+			}
+			if (allocations.put(event, venue) != null || allocated.put(venue,
+					event) != null) {
+				throw new FormatException("The session snapshot allocates "
+						+ event + " or " + venue.getName() + " twice.");
+			}
+		}
+
+		// the traffic booked on each corridor
+		Map<Corridor, Integer> loads = new HashMap<>();
+		// the number of corridors with traffic
+		int corridorCount = count(in, length / 16);
+		try {
+			for (int i = 0; i < corridorCount; i++) {
+				loads.put(new Corridor(new Location(names[number(in,
+						names.length)]), new Location(names[number(in,
+								names.length)]), in.readInt()), count(in));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FormatException("Invalid corridor in the session "
+					+ "snapshot: " + e.getMessage());
+		}
+		if (in.read() >= 0) {
+			throw new FormatException("Unexpected data at the end of the "
+					+ "session snapshot.");
+		}
+
+		if (verify) {
+			verify(allocations, loads);
+		}
+		List<Event> eventList = new ArrayList<>(events.length);
+		for (Event event : events) {
+			eventList.add(event);
+		}
+		model.restore(eventList, loads, allocations);
+		return sequence;
+	}
+
+	/**
+	 * This method is used to check that every venue can host the event
+	 * allocated to it, and that the loads are the traffic of the allocations.
+	 *
+	 * @throws FormatException
+	 *             if the check fails.
+	 */
+	private static void verify(Map<Event, Venue> allocations,
+			Map<Corridor, Integer> loads) throws FormatException {
+		// the traffic of the allocations
+		Traffic traffic = new Traffic();
+		for (Map.Entry<Event, Venue> entry : allocations.entrySet()) {
+			if (!entry.getValue().canHost(entry.getKey())) {
+				throw new FormatException(entry.getValue().getName()
+						+ " cannot host " + entry.getKey() + ".");
+			}
+			traffic.addTraffic(entry.getValue().getSharedTraffic(entry
+					.getKey()));
+		}
+		// the stored loads, as traffic
+		Traffic stored = new Traffic();
+		for (Map.Entry<Corridor, Integer> entry : loads.entrySet()) {
+			stored.updateTraffic(entry.getKey(), entry.getValue());
+		}
+		if (!traffic.sameTraffic(stored)) {
+			throw new FormatException("The corridor loads of the session "
+					+ "snapshot are not the traffic of its allocations.");
+		}
+	}
+
+	/**
+	 * This method is used to add the name to the table if it is not already
+	 * in it.
+	 */
+	private static void intern(Map<String, Integer> names, String name) {
+		names.putIfAbsent(name, names.size());
+	}
+
+	/**
+	 * This method is used to read a count, which may not be negative.
+	 */
+	private static int count(DataInputStream in) throws IOException,
+			FormatException {
+		// the count read
+		int count = in.readInt();
+		if (count < 0) {
+			throw new FormatException("Corrupt session snapshot.");
+		}
+		return count;
+	}
+
+	/**
+	 * This method is used to read a count, which may not be negative or more
+	 * than limit.
+	 */
+	private static int count(DataInputStream in, long limit)
+			throws IOException, FormatException {
+		// the count read
+		int count = count(in);
+		if (count > limit) {
+			throw new FormatException("Corrupt session snapshot.");
+		}
+		return count;
+	}
+
+	/**
+	 * This method is used to read a number that must be less than limit.
+	 */
+	private static int number(DataInputStream in, int limit)
+			throws IOException, FormatException {
+		// the number read
+		int number = count(in);
+		if (number >= limit) {
+			throw new FormatException("Corrupt session snapshot.");
+		}
+		return number;
+	}
+}
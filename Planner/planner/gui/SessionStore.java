@@ -0,0 +1,305 @@
+package planner.gui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import planner.Event;
+import planner.FormatException;
+import planner.Venue;
+
+/**
+ * <p>
+ * Keeps the session of the event allocator program safe if the program stops
+ * unexpectedly, in a session snapshot (see {@link SessionSnapshot}) and a
+ * write-ahead log of the changes made since the snapshot was saved (see
+ * {@link SessionLog}).
+ * </p>
+ *
+ * <p>
+ * Opening the store restores the snapshot into the model, replays the log on
+ * top of it, and then compacts the store: the session is saved as a new
+ * snapshot and the log is started again, empty. From then on the store is the
+ * change log of the model, so every added event, allocation and removal of an
+ * allocation is appended to the log. When the model's state is replaced as a
+ * whole (for example when the venue file changes), the store is compacted
+ * straight away, since the log cannot describe the change. It is also
+ * compacted in the background once the log holds a given number of changes,
+ * so that recovering the session never replays more than about that many
+ * changes.
+ * </p>
+ *
+ * <p>
+ * A snapshot records the sequence number of the last change of the log it
+ * includes, and replaying skips the changes it already includes, so the
+ * program may stop at any point of a compaction. Compacting locks the model
+ * while the snapshot is written.
+ * </p>
+ */
+public class SessionStore implements ChangeLog, Closeable {
+
+	/** The default number of changes in the log that triggers compaction. */
+	public final static int COMPACT_SIZE = 10000;
+
+	// how often, in milliseconds, the size of the log is checked
+	private final static long CHECK_MILLIS = 1000;
+
+	// the model whose session is kept
+	private final EventAllocatorModel model;
+	// the file of the snapshot
+	private final Path snapshotPath;
+	// the file of the log
+	private final Path logPath;
+	// the number of changes in the log that triggers compaction
+	private final int compactSize;
+	// told about errors writing the snapshot or the log
+	private final Consumer<IOException> onError;
+	// the log of the changes since the snapshot, or null if the store is not
+	// open (closed, with stale true, if the last compaction failed)
+	private SessionLog log;
+	// whether the log misses changes that only compacting will save (set
+	// without locking the model by the writer thread of the log)
+	private volatile boolean stale;
+	// the thread that compacts the store in the background, or null
+	private ScheduledExecutorService compactor;
+
+	/*
+	 * invariant:
+	 *
+	 * the snapshot followed by the changes in log is the session held by the
+	 * model, unless stale is true (in which case it is an earlier session)
+	 */
+
+	/**
+	 * Creates a store for the session of the model, kept in the given files.
+	 * The store must be opened before it keeps anything.
+	 *
+	 * @param model
+	 *            which is the model whose session is kept.
+	 * @param snapshotPath
+	 *            which is the file of the snapshot.
+	 * @param logPath
+	 *            which is the file of the log.
+	 * @param compactSize
+	 *            which is the number of changes in the log that triggers
+	 *            compaction.
+	 * @param onError
+	 *            which is told about errors writing the snapshot or the log in
+	 *            the background, on the thread that found them. The changes
+	 *            made since are saved by the next compaction that succeeds.
+	 */
+	public SessionStore(EventAllocatorModel model, Path snapshotPath,
+			Path logPath, int compactSize, Consumer<IOException> onError) {
+		if (model == null || snapshotPath == null || logPath == null
+				|| onError == null) {
+			throw new NullPointerException("arguments cannot be null");
+		}
+		if (compactSize <= 0) {
+			throw new IllegalArgumentException(
+					"The compaction size must be positive.");
+		}
+		this.model = model;
+		this.snapshotPath = snapshotPath;
+		this.logPath = logPath;
+		this.compactSize = compactSize;
+		this.onError = onError;
+	}
+
+	/**
+	 * This method is used to recover the session into the model (which must
+	 * hold the venues it was saved with), to compact the store, and then to
+	 * start logging the changes to the model. If there is no snapshot, the
+	 * log is replayed on top of the session the model holds.
+	 *
+	 * @throws IOException
+	 *             if there is an error reading or writing the files.
+	 * @throws FormatException
+	 *             if the snapshot or the log cannot be read, or do not fit the
+	 *             venues of the model. The files are not changed, and the
+	 *             store is not opened, but the model may hold part of the
+	 *             session.
+	 * @throws IllegalStateException
+	 *             if the store is already open.
+	 */
+	public void open() throws IOException, FormatException {
+		synchronized (model) {
+			if (log != null) {
+				throw new IllegalStateException(
+						"The session store is already open.");
+			}
+			// the last change of the log included in the session
+			long sequence = 0;
+			if (Files.exists(snapshotPath)) {
+				sequence = SessionSnapshot.load(model, snapshotPath, false);
+			}
+			sequence = SessionLog.replay(logPath, model, sequence);
+			SessionSnapshot.save(model, snapshotPath, sequence);
+			log = new SessionLog(logPath, model.getVenues(), sequence,
+					this::logFailed);
+			model.setChangeLog(this);
+		}
+		compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+			// the thread compacting the store
+			Thread thread = new Thread(task, "session-compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		compactor.scheduleWithFixedDelay(this::compactIfNeeded, CHECK_MILLIS,
+				CHECK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * This method is used to save the session held by the model as a new
+	 * snapshot, and to start the log again, empty.
+	 *
+	 * @throws IOException
+	 *             if there is an error writing the files, in which case the
+	 *             changes made from now on are saved by the next compaction
+	 *             that succeeds.
+	 * @throws IllegalStateException
+	 *             if the store is not open.
+	 */
+	public void compact() throws IOException {
+		synchronized (model) {
+			if (log == null) {
+				throw new IllegalStateException(
+						"The session store is not open.");
+			}
+			// the last change of the log, which the snapshot will include
+			long sequence = log.getSequence();
+			stale = true;
+			try {
+				log.close();
+			} catch (IOException e) {
+				// the snapshot includes the changes that were not written
+			}
+			SessionSnapshot.save(model, snapshotPath, sequence);
+			log = new SessionLog(logPath, model.getVenues(), sequence,
+					this::logFailed);
+			stale = false;
+		}
+	}
+
+	/**
+	 * This method is used to wait until every change made to the model so far
+	 * has been forced to the disk.
+	 *
+	 * @throws IOException
+	 *             if there was an error writing the log, or the log misses
+	 *             changes until the next compaction.
+	 */
+	public void sync() throws IOException {
+		// the log to wait for
+		SessionLog current;
+		synchronized (model) {
+			if (stale) {
+				throw new IOException("The session log could not be written.");
+			}
+			current = log;
+		}
+		if (current != null) {
+			current.sync();
+		}
+	}
+
+	/**
+	 * This method is used to stop logging the changes to the model, waiting
+	 * until the changes logged so far are forced to the disk. The store is
+	 * not compacted, so the log is replayed when it is next opened. Closing a
+	 * store that is not open does nothing.
+	 *
+	 * @throws IOException
+	 *             if there was an error writing the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (compactor != null) {
+			compactor.shutdownNow();
+		}
+		synchronized (model) {
+			model.setChangeLog(null);
+			if (log != null) {
+				// the log being closed
+				SessionLog closing = log;
+				log = null;
+				closing.close();
+			}
+		}
+	}
+
+	@Override
+	public void eventAdded(Event event) {
+		if (!stale && log != null) {
+			log.eventAdded(event);
+		}
+	}
+
+	@Override
+	public void allocated(Event event, Venue venue) {
+		if (!stale && log != null) {
+			try {
+				log.allocated(event, venue);
+			} catch (IllegalArgumentException e) {
+				// a venue the log does not know: only a snapshot can save it
+				stale = true;
+			}
+		}
+	}
+
+	@Override
+	public void deallocated(Event event, Venue venue) {
+		if (!stale && log != null) {
+			try {
+				log.deallocated(event, venue);
+			} catch (IllegalArgumentException e) {
+				// a venue the log does not know: only a snapshot can save it
+				stale = true;
+			}
+		}
+	}
+
+	@Override
+	public void stateReplaced() {
+		if (log == null) {
+			return;
+		}
+		try {
+			compact();
+		} catch (IOException e) {
+			onError.accept(e);
+		}
+	}
+
+	/**
+	 * This method is used to compact the store if the log is stale or holds
+	 * enough changes. It is run by the compactor thread.
+	 */
+	private void compactIfNeeded() {
+		synchronized (model) {
+			if (!stale && (log == null || log.getSize() < compactSize)) {
+				return;
+			}
+			try {
+				compact();
+			} catch (IOException e) {
+				onError.accept(e);
+			}
+		}
+	}
+
+	/**
+	 * This method is used to handle an error writing the log: the log is
+	 * stale until the next compaction. It is run by the writer thread of the
+	 * log, which compact waits for while the model is locked, so it does not
+	 * lock the model.
+	 */
+	private void logFailed(IOException e) {
+		stale = true;
+		onError.accept(e);
+	}
+}
@@ -0,0 +1,547 @@
+package planner.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import planner.*;
+
+/**
+ * <p>
+ * A small HTTP service that answers allocation requests against a venue
+ * catalog that is loaded once, and a ledger of the traffic booked by the
+ * allocations it has made so far (which is shared by every request).
+ * </p>
+ *
+ * <p>
+ * The service has three endpoints, which all answer with a JSON object:
+ * </p>
+ * <ul>
+ * <li>POST /allocate, whose body is a list of events (one "NAME, SIZE" per
+ * line, as read by {@link EventReader}), finds a safe allocation of the
+ * events to the venues that are still free, on top of the traffic already
+ * booked, and books it. With the parameter commit=false, the allocation is
+ * only found, not booked. The answer is 409 (Conflict) if there is no safe
+ * allocation, or an event is already allocated.</li>
+ * <li>GET /check?event=NAME&amp;size=SIZE&amp;venue=VENUE tells whether the
+ * event could be allocated to the venue now: whether the venue can host it,
+ * is free, and has room for its traffic on every corridor.</li>
+ * <li>POST /release, whose body is a list of events, gives back the venues
+ * and the traffic booked for them.</li>
+ * </ul>
+ *
+ * <p>
+ * Each request runs on its own virtual thread (or, before Java 21, on a
+ * thread from a pool). Searches and the cheap check and release requests
+ * have separate limits on how many may run at once, so that searches can't
+ * starve the other requests. Every request has a deadline, given in
+ * milliseconds by the deadline parameter (5 seconds by default, and at most
+ * a minute), that covers both waiting for a permit and searching: a request
+ * that misses its deadline is answered with 503 (Service Unavailable) if it
+ * never started, and 504 (Gateway Timeout) if its search was cut short.
+ * </p>
+ */
+public class AllocationServer implements Closeable {
+
+    /** The port the service listens on when no port is given. */
+    public final static int DEFAULT_PORT = 8080;
+    /** The number of searches that may run at once by default. */
+    public final static int DEFAULT_SOLVER_LIMIT = Math.max(1, Runtime
+            .getRuntime().availableProcessors() / 2);
+    /** The number of check and release requests that may run at once. */
+    public final static int DEFAULT_CHECK_LIMIT = 64;
+    // the deadline of a request that does not give one, in milliseconds
+    private final static long DEFAULT_DEADLINE_MILLIS = 5000;
+    // the longest deadline a request may ask for, in milliseconds
+    private final static long MAX_DEADLINE_MILLIS = 60000;
+
+    // the usage message
+    private final static String USAGE = "Usage: java planner.server."
+            + "AllocationServer [--port=PORT] [--solvers=N] [--checks=N] "
+            + "VENUES";
+
+    // the HTTP server
+    private final HttpServer server;
+    // the executor running each request on its own thread
+    private final ExecutorService executor;
+    // the venues of the catalog, in catalog order
+    private final List<Venue> venues;
+    // the venues of the catalog, by name
+    private final Map<String, Venue> venuesByName;
+    // the traffic booked by the allocations made so far
+    private final CorridorLedger ledger;
+    // the venue of each allocated event
+    private final Map<Event, Venue> bookings;
+    // the event allocated to each venue
+    private final Map<Venue, Event> bookedVenues;
+    // the permits for searches
+    private final Semaphore solverPermits;
+    // the permits for check and release requests
+    private final Semaphore checkPermits;
+
+    /*
+     * invariant:
+     *
+     * bookedVenues is the inverse of bookings, and the ledger holds exactly
+     * the traffic of the events in bookings at their venues &&
+     *
+     * bookings and bookedVenues are only changed while holding the lock of
+     * bookings
+     */
+
+    /**
+     * Thrown by an endpoint to answer a request with an error.
+     */
+    private static class HttpError extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        // the HTTP status of the answer
+        private final int status;
+
+        private HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * An endpoint of the service.
+     */
+    private interface Endpoint {
+
+        /**
+         * Answers the request, returning the JSON body of the answer.
+         */
+        String handle(HttpExchange exchange, long deadline) throws Exception;
+    }
+
+    /**
+     * Creates a service for the given venues that will listen on the given
+     * address once it is started.
+     *
+     * @param venues
+     *            the venues of the catalog
+     * @param address
+     *            the address to listen on (port 0 picks a free port)
+     * @param solverLimit
+     *            the number of searches that may run at once
+     * @param checkLimit
+     *            the number of check and release requests that may run at
+     *            once
+     * @throws IOException
+     *             if the address can't be bound
+     * @throws IllegalArgumentException
+     *             if solverLimit or checkLimit is less than one, or two
+     *             venues have the same name
+     */
+    public AllocationServer(List<Venue> venues, InetSocketAddress address,
+            int solverLimit, int checkLimit) throws IOException {
+        if (solverLimit < 1 || checkLimit < 1) {
+            throw new IllegalArgumentException(
+                    "The request limits must be at least one.");
+        }
+        this.venues = new ArrayList<>(venues);
+        venuesByName = new HashMap<>();
+        for (Venue venue : this.venues) {
+            if (venuesByName.put(venue.getName(), venue) != null) {
+                throw new IllegalArgumentException("Two venues are called "
+                        + venue.getName());
+            }
+        }
+        ledger = new CorridorLedger();
+        bookings = new HashMap<>();
+        bookedVenues = new ConcurrentHashMap<>();
+        solverPermits = new Semaphore(solverLimit);
+        checkPermits = new Semaphore(checkLimit);
+        executor = newExecutor();
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/allocate", exchange -> handle(exchange, "POST",
+                solverPermits, this::allocate));
+        server.createContext("/check", exchange -> handle(exchange, "GET",
+                checkPermits, this::check));
+        server.createContext("/release", exchange -> handle(exchange, "POST",
+                checkPermits, this::release));
+    }
+
+    /**
+     * Runs the service on the venues in the given venue file (or directory of
+     * venue files), until the process is stopped.
+     *
+     * Usage: java planner.server.AllocationServer [--port=PORT] [--solvers=N]
+     * [--checks=N] VENUES
+     *
+     * @param args
+     *            the options and the venue file
+     */
+    public static void main(String[] args) {
+        // the options, and the venue file
+        int port = DEFAULT_PORT;
+        int solvers = DEFAULT_SOLVER_LIMIT;
+        int checks = DEFAULT_CHECK_LIMIT;
+        Path venuePath = null;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--port=")) {
+                    port = Integer.parseInt(arg.substring("--port=".length()));
+                } else if (arg.startsWith("--solvers=")) {
+                    solvers = Integer.parseInt(arg.substring("--solvers="
+                            .length()));
+                } else if (arg.startsWith("--checks=")) {
+                    checks = Integer.parseInt(arg.substring("--checks="
+                            .length()));
+                } else if (arg.startsWith("--") || venuePath != null) {
+                    throw new IllegalArgumentException("Unexpected argument: "
+                            + arg);
+                } else {
+                    venuePath = Paths.get(arg);
+                }
+            }
+            if (venuePath == null) {
+                throw new IllegalArgumentException("Expected a venue file.");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            List<Venue> venues = Files.isDirectory(venuePath) ? VenueMerge
+                    .readDirectory(venuePath).getVenues() : MappedVenueReader
+                            .read(venuePath.toString());
+            AllocationServer server = new AllocationServer(venues,
+                    new InetSocketAddress(port), solvers, checks);
+            server.start();
+            System.out.println("Serving " + venues.size()
+                    + " venues on port " + server.getPort());
+        } catch (IOException | FormatException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the service listens on.
+     *
+     * @return the port of the service
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops answering requests, and interrupts the requests that are running.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread, or on
+     * a pooled daemon thread if virtual threads are not available (they are
+     * looked up reflectively, so the service also runs before Java 21).
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                // the thread running requests
+                Thread thread = new Thread(task, "allocation-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Answers a request with the given endpoint, once a permit to run it has
+     * been acquired (before its deadline).
+     */
+    private void handle(HttpExchange exchange, String method,
+            Semaphore permits, Endpoint endpoint) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals(method)) {
+                throw new HttpError(405, "Use " + method + ".");
+            }
+            // the time by which the request must be answered, in nanoseconds
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                    deadlineMillis(exchange.getRequestURI()));
+            if (!permits.tryAcquire(deadline - System.nanoTime(),
+                    TimeUnit.NANOSECONDS)) {
+                throw new HttpError(503, "The service is busy.");
+            }
+            try {
+                respond(exchange, 200, endpoint.handle(exchange, deadline));
+            } finally {
+                permits.release();
+            }
+        } catch (HttpError e) {
+            respond(exchange, e.status, "{\"error\":" + Json.quote(e
+                    .getMessage()) + "}");
+        } catch (FormatException e) {
+            respond(exchange, 400, "{\"error\":" + Json.quote(e.getMessage())
+                    + "}");
+        } catch (InterruptedException e) {
+            respond(exchange, 503, "{\"error\":\"The service is stopping.\"}");
+        } catch (IOException e) {
+            throw e; // the connection has failed, so there is no one to answer
+        } catch (Exception e) {
+            respond(exchange, 500, "{\"error\":" + Json.quote(String.valueOf(e))
+                    + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Finds a safe allocation of the events in the body of the request to the
+     * free venues, and books it unless commit=false.
+     */
+    private String allocate(HttpExchange exchange, long deadline)
+            throws Exception {
+        // the events to allocate, and whether to book them
+        List<Event> events = readEvents(exchange);
+        boolean commit = !"false".equals(parameters(exchange.getRequestURI())
+                .get("commit"));
+        // the free venues, and the traffic booked on them
+        List<Venue> free = new ArrayList<>();
+        Traffic booked;
+        synchronized (bookings) {
+            // rejected before searching, so that a dry run does not answer
+            // with an allocation that moves booked events
+            for (Event event : events) {
+                if (bookings.containsKey(event)) {
+                    throw new HttpError(409, event + " is already allocated.");
+                }
+            }
+            for (Venue venue : venues) {
+                if (!bookedVenues.containsKey(venue)) {
+                    free.add(venue);
+                }
+            }
+            booked = ledger.getTraffic();
+        }
+
+        // the allocation found
+        Map<Event, Venue> allocation;
+        try {
+            allocation = Allocator.allocate(events, free, booked,
+                    new SearchMonitor() {
+                        @Override
+                        public void onProgress(long nodes) {
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return System.nanoTime() - deadline > 0 || Thread
+                                    .currentThread().isInterrupted();
+                        }
+                    });
+        } catch (CancellationException e) {
+            throw new HttpError(504, "No allocation was found before the "
+                    + "deadline.");
+        }
+        if (allocation == null) {
+            throw new HttpError(409, "There is no safe allocation of the "
+                    + "events to the free venues.");
+        }
+
+        if (commit) {
+            synchronized (bookings) {
+                // the traffic of the whole allocation
+                Traffic traffic = new Traffic();
+                for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+                    if (bookings.containsKey(entry.getKey())) {
+                        throw new HttpError(409, entry.getKey()
+                                + " is already allocated.");
+                    }
+                    if (bookedVenues.containsKey(entry.getValue())) {
+                        throw new HttpError(409, "Another request has "
+                                + "allocated " + entry.getValue().getName()
+                                + "; try again.");
+                    }
+                    traffic.addTraffic(entry.getValue().getSharedTraffic(entry
+                            .getKey()));
+                }
+                if (!ledger.tryReserve(traffic)) {
+                    throw new HttpError(409, "Another request has booked "
+                            + "the traffic needed; try again.");
+                }
+                for (Map.Entry<Event, Venue> entry : allocation.entrySet()) {
+                    bookings.put(entry.getKey(), entry.getValue());
+                    bookedVenues.put(entry.getValue(), entry.getKey());
+                }
+            }
+        }
+
+        // the answer
+        StringBuilder result = new StringBuilder("{\"committed\":" + commit
+                + ",\"allocations\":[");
+        for (int i = 0; i < events.size(); i++) {
+            // the event and its venue
+            Event event = events.get(i);
+            Venue venue = allocation.get(event);
+            result.append(i == 0 ? "" : ",").append("{\"event\":").append(
+                    Json.quote(event.getName())).append(",\"size\":").append(
+                            event.getSize()).append(",\"venue\":").append(Json
+                                    .quote(venue.getName())).append('}');
+        }
+        return result.append("]}").toString();
+    }
+
+    /**
+     * Tells whether the event given by the request parameters could be
+     * allocated to the venue given by them, with the traffic booked now.
+     */
+    private String check(HttpExchange exchange, long deadline)
+            throws Exception {
+        // the request parameters
+        Map<String, String> parameters = parameters(exchange.getRequestURI());
+        // the venue and the event to check
+        Venue venue = venuesByName.get(parameters.get("venue"));
+        if (venue == null) {
+            throw new HttpError(404, "No venue is called " + parameters.get(
+                    "venue") + ".");
+        }
+        Event event;
+        try {
+            event = new Event(parameters.get("event"), Integer.parseInt(
+                    parameters.get("size")));
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new HttpError(400, "An event name and size are required.");
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, e.getMessage());
+        }
+        boolean canHost = venue.canHost(event);
+        boolean free = !bookedVenues.containsKey(venue);
+        boolean safe = canHost && free && ledger.canReserve(venue
+                .getSharedTraffic(event));
+        return "{\"event\":" + Json.quote(event.getName()) + ",\"size\":"
+                + event.getSize() + ",\"venue\":" + Json.quote(venue.getName())
+                + ",\"canHost\":" + canHost + ",\"free\":" + free
+                + ",\"safe\":" + safe + "}";
+    }
+
+    /**
+     * Gives back the venues and traffic booked for the events in the body of
+     * the request. Events that are not allocated are ignored.
+     */
+    private String release(HttpExchange exchange, long deadline)
+            throws Exception {
+        // the events to release
+        List<Event> events = readEvents(exchange);
+        // the number of events released
+        int released = 0;
+        synchronized (bookings) {
+            for (Event event : events) {
+                // the venue of the event
+                Venue venue = bookings.remove(event);
+                if (venue != null) {
+                    bookedVenues.remove(venue);
+                    ledger.release(venue.getSharedTraffic(event));
+                    released++;
+                }
+            }
+        }
+        return "{\"released\":" + released + "}";
+    }
+
+    /**
+     * Returns the events in the body of the request.
+     *
+     * @throws FormatException
+     *             if the body is not a list of events
+     */
+    private static List<Event> readEvents(HttpExchange exchange)
+            throws IOException, FormatException {
+        // the events in the body
+        List<Event> events = new ArrayList<>();
+        EventReader.read(new BufferedReader(new InputStreamReader(exchange
+                .getRequestBody(), StandardCharsets.UTF_8)),
+                EventReader.DEFAULT_BATCH_SIZE, events::addAll);
+        return events;
+    }
+
+    /**
+     * Returns the deadline asked for by the request, in milliseconds.
+     *
+     * @throws HttpError
+     *             if the deadline is not a positive number
+     */
+    private static long deadlineMillis(URI uri) throws HttpError {
+        // the deadline parameter
+        String deadline = parameters(uri).get("deadline");
+        if (deadline == null) {
+            return DEFAULT_DEADLINE_MILLIS;
+        }
+        try {
+            long millis = Long.parseLong(deadline);
+            if (millis > 0) {
+                return Math.min(millis, MAX_DEADLINE_MILLIS);
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new HttpError(400, "Invalid deadline: " + deadline);
+    }
+
+    /**
+     * Returns the parameters in the query of the given URI.
+     */
+    private static Map<String, String> parameters(URI uri) {
+        // the parameters found
+        Map<String, String> result = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return result;
+        }
+        for (String parameter : query.split("&")) {
+            // the position of the = between the name and the value
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                try {
+                    result.put(URLDecoder.decode(parameter.substring(0,
+                            equals), "UTF-8"), URLDecoder.decode(parameter
+                                    .substring(equals + 1), "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e); // UTF-8 is always supported
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sends the given JSON body as the answer to the request.
+     */
+    private static void respond(HttpExchange exchange, int status,
+            String body) throws IOException {
+        // the encoded body
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package planner.test;
+
+import planner.cli.AllocateCommand;
+import java.io.*;
+import java.nio.file.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link AllocateCommand} class.
+ */
+public class AllocateCommandTest {
+
+    // the venues to test with: the large event only fits at the Gabba
+    private final static String VENUES = "The Gabba\n" + "200\n"
+            + "l1, l2, 200: 150\n" + "\n" + "Tivoli\n" + "50\n"
+            + "l1, l2, 200: 40\n" + "\n";
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * Writes the given contents to a new temporary file, and returns its name.
+     */
+    private String write(String contents) throws Exception {
+        return temp.write("allocate", ".txt", contents).toString();
+    }
+
+    /**
+     * Runs the command with the given arguments, checks its exit status, and
+     * returns what it wrote to standard output.
+     */
+    private static String run(int status, String... args) throws Exception {
+        // the standard output and error of the command
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        // the exit status of the command
+        int result = AllocateCommand.run(args, new PrintStream(out),
+                new PrintStream(err));
+        Assert.assertEquals(err.toString(), status, result);
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Test that both engines find the allocation, written as CSV and JSON.
+     */
+    @Test(timeout = 5000)
+    public void testAllocate() throws Exception {
+        String venues = write(VENUES);
+        String events = write("Concert, 100\n" + "Party, 50\n");
+
+        Assert.assertEquals("event,size,venue,capacity\r\n"
+                + "Concert,100,The Gabba,200\r\n" + "Party,50,Tivoli,50\r\n"
+                + "\r\n" + "start,end,capacity,load\r\n"
+                + "l1,l2,200,115\r\n", run(AllocateCommand.EXIT_ALLOCATED,
+                        venues, events));
+        Assert.assertEquals("{\"allocations\":[\n"
+                + "{\"event\":\"Concert\",\"size\":100,\"venue\":"
+                + "\"The Gabba\",\"capacity\":200},\n"
+                + "{\"event\":\"Party\",\"size\":50,\"venue\":\"Tivoli\","
+                + "\"capacity\":50}],\n" + "\"corridors\":[\n"
+                + "{\"start\":\"l1\",\"end\":\"l2\",\"capacity\":200,"
+                + "\"load\":115}]}\n", run(AllocateCommand.EXIT_ALLOCATED,
+                        "--engine=exhaustive", "--format=json", venues,
+                        events));
+    }
+
+    /**
+     * Test the exit status when there is no safe allocation, when a file
+     * can't be read and when the command line is not valid.
+     */
+    @Test(timeout = 5000)
+    public void testExitStatus() throws Exception {
+        String venues = write(VENUES);
+
+        Assert.assertEquals("", run(AllocateCommand.EXIT_INFEASIBLE, venues,
+                write("Concert, 200\n" + "Party, 200\n")));
+        run(AllocateCommand.EXIT_INPUT_ERROR, venues, write("Concert\n"));
+        run(AllocateCommand.EXIT_USAGE, venues);
+        run(AllocateCommand.EXIT_USAGE, "--engine=greedy", venues, venues);
+        run(AllocateCommand.EXIT_USAGE, "--timeout=soon", venues, venues);
+    }
+
+}
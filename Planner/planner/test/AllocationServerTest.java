@@ -0,0 +1,215 @@
+package planner.test;
+
+import planner.*;
+import planner.server.AllocationServer;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link AllocationServer} class.
+ */
+public class AllocationServerTest {
+
+    // the server under test
+    private AllocationServer server;
+
+    /**
+     * This method is run by JUnit before each test to start a server with two
+     * venues that share a corridor.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Corridor corridor = new Corridor(new Location("l0"), new Location(
+                "l1"), 100);
+        // the traffic of the venues
+        Traffic large = new Traffic();
+        large.updateTraffic(corridor, 80);
+        Traffic small = new Traffic();
+        small.updateTraffic(corridor, 40);
+        server = start(Arrays.asList(new Venue("Hall", 100, large),
+                new Venue("Room", 50, small)));
+    }
+
+    /**
+     * Starts a server for the given venues on a free port, which runs one
+     * search at a time.
+     */
+    private static AllocationServer start(List<Venue> venues)
+            throws Exception {
+        // the server started
+        AllocationServer result = new AllocationServer(venues,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1,
+                4);
+        result.start();
+        return result;
+    }
+
+    /**
+     * Replaces the server with one for count venues without traffic, called
+     * "V0", "V1" and so on, on which asking to allocate one more event than
+     * there are venues starts a search that runs until its deadline (since
+     * every allocation of the other events is tried).
+     */
+    private String startPlainServer(int count) throws Exception {
+        // the venues, and a list of one more event than there are venues
+        List<Venue> venues = new ArrayList<>();
+        StringBuilder events = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            venues.add(new Venue("V" + i, 10, new Traffic()));
+            events.append("Event " + i + ", 1\n");
+        }
+        events.append("Event " + count + ", 1\n");
+        server.close();
+        server = start(venues);
+        return events.toString();
+    }
+
+    /**
+     * This method is run by JUnit after each test to stop the server.
+     */
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Sends a request to the server, checks the status of the answer, and
+     * returns its body.
+     */
+    private String request(String method, String path, String body,
+            int status) throws Exception {
+        // the connection to the server
+        HttpURLConnection connection = send(method, path, body);
+        Assert.assertEquals(status, connection.getResponseCode());
+        try (InputStream in = status < 400 ? connection.getInputStream()
+                : connection.getErrorStream()) {
+            // the bytes of the answer
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    /**
+     * Sends a request to the server, returning the connection it was sent on.
+     */
+    private HttpURLConnection send(String method, String path, String body)
+            throws Exception {
+        // the connection to the server
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://"
+                + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Test that allocations are booked on the shared ledger, seen by checks,
+     * and given back by releases.
+     */
+    @Test(timeout = 10000)
+    public void testAllocateCheckRelease() throws Exception {
+        Assert.assertEquals("{\"committed\":false,\"allocations\":[{\"event\":"
+                + "\"Concert\",\"size\":100,\"venue\":\"Hall\"}]}", request(
+                        "POST", "/allocate?commit=false", "Concert, 100\n",
+                        200));
+        Assert.assertEquals("{\"committed\":true,\"allocations\":[{\"event\":"
+                + "\"Concert\",\"size\":100,\"venue\":\"Hall\"}]}", request(
+                        "POST", "/allocate", "Concert, 100\n", 200));
+        // a booked event is rejected, even by a dry run
+        for (String path : new String[] { "/allocate",
+                "/allocate?commit=false" }) {
+            Assert.assertTrue(request("POST", path, "Concert, 100\n", 409)
+                    .contains("already allocated"));
+        }
+
+        // the hall is taken, and the room's traffic no longer fits
+        Assert.assertEquals("{\"event\":\"Party\",\"size\":50,\"venue\":"
+                + "\"Room\",\"canHost\":true,\"free\":true,\"safe\":false}",
+                request("GET", "/check?event=Party&size=50&venue=Room", null,
+                        200));
+        request("POST", "/allocate", "Party, 50\n", 409);
+        request("GET", "/check?event=Party&size=50&venue=Cellar", null, 404);
+
+        Assert.assertEquals("{\"released\":1}", request("POST", "/release",
+                "Concert, 100\n" + "Party, 50\n", 200));
+        Assert.assertTrue(request("GET", "/check?event=Party%20Night&size=50"
+                + "&venue=Room", null, 200).endsWith("\"safe\":true}"));
+    }
+
+    /**
+     * Test that invalid requests are rejected.
+     */
+    @Test(timeout = 10000)
+    public void testInvalidRequests() throws Exception {
+        request("GET", "/allocate", null, 405);
+        request("POST", "/allocate", "Concert\n", 400);
+        request("POST", "/allocate?deadline=soon", "Concert, 10\n", 400);
+        request("GET", "/check?venue=Room", null, 400);
+    }
+
+    /**
+     * Test that while a long search holds the only solver permit, another
+     * search that can't get the permit before its deadline is answered with
+     * 503, checks are still answered, and the long search is answered with
+     * 504 once it runs past its deadline.
+     */
+    @Test(timeout = 20000)
+    public void testSearchesDoNotStarveChecks() throws Exception {
+        String events = startPlainServer(20);
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            // the answer to the long search
+            Future<String> search = client.submit(() -> request("POST",
+                    "/allocate?deadline=3000", events, 504));
+            // wait until the long search holds the permit, which makes a
+            // quick search miss its deadline
+            while (send("POST", "/allocate?commit=false&deadline=50",
+                    "Party, 1\n").getResponseCode() != 503) {
+                Assert.assertFalse(search.isDone());
+                Thread.sleep(10);
+            }
+
+            Assert.assertTrue(request("GET", "/check?event=Party&size=1"
+                    + "&venue=V0", null, 200).endsWith("\"safe\":true}"));
+            Assert.assertFalse(search.isDone());
+            Assert.assertTrue(search.get().contains("deadline"));
+        } finally {
+            client.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that a search that runs past its deadline is stopped, and answered
+     * with 504.
+     */
+    @Test(timeout = 10000)
+    public void testSearchDeadline() throws Exception {
+        String events = startPlainServer(20);
+        long start = System.nanoTime();
+        request("POST", "/allocate?deadline=200", events, 504);
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS
+                .toNanos(5));
+        // nothing was booked by the search
+        Assert.assertTrue(request("GET", "/check?event=Party&size=1"
+                + "&venue=V0", null, 200).endsWith("\"safe\":true}"));
+    }
+
+}
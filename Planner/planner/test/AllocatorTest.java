@@ -0,0 +1,110 @@
+package planner.test;
+
+import planner.*;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the backtracking search of the {@link Allocator} class.
+ */
+public class AllocatorTest {
+
+    /**
+     * A monitor that records the progress reported, and cancels the search
+     * once it has explored a given number of nodes.
+     */
+    private static class CountingMonitor implements SearchMonitor {
+
+        // the number of nodes after which the search is cancelled
+        private final long limit;
+        // the last number of nodes reported
+        private long nodes;
+
+        private CountingMonitor(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void onProgress(long nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return nodes >= limit;
+        }
+    }
+
+    /**
+     * Returns a venue with the given name and capacity, and the given amount
+     * of traffic (when hosting an event of its capacity) on the corridor.
+     */
+    private static Venue venue(String name, int capacity, Corridor corridor,
+            int traffic) {
+        // the traffic of the venue
+        Traffic capacityTraffic = new Traffic();
+        capacityTraffic.updateTraffic(corridor, traffic);
+        return new Venue(name, capacity, capacityTraffic);
+    }
+
+    /**
+     * Test that the search finds a safe allocation when the greedy choice
+     * for the first event has to be undone, and returns null when the booked
+     * traffic leaves no safe allocation.
+     */
+    @Test(timeout = 5000)
+    public void testBacktracking() throws Exception {
+        Corridor corridor = new Corridor(new Location("l0"), new Location(
+                "l1"), 100);
+        // the smallest venue that can host the large event leaves no room on
+        // the corridor for the small event
+        List<Venue> venues = Arrays.asList(venue("A", 100, corridor, 80),
+                venue("B", 200, corridor, 100), venue("C", 50, corridor, 40));
+        List<Event> events = Arrays.asList(new Event("Small", 50), new Event(
+                "Large", 100));
+
+        Map<Event, Venue> allocation = Allocator.allocate(events, venues,
+                new Traffic(), new CountingMonitor(Long.MAX_VALUE));
+        Assert.assertNotNull(allocation);
+        Assert.assertEquals(venues.get(1), allocation.get(events.get(1)));
+        Assert.assertEquals(venues.get(2), allocation.get(events.get(0)));
+
+        // with 50 people already booked on the corridor, nothing fits
+        Traffic booked = new Traffic();
+        booked.updateTraffic(corridor, 50);
+        Assert.assertNull(Allocator.allocate(events, venues, booked,
+                new CountingMonitor(Long.MAX_VALUE)));
+        Assert.assertEquals(50, booked.getTraffic(corridor));
+    }
+
+    /**
+     * Test that the search stops with a CancellationException when the
+     * monitor cancels it.
+     */
+    @Test(timeout = 10000)
+    public void testCancellation() throws Exception {
+        Corridor corridor = new Corridor(new Location("l0"), new Location(
+                "l1"), 10000);
+        // twenty events but only nineteen venues: the search has to try
+        // every partial allocation before giving up
+        List<Venue> venues = new ArrayList<>();
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            if (i < 19) {
+                venues.add(venue("V" + i, 100, corridor, 100));
+            }
+            events.add(new Event("E" + i, 100));
+        }
+        // the monitor of the search
+        CountingMonitor monitor = new CountingMonitor(100000);
+        try {
+            Allocator.allocate(events, venues, new Traffic(), monitor);
+            Assert.fail("CancellationException not thrown");
+        } catch (CancellationException e) {
+            Assert.assertTrue(monitor.nodes >= 100000);
+        }
+    }
+
+}
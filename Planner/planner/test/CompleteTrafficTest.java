@@ -563,4 +563,83 @@ public class CompleteTrafficTest {
         }
     }
 
+    /**
+     * Test that traffic on many corridors (which is stored in the dense form)
+     * behaves exactly like traffic on a few corridors, including when
+     * switching back to a few corridors again.
+     */
+    @Test(timeout = 5000)
+    public void testManyCorridors() throws Exception {
+        // corridors to test with (enough that most have traffic)
+        Corridor[] many = new Corridor[200];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = new Corridor(new Location("m" + i), new Location("n" + i),
+                    1000);
+        }
+
+        // the Traffic object under test, and a copy built corridor by corridor
+        Traffic traffic = new Traffic();
+        for (int i = 0; i < many.length; i++) {
+            traffic.updateTraffic(many[i], i + 1);
+        }
+        Assert.assertTrue(traffic.checkInvariant());
+        Assert.assertEquals(many.length, traffic.getCorridorsWithTraffic()
+                .size());
+        for (int i = 0; i < many.length; i++) {
+            Assert.assertEquals(i + 1, traffic.getTraffic(many[i]));
+        }
+
+        // add a sparse traffic to the (dense) traffic
+        Traffic extraTraffic = new Traffic();
+        extraTraffic.updateTraffic(many[7], 10);
+        extraTraffic.updateTraffic(corridors[0], 5);
+        traffic.addTraffic(extraTraffic);
+        Assert.assertEquals(18, traffic.getTraffic(many[7]));
+        Assert.assertEquals(5, traffic.getTraffic(corridors[0]));
+        Assert.assertEquals(many.length + 1, traffic.getCorridorsWithTraffic()
+                .size());
+        Assert.assertTrue(traffic.checkInvariant());
+
+        // a copy has the same traffic, whichever form each of them is in
+        Traffic copy = new Traffic(traffic);
+        Assert.assertTrue(copy.sameTraffic(traffic));
+        Assert.assertTrue(traffic.sameTraffic(copy));
+        Assert.assertEquals(traffic.getFingerprint(), copy.getFingerprint());
+
+        // remove nearly all of the traffic again
+        for (int i = 1; i < many.length; i++) {
+            traffic.updateTraffic(many[i], -traffic.getTraffic(many[i]));
+        }
+        Assert.assertTrue(traffic.checkInvariant());
+        Traffic expectedTraffic = new Traffic();
+        expectedTraffic.updateTraffic(many[0], 1);
+        expectedTraffic.updateTraffic(corridors[0], 5);
+        Assert.assertTrue(expectedTraffic.sameTraffic(traffic));
+        Assert.assertTrue(traffic.sameTraffic(expectedTraffic));
+        Assert.assertEquals(expectedTraffic.getFingerprint(), traffic
+                .getFingerprint());
+        Assert.assertFalse(copy.sameTraffic(traffic));
+        Assert.assertEquals("Corridor l0 to l1 (100): 5" + LINE_SEPARATOR
+                + "Corridor m0 to n0 (1000): 1" + LINE_SEPARATOR, traffic
+                        .toString());
+    }
+
+    /**
+     * Test that adding a traffic object to itself doubles its traffic.
+     */
+    @Test(timeout = 5000)
+    public void testAddTrafficToItself() throws Exception {
+        // the Traffic object under test
+        Traffic traffic = new Traffic();
+        traffic.updateTraffic(corridors[0], 10);
+        traffic.updateTraffic(corridors[3], 30);
+
+        traffic.addTraffic(traffic);
+
+        Assert.assertEquals(20, traffic.getTraffic(corridors[0]));
+        Assert.assertEquals(60, traffic.getTraffic(corridors[3]));
+        Assert.assertEquals(0, traffic.getTraffic(corridors[1]));
+        Assert.assertTrue(traffic.checkInvariant());
+    }
+
 }
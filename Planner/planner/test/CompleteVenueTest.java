@@ -402,8 +402,10 @@ public class CompleteVenueTest {
 
         // test equal venues
         Assert.assertTrue(venues[0].equals(venues[1]));
-        // equal venues should have equal hash-codes
+        // equal venues should have equal hash-codes and fingerprints
         Assert.assertEquals(venues[0].hashCode(), venues[1].hashCode());
+        Assert.assertEquals(venues[0].getFingerprint(), venues[1]
+                .getFingerprint());
 
         // test unequal venues
         Assert.assertFalse(venues[0].equals(venues[2])); // all different
@@ -413,4 +415,42 @@ public class CompleteVenueTest {
         Assert.assertFalse(venues[0].equals(null)); // null case
         Assert.assertFalse(venues[0].equals("A random String")); // wrong type
     }
+
+    /**
+     * Test that getSharedTraffic returns the same read-only traffic record for
+     * events of the same size, and that it agrees with getTraffic.
+     */
+    @Test(timeout = 5000)
+    public void testSharedTraffic() throws Exception {
+        // the venue under test
+        Venue venue = new Venue("The Zoo", 93, new Traffic(trafficRecords[4]));
+
+        long misses = TrafficCache.getMissCount();
+        long hits = TrafficCache.getHitCount();
+        Traffic sharedTraffic = venue.getSharedTraffic(events[3]);
+        // a different event with the same size shares the same record
+        Assert.assertSame(sharedTraffic, venue.getSharedTraffic(events[5]));
+        Assert.assertEquals(misses + 1, TrafficCache.getMissCount());
+        Assert.assertTrue(TrafficCache.getHitCount() >= hits + 1);
+        Assert.assertTrue(trafficRecords[5].sameTraffic(sharedTraffic));
+
+        // the shared record can't be modified
+        Assert.assertTrue(sharedTraffic.isReadOnly());
+        try {
+            sharedTraffic.updateTraffic(corridors[2], 1);
+            Assert.fail("UnsupportedOperationException not thrown");
+        } catch (Exception e) {
+            Assert.assertTrue("UnsupportedOperationException not thrown",
+                    e instanceof UnsupportedOperationException);
+        }
+        Assert.assertTrue(trafficRecords[5].sameTraffic(venue
+                .getSharedTraffic(events[3])));
+
+        // getTraffic returns a copy that can be modified
+        Traffic traffic = venue.getTraffic(events[3]);
+        Assert.assertFalse(traffic.isReadOnly());
+        traffic.updateTraffic(corridors[2], 1);
+        Assert.assertTrue(trafficRecords[5].sameTraffic(venue
+                .getSharedTraffic(events[3])));
+    }
 }
@@ -0,0 +1,188 @@
+package planner.test;
+
+import planner.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.Before;
+
+/**
+ * Tests for the {@link CorridorLedger} implementation class.
+ */
+public class CorridorLedgerTest {
+
+    // corridors to test with
+    private Corridor[] corridors;
+
+    /**
+     * This method is run by JUnit before each test to initialise the
+     * corridors.
+     */
+    @Before
+    public void setUp() throws Exception {
+        corridors = new Corridor[3];
+        corridors[0] = new Corridor(new Location("l0"), new Location("l1"),
+                100);
+        corridors[1] = new Corridor(new Location("l1"), new Location("l2"),
+                200);
+        corridors[2] = new Corridor(new Location("l2"), new Location("l3"),
+                300);
+    }
+
+    /**
+     * Test that a reservation is only made if it fits on every corridor, and
+     * that nothing is booked when it doesn't.
+     */
+    @Test(timeout = 5000)
+    public void testTryReserve() throws Exception {
+        // the ledger under test
+        CorridorLedger ledger = new CorridorLedger();
+
+        Traffic traffic = new Traffic();
+        traffic.updateTraffic(corridors[0], 60);
+        traffic.updateTraffic(corridors[1], 60);
+
+        Assert.assertTrue(ledger.tryReserve(traffic));
+        Assert.assertEquals(60, ledger.getLoad(corridors[0]));
+        Assert.assertEquals(40, ledger.getHeadroom(corridors[0]));
+
+        // corridors[0] would exceed its capacity: nothing is booked
+        Assert.assertFalse(ledger.canReserve(traffic));
+        Assert.assertFalse(ledger.tryReserve(traffic));
+        Assert.assertEquals(60, ledger.getLoad(corridors[0]));
+        Assert.assertEquals(60, ledger.getLoad(corridors[1]));
+
+        ledger.release(traffic);
+        Assert.assertEquals(0, ledger.getLoad(corridors[0]));
+        Assert.assertEquals(0, ledger.getLoad(corridors[1]));
+        Assert.assertTrue(ledger.getLoads().isEmpty());
+    }
+
+    /**
+     * Test that replacing traffic counts the traffic freed towards the room
+     * for the traffic booked, and changes nothing if the traffic booked does
+     * not fit.
+     */
+    @Test(timeout = 5000)
+    public void testTryReplace() throws Exception {
+        // the ledger under test
+        CorridorLedger ledger = new CorridorLedger();
+
+        Traffic freed = new Traffic();
+        freed.updateTraffic(corridors[0], 80);
+        freed.updateTraffic(corridors[2], 10);
+        Assert.assertTrue(ledger.tryReserve(freed));
+
+        // only fits on corridors[0] once the traffic freed is given back
+        Traffic booked = new Traffic();
+        booked.updateTraffic(corridors[0], 90);
+        booked.updateTraffic(corridors[1], 200);
+        Assert.assertFalse(ledger.canReserve(booked));
+        Assert.assertTrue(ledger.tryReplace(freed, booked));
+        Assert.assertEquals(90, ledger.getLoad(corridors[0]));
+        Assert.assertEquals(200, ledger.getLoad(corridors[1]));
+        Assert.assertEquals(0, ledger.getLoad(corridors[2]));
+
+        // corridors[1] is full: nothing is changed
+        Traffic more = new Traffic();
+        more.updateTraffic(corridors[1], 1);
+        Assert.assertFalse(ledger.tryReplace(new Traffic(), more));
+        Traffic smaller = new Traffic();
+        smaller.updateTraffic(corridors[0], 10);
+        Assert.assertFalse(ledger.tryReplace(smaller, more));
+        Assert.assertEquals(90, ledger.getLoad(corridors[0]));
+        Assert.assertEquals(200, ledger.getLoad(corridors[1]));
+
+        // freeing traffic that is not booked
+        try {
+            ledger.tryReplace(freed, new Traffic());
+            Assert.fail("InvalidTrafficException not thrown");
+        } catch (InvalidTrafficException e) {
+            Assert.assertEquals(90, ledger.getLoad(corridors[0]));
+        }
+    }
+
+    /**
+     * Test that releasing traffic that was never booked throws an
+     * InvalidTrafficException and leaves the ledger unchanged.
+     */
+    @Test(timeout = 5000)
+    public void testReleaseTooMuch() throws Exception {
+        // the ledger under test
+        CorridorLedger ledger = new CorridorLedger();
+
+        Traffic booked = new Traffic();
+        booked.updateTraffic(corridors[0], 10);
+        ledger.reserve(booked);
+
+        Traffic released = new Traffic();
+        released.updateTraffic(corridors[0], 5);
+        released.updateTraffic(corridors[2], 5);
+        try {
+            ledger.release(released);
+            Assert.fail("InvalidTrafficException not thrown");
+        } catch (Exception e) {
+            Assert.assertTrue("InvalidTrafficException not thrown",
+                    e instanceof InvalidTrafficException);
+        }
+        Assert.assertEquals(10, ledger.getLoad(corridors[0]));
+        Assert.assertTrue(booked.sameTraffic(ledger.getTraffic()));
+    }
+
+    /**
+     * Test that concurrent reservations never overbook a corridor, and that
+     * the ledger ends up with exactly the traffic of the successful
+     * reservations.
+     */
+    @Test(timeout = 20000)
+    public void testConcurrentReservations() throws Exception {
+        // the ledger under test
+        CorridorLedger ledger = new CorridorLedger();
+        // the number of threads, and reservations attempted by each thread
+        final int threads = 8;
+        final int attempts = 2000;
+
+        // each reservation puts 1 person on corridors 0 and 1, or 1 and 2
+        Traffic first = new Traffic();
+        first.updateTraffic(corridors[0], 1);
+        first.updateTraffic(corridors[1], 1);
+        Traffic second = new Traffic();
+        second.updateTraffic(corridors[1], 1);
+        second.updateTraffic(corridors[2], 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Traffic traffic = (t % 2 == 0 ? first : second);
+            final int index = t % 2;
+            results.add(executor.submit(() -> {
+                // the number of successful reservations per traffic kind
+                int[] successes = new int[2];
+                for (int i = 0; i < attempts; i++) {
+                    if (ledger.tryReserve(traffic)) {
+                        successes[index]++;
+                        Assert.assertTrue(ledger.getLoad(corridors[1])
+                                <= corridors[1].getCapacity());
+                    }
+                }
+                return successes;
+            }));
+        }
+        // the total number of successes per traffic kind
+        int[] total = new int[2];
+        for (Future<int[]> result : results) {
+            total[0] += result.get()[0];
+            total[1] += result.get()[1];
+        }
+        executor.shutdown();
+
+        Assert.assertEquals(total[0], ledger.getLoad(corridors[0]));
+        Assert.assertEquals(total[0] + total[1], ledger.getLoad(corridors[1]));
+        Assert.assertEquals(total[1], ledger.getLoad(corridors[2]));
+        // corridors[1] is the bottleneck and must have been filled exactly
+        Assert.assertEquals(corridors[1].getCapacity(), ledger.getLoad(
+                corridors[1]));
+    }
+
+}
@@ -0,0 +1,196 @@
+package planner.test;
+
+import planner.*;
+import planner.gui.EventAllocatorModel;
+import planner.gui.ModelListener;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the allocation index of the {@link EventAllocatorModel} class.
+ */
+public class EventAllocatorModelTest {
+
+    // the corridor used by the venues
+    private Corridor corridor;
+    // venues to test with
+    private Venue[] venues;
+
+    /**
+     * This method is run by JUnit before each test to initialise the venues.
+     */
+    @Before
+    public void setUp() throws Exception {
+        corridor = new Corridor(new Location("l0"), new Location("l1"), 100);
+        venues = new Venue[2];
+        for (int i = 0; i < venues.length; i++) {
+            // the traffic of the venue
+            Traffic traffic = new Traffic();
+            traffic.updateTraffic(corridor, 60);
+            venues[i] = new Venue("V" + i, 100, traffic);
+        }
+    }
+
+    /**
+     * Test that allocating and deallocating keeps both directions of the
+     * allocation index and the booked traffic in step.
+     */
+    @Test(timeout = 5000)
+    public void testAllocateAndDeallocate() throws Exception {
+        // the model under test
+        EventAllocatorModel model = new EventAllocatorModel();
+        Event concert = new Event("Concert", 100);
+        Event party = new Event("Party", 100);
+
+        Assert.assertTrue(model.allocate(concert, venues[0]));
+        Assert.assertTrue(model.isEventAllocated(concert));
+        Assert.assertTrue(model.isVenueAllocated(venues[0]));
+        Assert.assertFalse(model.isVenueAllocated(venues[1]));
+        Assert.assertEquals(concert, model.getEventAt(venues[0]));
+        Assert.assertEquals(venues[0], model.getVenueOf(concert));
+        Assert.assertEquals(60, model.getLedger().getLoad(corridor));
+
+        // the second event would overload the corridor
+        Assert.assertFalse(model.allocate(party, venues[1]));
+        Assert.assertFalse(model.isEventAllocated(party));
+        Assert.assertFalse(model.isVenueAllocated(venues[1]));
+
+        Assert.assertEquals(venues[0], model.deallocate(concert));
+        Assert.assertNull(model.deallocate(concert));
+        Assert.assertFalse(model.isVenueAllocated(venues[0]));
+        Assert.assertNull(model.getEventAt(venues[0]));
+        Assert.assertEquals(0, model.getLedger().getLoad(corridor));
+        Assert.assertTrue(model.getAllocationMap().isEmpty());
+    }
+
+    /**
+     * Test that an allocated venue can't be allocated again.
+     */
+    @Test(timeout = 5000, expected = IllegalArgumentException.class)
+    public void testAllocateAllocatedVenue() throws Exception {
+        // the model under test
+        EventAllocatorModel model = new EventAllocatorModel();
+        model.allocate(new Event("Concert", 10), venues[0]);
+        model.allocate(new Event("Party", 10), venues[0]);
+    }
+
+    /**
+     * Test that a transaction is checked against its total change in
+     * traffic, so it can move an event to a venue that only fits once the
+     * event has left its old venue, and that listeners are told once.
+     */
+    @Test(timeout = 5000)
+    public void testTransactionCommit() throws Exception {
+        // the model under test
+        EventAllocatorModel model = new EventAllocatorModel();
+        // the number of notifications received (element 0)
+        int[] notifications = { 0 };
+        model.addModelListener(new ModelListener() {
+            @Override
+            public void modelChanged() {
+                notifications[0]++;
+            }
+        });
+        Event concert = new Event("Concert", 100);
+        Event party = new Event("Party", 100);
+        Assert.assertTrue(model.allocate(concert, venues[0]));
+
+        // the transaction under test
+        EventAllocatorModel.Transaction transaction = model.begin();
+        Assert.assertEquals(venues[0], transaction.deallocate(concert));
+        transaction.allocate(concert, venues[1]);
+        transaction.addEvent(party);
+        Assert.assertEquals(0, notifications[0]);
+        // nothing changes until the transaction is committed
+        Assert.assertEquals(venues[0], model.getVenueOf(concert));
+        Assert.assertTrue(transaction.commit());
+
+        Assert.assertEquals(1, notifications[0]);
+        Assert.assertEquals(venues[1], model.getVenueOf(concert));
+        Assert.assertEquals(concert, model.getEventAt(venues[1]));
+        Assert.assertFalse(model.isVenueAllocated(venues[0]));
+        Assert.assertEquals(60, model.getLedger().getLoad(corridor));
+        Assert.assertTrue(model.getEvents().contains(party));
+    }
+
+    /**
+     * Test that a transaction whose total traffic is unsafe changes nothing.
+     */
+    @Test(timeout = 5000)
+    public void testTransactionRollback() throws Exception {
+        // the model under test
+        EventAllocatorModel model = new EventAllocatorModel();
+        model.setVenues(new ArrayList<>(Arrays.asList(venues)));
+        Event concert = new Event("Concert", 100);
+        Event party = new Event("Party", 100);
+
+        // the transaction under test
+        EventAllocatorModel.Transaction transaction = model.begin();
+        transaction.allocate(concert, venues[0]);
+        transaction.allocate(party, venues[1]);
+        Assert.assertFalse(transaction.commit());
+
+        Assert.assertTrue(model.getAllocationMap().isEmpty());
+        Assert.assertFalse(model.isVenueAllocated(venues[0]));
+        Assert.assertEquals(0, model.getLedger().getLoad(corridor));
+        Assert.assertEquals(2, model.getFeasibleVenues(concert).size());
+    }
+
+    /**
+     * Test that a venue can't be allocated twice in one transaction.
+     */
+    @Test(timeout = 5000, expected = IllegalArgumentException.class)
+    public void testTransactionAllocatedVenue() throws Exception {
+        // the transaction under test
+        EventAllocatorModel.Transaction transaction = new EventAllocatorModel()
+                .begin();
+        transaction.allocate(new Event("Concert", 10), venues[0]);
+        transaction.allocate(new Event("Party", 10), venues[0]);
+    }
+
+    /**
+     * Test that single changes and transactions are undone and redone with
+     * the allocations and the booked traffic in step, and that a new change
+     * forgets the changes that could be redone.
+     */
+    @Test(timeout = 5000)
+    public void testUndoRedo() throws Exception {
+        // the model under test
+        EventAllocatorModel model = new EventAllocatorModel();
+        Event concert = new Event("Concert", 100);
+        Assert.assertFalse(model.canUndo());
+        Assert.assertFalse(model.undo());
+
+        Assert.assertTrue(model.allocate(concert, venues[0]));
+        // the transaction moving the event to the other venue
+        EventAllocatorModel.Transaction transaction = model.begin();
+        transaction.deallocate(concert);
+        transaction.allocate(concert, venues[1]);
+        Assert.assertTrue(transaction.commit());
+
+        Assert.assertTrue(model.undo());
+        Assert.assertEquals(venues[0], model.getVenueOf(concert));
+        Assert.assertEquals(concert, model.getEventAt(venues[0]));
+        Assert.assertFalse(model.isVenueAllocated(venues[1]));
+        Assert.assertEquals(60, model.getLedger().getLoad(corridor));
+        Assert.assertTrue(model.undo());
+        Assert.assertFalse(model.isEventAllocated(concert));
+        Assert.assertEquals(0, model.getLedger().getLoad(corridor));
+        Assert.assertFalse(model.canUndo());
+
+        Assert.assertTrue(model.redo());
+        Assert.assertTrue(model.redo());
+        Assert.assertEquals(venues[1], model.getVenueOf(concert));
+        Assert.assertEquals(60, model.getLedger().getLoad(corridor));
+        Assert.assertFalse(model.redo());
+
+        Assert.assertTrue(model.undo());
+        Assert.assertEquals(venues[0], model.deallocate(concert));
+        Assert.assertFalse(model.canRedo());
+        Assert.assertTrue(model.undo());
+        Assert.assertEquals(venues[0], model.getVenueOf(concert));
+    }
+
+}
@@ -0,0 +1,103 @@
+package planner.test;
+
+import planner.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link EventReader} class.
+ */
+public class EventReaderTest {
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * Writes the given contents to a new temporary file, and returns the file.
+     */
+    private Path write(String contents) throws Exception {
+        return temp.write("events", ".txt", contents);
+    }
+
+    /**
+     * Returns the message of the FormatException thrown when reading a file
+     * with the given contents.
+     */
+    private String formatError(String contents) throws Exception {
+        try {
+            EventReader.read(write(contents).toString());
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Test that events are read in file order, with repeated events skipped
+     * and names that contain ", ".
+     */
+    @Test(timeout = 5000)
+    public void testRead() throws Exception {
+        List<Event> events = EventReader.read(write("Concert, 100\n"
+                + "Rock, Paper, Scissors, 20\n" + "Concert, 100\n"
+                + "Concert, 50\n").toString());
+        Assert.assertEquals(Arrays.asList(new Event("Concert", 100),
+                new Event("Rock, Paper, Scissors", 20), new Event("Concert",
+                        50)), events);
+        Assert.assertTrue(EventReader.read(write("").toString()).isEmpty());
+    }
+
+    /**
+     * Test that events are passed to the consumer in full batches, in order.
+     */
+    @Test(timeout = 5000)
+    public void testBatches() throws Exception {
+        // the contents of the file
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            contents.append("Event " + i + ", " + (i + 1) + "\n");
+        }
+        // the batches passed to the consumer
+        List<List<Event>> batches = new ArrayList<>();
+        Assert.assertEquals(25, EventReader.read(write(contents.toString()),
+                10, batches::add));
+        Assert.assertEquals(3, batches.size());
+        Assert.assertEquals(10, batches.get(1).size());
+        Assert.assertEquals(5, batches.get(2).size());
+        Assert.assertEquals(new Event("Event 24", 25), batches.get(2).get(4));
+    }
+
+    /**
+     * Test that format errors are reported with the line they were found on.
+     */
+    @Test(timeout = 5000)
+    public void testFormatErrors() throws Exception {
+        Assert.assertEquals("Line 2: event expected, but line is empty.",
+                formatError("Concert, 100\n\nParty, 10\n"));
+        Assert.assertEquals("Line 1: event size is missing.", formatError(
+                "Concert 100\n"));
+        Assert.assertEquals("Line 1: event name cannot be the empty string.",
+                formatError(", 100\n"));
+        Assert.assertEquals("Line 2: invalid event size.", formatError(
+                "Concert, 100\nParty, ten\n"));
+        Assert.assertEquals("Line 1: invalid event size.", formatError(
+                "Concert, 100 \n"));
+        Assert.assertEquals(
+                "Line 3: The event size must be greater than 0.",
+                formatError("Concert, 100\nParty, 10\nMeeting, 0\n"));
+    }
+
+}
@@ -0,0 +1,108 @@
+package planner.test;
+
+import planner.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link FeasibilityIndex} class.
+ */
+public class FeasibilityIndexTest {
+
+    // the corridors used by the venues
+    private Corridor first;
+    private Corridor second;
+    // venues to test with
+    private Venue roomy;
+    private Venue tight;
+    private Venue small;
+    private Venue quiet;
+
+    /**
+     * Returns a venue with the given name and capacity, and the given amount
+     * of traffic (when hosting an event of its capacity) on the corridor.
+     */
+    private static Venue venue(String name, int capacity, Corridor corridor,
+            int traffic) {
+        // the traffic of the venue
+        Traffic capacityTraffic = new Traffic();
+        capacityTraffic.updateTraffic(corridor, traffic);
+        return new Venue(name, capacity, capacityTraffic);
+    }
+
+    /**
+     * This method is run by JUnit before each test to initialise the venues.
+     */
+    @Before
+    public void setUp() throws Exception {
+        first = new Corridor(new Location("f0"), new Location("f1"), 100);
+        second = new Corridor(new Location("s0"), new Location("s1"), 100);
+        roomy = venue("Roomy", 100, first, 20);
+        tight = venue("Tight", 100, second, 70);
+        small = venue("Small", 10, first, 10);
+        quiet = new Venue("Quiet", 100, new Traffic());
+    }
+
+    /**
+     * Test that the feasible venues are ranked by slack, and that venues that
+     * are too small or allocated are left out.
+     */
+    @Test(timeout = 5000)
+    public void testRanking() throws Exception {
+        // the index under test
+        FeasibilityIndex index = new FeasibilityIndex(Arrays.asList(tight,
+                small, roomy, quiet), new CorridorLedger());
+        Event event = new Event("Concert", 100);
+
+        Assert.assertTrue(index.getFeasibleVenues().isEmpty());
+        Assert.assertEquals(Arrays.asList(quiet, roomy, tight), index
+                .getFeasibleVenues(event));
+        Assert.assertEquals(event, index.getSelectedEvent());
+
+        index.setAllocated(roomy, true);
+        Assert.assertEquals(Arrays.asList(quiet, tight), index
+                .getFeasibleVenues());
+        index.setAllocated(roomy, false);
+        Assert.assertEquals(Arrays.asList(quiet, roomy, tight), index
+                .getFeasibleVenues());
+    }
+
+    /**
+     * Test that booking and releasing traffic re-ranks the venues using the
+     * affected corridors.
+     */
+    @Test(timeout = 5000)
+    public void testTrafficChanged() throws Exception {
+        // the ledger holding the booked traffic
+        CorridorLedger ledger = new CorridorLedger();
+        // the index under test
+        FeasibilityIndex index = new FeasibilityIndex(Arrays.asList(tight,
+                roomy), ledger);
+        index.select(new Event("Concert", 100));
+        Assert.assertEquals(Arrays.asList(roomy, tight), index
+                .getFeasibleVenues());
+
+        // 70 people on the first corridor leave roomy less slack than tight
+        Traffic booked = new Traffic();
+        booked.updateTraffic(first, 70);
+        ledger.reserve(booked);
+        index.trafficChanged(booked);
+        Assert.assertEquals(Arrays.asList(tight, roomy), index
+                .getFeasibleVenues());
+
+        // 20 more and roomy no longer fits
+        Traffic more = new Traffic();
+        more.updateTraffic(first, 20);
+        ledger.reserve(more);
+        index.trafficChanged(more);
+        Assert.assertEquals(Arrays.asList(tight), index.getFeasibleVenues());
+
+        ledger.release(booked);
+        index.trafficChanged(booked);
+        Assert.assertEquals(Arrays.asList(roomy, tight), index
+                .getFeasibleVenues());
+    }
+
+}
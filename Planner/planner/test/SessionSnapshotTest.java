@@ -0,0 +1,170 @@
+package planner.test;
+
+import planner.*;
+import planner.gui.EventAllocatorModel;
+import planner.gui.SessionSnapshot;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link SessionSnapshot} class.
+ */
+public class SessionSnapshotTest {
+
+    // the corridor used by the venues
+    private Corridor corridor;
+    // the venues of the models
+    private List<Venue> venues;
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * This method is run by JUnit before each test to initialise the venues.
+     */
+    @Before
+    public void setUp() throws Exception {
+        corridor = new Corridor(new Location("l0"), new Location("l1"), 1000);
+        venues = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // the traffic of the venue
+            Traffic traffic = new Traffic();
+            traffic.updateTraffic(corridor, 10 * i);
+            venues.add(new Venue("V" + i, 100, traffic));
+        }
+    }
+
+    /**
+     * Returns a new model with the venues and the given number of events.
+     */
+    private EventAllocatorModel model(int events) {
+        // the model
+        EventAllocatorModel model = new EventAllocatorModel();
+        model.setVenues(new ArrayList<>(venues));
+        for (int i = 0; i < events; i++) {
+            model.addEvents(new Event("Event " + i, 1 + i % 100));
+        }
+        return model;
+    }
+
+    /**
+     * Returns a new temporary file, which is removed when the test finishes.
+     */
+    private Path tempFile() throws Exception {
+        return temp.newFile("session", ".snapshot");
+    }
+
+    /**
+     * Test that a saved session is restored exactly, with and without
+     * verification.
+     */
+    @Test(timeout = 5000)
+    public void testSaveAndLoad() throws Exception {
+        EventAllocatorModel model = model(5);
+        Assert.assertTrue(model.allocate(model.getEvents().get(1), venues.get(
+                3)));
+        Assert.assertTrue(model.allocate(model.getEvents().get(4), venues.get(
+                7)));
+        Path file = tempFile();
+        SessionSnapshot.save(model, file);
+
+        for (boolean verify : new boolean[] { false, true }) {
+            // the model the session is restored into
+            EventAllocatorModel restored = model(0);
+            SessionSnapshot.load(restored, file, verify);
+            Assert.assertEquals(model.getEvents(), restored.getEvents());
+            Assert.assertEquals(model.getAllocationMap(), restored
+                    .getAllocationMap());
+            Assert.assertEquals(model.getCorridorMap(), restored
+                    .getCorridorMap());
+            Assert.assertTrue(restored.isVenueAllocated(venues.get(7)));
+        }
+    }
+
+    /**
+     * Test that a session with a hundred thousand events is restored quickly.
+     */
+    @Test(timeout = 5000)
+    public void testLargeSession() throws Exception {
+        EventAllocatorModel model = model(100000);
+        for (int i = 0; i < venues.size(); i++) {
+            Assert.assertTrue(model.allocate(model.getEvents().get(i * 1000),
+                    venues.get(i)));
+        }
+        Path file = tempFile();
+        SessionSnapshot.save(model, file);
+
+        // the model the session is restored into
+        EventAllocatorModel restored = model(0);
+        SessionSnapshot.load(restored, file, false);
+        Assert.assertEquals(100000, restored.getEvents().size());
+        Assert.assertEquals(model.getAllocationMap(), restored
+                .getAllocationMap());
+    }
+
+    /**
+     * Test that a session can't be restored into a model with different
+     * venues, and that the model is left unchanged.
+     */
+    @Test(timeout = 5000)
+    public void testDifferentVenues() throws Exception {
+        EventAllocatorModel model = model(1);
+        Assert.assertTrue(model.allocate(model.getEvents().get(0), venues.get(
+                2)));
+        Path file = tempFile();
+        SessionSnapshot.save(model, file);
+
+        // the model with different venues
+        EventAllocatorModel other = new EventAllocatorModel();
+        List<Venue> otherVenues = new ArrayList<>(venues);
+        Collections.reverse(otherVenues);
+        other.setVenues(otherVenues);
+        try {
+            SessionSnapshot.load(other, file, false);
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            Assert.assertTrue(other.getEvents().isEmpty());
+            Assert.assertTrue(other.getAllocationMap().isEmpty());
+        }
+    }
+
+    /**
+     * Test that a snapshot whose counts are larger than the file could hold
+     * is reported as corrupt, rather than allocating arrays of that size.
+     */
+    @Test(timeout = 5000)
+    public void testCorruptCounts() throws Exception {
+        Path file = tempFile();
+        SessionSnapshot.save(model(10), file);
+        // the bytes of the snapshot
+        byte[] saved = Files.readAllBytes(file);
+        // the count of names, and the length of the first name
+        for (int offset : new int[] { 16, 20 }) {
+            // the bytes with the count set as large as it can be
+            byte[] corrupt = saved.clone();
+            corrupt[offset] = 0x7f;
+            Files.write(file, corrupt);
+            EventAllocatorModel model = model(0);
+            try {
+                SessionSnapshot.load(model, file, false);
+                Assert.fail("FormatException not thrown");
+            } catch (FormatException e) {
+                Assert.assertTrue(model.getEvents().isEmpty());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package planner.test;
+
+import planner.*;
+import planner.gui.EventAllocatorModel;
+import planner.gui.SessionLog;
+import planner.gui.SessionSnapshot;
+import planner.gui.SessionStore;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link SessionStore} and {@link SessionLog} classes.
+ */
+public class SessionStoreTest {
+
+    // the corridor used by the venues
+    private Corridor corridor;
+    // the venues of the models
+    private List<Venue> venues;
+    // the files of the snapshot and the log
+    private Path snapshot;
+    private Path log;
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * This method is run by JUnit before each test to initialise the venues
+     * and the files, which are removed when the test finishes.
+     */
+    @Before
+    public void setUp() throws Exception {
+        corridor = new Corridor(new Location("l0"), new Location("l1"), 100);
+        venues = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // the traffic of the venue
+            Traffic traffic = new Traffic();
+            traffic.updateTraffic(corridor, 10 * i);
+            venues.add(new Venue("V" + i, 100, traffic));
+        }
+        // the directory of the files
+        Path directory = temp.newDirectory("session");
+        snapshot = directory.resolve("session.snapshot");
+        log = directory.resolve("session.log");
+    }
+
+    /**
+     * Returns a new model with the venues and no events.
+     */
+    private EventAllocatorModel model() {
+        // the model
+        EventAllocatorModel model = new EventAllocatorModel();
+        model.setVenues(new ArrayList<>(venues));
+        return model;
+    }
+
+    /**
+     * Returns a new store for the model, which rethrows errors in the
+     * background.
+     */
+    private SessionStore store(EventAllocatorModel model, int compactSize) {
+        return new SessionStore(model, snapshot, log, compactSize, e -> {
+            throw new AssertionError(e);
+        });
+    }
+
+    /**
+     * Test that every kind of change made after the store was opened is
+     * recovered from the log.
+     */
+    @Test(timeout = 5000)
+    public void testRecover() throws Exception {
+        EventAllocatorModel model = model();
+        SessionStore store = store(model, SessionStore.COMPACT_SIZE);
+        store.open();
+        for (int i = 0; i < 4; i++) {
+            model.addEvents(new Event("Event " + i, 10));
+        }
+        model.addEvents(Arrays.asList(new Event("Event 4", 20), new Event(
+                "Event 0", 10)));
+        List<Event> events = model.getEvents();
+        Assert.assertTrue(model.allocate(events.get(0), venues.get(1)));
+        Assert.assertTrue(model.allocate(events.get(1), venues.get(2)));
+        Assert.assertEquals(venues.get(1), model.deallocate(events.get(0)));
+        // move an event and allocate another in one transaction
+        EventAllocatorModel.Transaction transaction = model.begin();
+        transaction.deallocate(events.get(1));
+        transaction.allocate(events.get(1), venues.get(5));
+        transaction.allocate(events.get(2), venues.get(3));
+        Assert.assertTrue(transaction.commit());
+        Assert.assertTrue(model.allocate(events.get(3), venues.get(4)));
+        Assert.assertTrue(model.undo());
+        Assert.assertTrue(model.undo());
+        Assert.assertTrue(model.redo());
+        store.sync();
+        store.close();
+
+        // the model the session is recovered into
+        EventAllocatorModel recovered = model();
+        SessionStore reopened = store(recovered, SessionStore.COMPACT_SIZE);
+        reopened.open();
+        Assert.assertEquals(model.getEvents(), recovered.getEvents());
+        Assert.assertEquals(model.getAllocationMap(), recovered
+                .getAllocationMap());
+        Assert.assertEquals(model.getCorridorMap(), recovered
+                .getCorridorMap());
+        reopened.close();
+    }
+
+    /**
+     * Test that a record that was only partly written when the program
+     * stopped ends the log, and the changes before it are replayed.
+     */
+    @Test(timeout = 5000)
+    public void testTornRecord() throws Exception {
+        SessionLog writer = new SessionLog(log, venues, 0, e -> {
+        });
+        Assert.assertEquals(1, writer.eventAdded(new Event("A", 10)));
+        Assert.assertEquals(2, writer.eventAdded(new Event("B", 10)));
+        Assert.assertEquals(3, writer.allocated(new Event("A", 10), venues
+                .get(6)));
+        writer.close();
+        try (FileChannel channel = FileChannel.open(log,
+                StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        EventAllocatorModel model = model();
+        Assert.assertEquals(2, SessionLog.replay(log, model, 0));
+        Assert.assertEquals(2, model.getEvents().size());
+        Assert.assertTrue(model.getAllocationMap().isEmpty());
+    }
+
+    /**
+     * Test that the changes a snapshot already includes are not replayed
+     * again, as after stopping between saving the snapshot and starting the
+     * log again.
+     */
+    @Test(timeout = 5000)
+    public void testSnapshotIncludesLog() throws Exception {
+        EventAllocatorModel model = model();
+        SessionLog writer = new SessionLog(log, venues, 0, e -> {
+        });
+        model.addEvents(new Event("A", 10));
+        writer.eventAdded(new Event("A", 10));
+        Assert.assertTrue(model.allocate(new Event("A", 10), venues.get(3)));
+        writer.allocated(new Event("A", 10), venues.get(3));
+        writer.close();
+        SessionSnapshot.save(model, snapshot, 2);
+
+        EventAllocatorModel recovered = model();
+        Assert.assertEquals(2, SessionSnapshot.load(recovered, snapshot,
+                true));
+        Assert.assertEquals(2, SessionLog.replay(log, recovered, 2));
+        Assert.assertEquals(1, recovered.getEvents().size());
+        Assert.assertEquals(model.getCorridorMap(), recovered
+                .getCorridorMap());
+    }
+
+    /**
+     * Test that the store is compacted in the background once the log is
+     * large enough, and when the venues are replaced.
+     */
+    @Test(timeout = 5000)
+    public void testCompaction() throws Exception {
+        EventAllocatorModel model = model();
+        SessionStore store = store(model, 5);
+        store.open();
+        // the length of an empty log
+        long empty = Files.size(log);
+        for (int i = 0; i < 20; i++) {
+            model.addEvents(new Event("Event " + i, 10));
+        }
+        store.sync();
+        Assert.assertTrue(Files.size(log) > empty);
+        while (Files.size(log) > empty) {
+            Thread.sleep(50);
+        }
+
+        // the venues in a different order
+        List<Venue> reversed = new ArrayList<>(venues);
+        Collections.reverse(reversed);
+        model.setVenues(reversed);
+        Assert.assertTrue(model.allocate(model.getEvents().get(0), venues
+                .get(9)));
+        store.close();
+
+        EventAllocatorModel recovered = new EventAllocatorModel();
+        recovered.setVenues(new ArrayList<>(reversed));
+        SessionStore reopened = store(recovered, 5);
+        reopened.open();
+        Assert.assertEquals(20, recovered.getEvents().size());
+        Assert.assertEquals(venues.get(9), recovered.getVenueOf(model
+                .getEvents().get(0)));
+        reopened.close();
+    }
+
+    /**
+     * Test that a log written with different venues is not replayed.
+     */
+    @Test(timeout = 5000)
+    public void testDifferentVenues() throws Exception {
+        EventAllocatorModel model = model();
+        SessionStore store = store(model, SessionStore.COMPACT_SIZE);
+        store.open();
+        model.addEvents(new Event("A", 10));
+        Assert.assertTrue(model.allocate(new Event("A", 10), venues.get(2)));
+        store.close();
+
+        EventAllocatorModel other = new EventAllocatorModel();
+        List<Venue> otherVenues = new ArrayList<>(venues);
+        Collections.reverse(otherVenues);
+        other.setVenues(otherVenues);
+        try {
+            store(other, SessionStore.COMPACT_SIZE).open();
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            Assert.assertTrue(other.getAllocationMap().isEmpty());
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package planner.test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * The temporary files and directories of a test, which are all removed (with
+ * anything written into the directories) by {@link #cleanUp()}. A test class
+ * keeps one in a field and calls cleanUp from an After method.
+ */
+public class TempFiles {
+
+    // the files and directories created, in the order they were created
+    private final List<Path> paths = new ArrayList<>();
+
+    /**
+     * Creates a new, empty temporary file.
+     *
+     * @param prefix
+     *            the start of the name of the file
+     * @param suffix
+     *            the end of the name of the file
+     * @return the file
+     * @throws IOException
+     *             if the file can't be created
+     */
+    public Path newFile(String prefix, String suffix) throws IOException {
+        // the file created
+        Path file = Files.createTempFile(prefix, suffix);
+        paths.add(file);
+        return file;
+    }
+
+    /**
+     * Creates a new temporary file holding the given contents, encoded in the
+     * default charset.
+     *
+     * @param prefix
+     *            the start of the name of the file
+     * @param suffix
+     *            the end of the name of the file
+     * @param contents
+     *            the contents of the file
+     * @return the file
+     * @throws IOException
+     *             if the file can't be written
+     */
+    public Path write(String prefix, String suffix, String contents)
+            throws IOException {
+        // the file written
+        Path file = newFile(prefix, suffix);
+        Files.write(file, contents.getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    /**
+     * Creates a new, empty temporary directory.
+     *
+     * @param prefix
+     *            the start of the name of the directory
+     * @return the directory
+     * @throws IOException
+     *             if the directory can't be created
+     */
+    public Path newDirectory(String prefix) throws IOException {
+        // the directory created
+        Path directory = Files.createTempDirectory(prefix);
+        paths.add(directory);
+        return directory;
+    }
+
+    /**
+     * Removes every file and directory created, and everything in the
+     * directories, that still exists.
+     *
+     * @throws IOException
+     *             if something can't be removed
+     */
+    public void cleanUp() throws IOException {
+        for (Path path : paths) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            // everything under the path, deepest first
+            List<Path> contents;
+            try (Stream<Path> walk = Files.walk(path)) {
+                contents = walk.sorted(Comparator.reverseOrder()).collect(
+                        Collectors.toList());
+            }
+            for (Path file : contents) {
+                Files.deleteIfExists(file);
+            }
+        }
+        paths.clear();
+    }
+
+}
@@ -0,0 +1,55 @@
+package planner.test;
+
+import planner.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link VenueCapacityIndex} class.
+ */
+public class VenueCapacityIndexTest {
+
+    /**
+     * Test that the venues that can host an event are exactly those with a
+     * large enough capacity, smallest first, including at the boundaries.
+     */
+    @Test(timeout = 5000)
+    public void testAtLeast() throws Exception {
+        Venue large = new Venue("Large", 300, new Traffic());
+        Venue small = new Venue("Small", 10, new Traffic());
+        Venue medium = new Venue("Medium", 100, new Traffic());
+        Venue other = new Venue("Other", 100, new Traffic());
+        // the index under test
+        VenueCapacityIndex index = new VenueCapacityIndex(Arrays.asList(large,
+                small, medium, other));
+
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals(Arrays.asList(small, medium, other, large), index
+                .getVenues());
+        Assert.assertEquals(Arrays.asList(small, medium, other, large), index
+                .atLeast(1));
+        Assert.assertEquals(Arrays.asList(medium, other, large), index
+                .atLeast(11));
+        Assert.assertEquals(Arrays.asList(medium, other, large), index
+                .canHost(new Event("Party", 100)));
+        Assert.assertEquals(Arrays.asList(large), index.atLeast(101));
+        Assert.assertEquals(3, index.indexOf(300));
+        Assert.assertTrue(index.atLeast(301).isEmpty());
+        Assert.assertEquals(4, index.indexOf(301));
+        Assert.assertTrue(new VenueCapacityIndex(new ArrayList<Venue>())
+                .atLeast(1).isEmpty());
+    }
+
+    /**
+     * Test that the range views of the index can't be modified.
+     */
+    @Test(timeout = 5000, expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws Exception {
+        // the index under test
+        VenueCapacityIndex index = new VenueCapacityIndex(Arrays.asList(
+                new Venue("Hall", 100, new Traffic())));
+        index.atLeast(50).clear();
+    }
+
+}
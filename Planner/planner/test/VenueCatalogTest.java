@@ -0,0 +1,104 @@
+package planner.test;
+
+import planner.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link VenueCatalog} implementation class.
+ */
+public class VenueCatalogTest {
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * Returns a new temporary file that is deleted when the test finishes.
+     */
+    private Path temporaryFile() throws IOException {
+        return temp.newFile("venues", ".cat");
+    }
+
+    /**
+     * Returns a list of the given number of venues, each with a few
+     * corridors.
+     */
+    private static List<Venue> manyVenues(int count) {
+        // the venues to return
+        List<Venue> venues = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Traffic traffic = new Traffic();
+            for (int j = 0; j < i % 4; j++) {
+                traffic.updateTraffic(new Corridor(new Location("l" + (i + j)),
+                        new Location("l" + (i + j + 1)), 500), j + 1);
+            }
+            venues.add(new Venue("Venue " + i + " \u00e9", 100 + i % 50,
+                    traffic));
+        }
+        return venues;
+    }
+
+    /**
+     * Test that a compiled catalog holds the same venues, in the same order,
+     * and that venues are only decoded when they are accessed.
+     */
+    @Test(timeout = 5000)
+    public void testCompileAndOpen() throws Exception {
+        // the venues to compile
+        List<Venue> venues = manyVenues(300);
+        Path file = temporaryFile();
+        VenueCatalog.compile(venues, file);
+
+        // the catalog under test
+        VenueCatalog catalog = VenueCatalog.open(file);
+        Assert.assertEquals(300, catalog.size());
+        Assert.assertEquals(0, catalog.getLoadedCount());
+
+        Assert.assertEquals(venues.get(123), catalog.get(123));
+        Assert.assertSame(catalog.get(123), catalog.get(123));
+        Assert.assertEquals(1, catalog.getLoadedCount());
+
+        Assert.assertEquals(venues, catalog);
+        Assert.assertEquals(300, catalog.getLoadedCount());
+    }
+
+    /**
+     * Test that an empty catalog can be written and opened.
+     */
+    @Test(timeout = 5000)
+    public void testEmptyCatalog() throws Exception {
+        Path file = temporaryFile();
+        VenueCatalog.compile(new ArrayList<Venue>(), file);
+        Assert.assertTrue(VenueCatalog.open(file).isEmpty());
+    }
+
+    /**
+     * Test that a file that is not a catalog is rejected with a
+     * FormatException.
+     */
+    @Test(timeout = 5000)
+    public void testNotACatalog() throws Exception {
+        Path file = temporaryFile();
+        Files.write(file, "Tivoli\n50\n\n".getBytes());
+        try {
+            VenueCatalog.open(file);
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package planner.test;
+
+import planner.*;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link VenueFileReloader} and {@link VenueDiff} classes.
+ */
+public class VenueFileReloaderTest {
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * Replaces the contents of the given file.
+     */
+    private static void write(Path file, String contents) throws Exception {
+        Files.write(file, contents.getBytes(Charset.defaultCharset()));
+    }
+
+    /**
+     * Creates a new temporary file with the given contents.
+     */
+    private Path createFile(String contents) throws Exception {
+        return temp.write("venues", ".txt", contents);
+    }
+
+    /**
+     * Test that reloading a file reuses the venues of unchanged blocks, and
+     * reports added, removed and changed venues.
+     */
+    @Test(timeout = 5000)
+    public void testReload() throws Exception {
+        Path file = createFile("The Gabba\n200\nl1, l2, 200: 150\n\n"
+                + "Tivoli\n50\n\n" + "Suncorp Stadium\n100\n\n");
+        VenueFileReloader reloader = new VenueFileReloader(file);
+
+        // the first read adds every venue
+        VenueDiff diff = reloader.reload();
+        Assert.assertEquals(VenueReader.read(file.toString()), diff
+                .getVenues());
+        Assert.assertEquals(3, diff.getAdded().size());
+        List<Venue> before = diff.getVenues();
+
+        // Tivoli's capacity changes, Suncorp is removed and Lang Park added
+        write(file, "The Gabba\n200\nl1, l2, 200: 150\n\n" + "Tivoli\n60\n\n"
+                + "Lang Park\n100\n\n");
+        diff = reloader.reload();
+        Assert.assertEquals(VenueReader.read(file.toString()), diff
+                .getVenues());
+        Assert.assertSame(before.get(0), diff.getVenues().get(0));
+        Assert.assertEquals(Collections.singletonList(diff.getVenues().get(2)),
+                diff.getAdded());
+        Assert.assertEquals(Collections.singletonList(before.get(2)), diff
+                .getRemoved());
+        Assert.assertEquals(Collections.singletonMap(before.get(1), diff
+                .getVenues().get(1)), diff.getChanged());
+
+        // reloading an unchanged file gives an empty diff
+        Assert.assertTrue(reloader.reload().isEmpty());
+    }
+
+    /**
+     * Test that format errors are reported at the same line as VenueReader,
+     * and that a failed reload keeps the previous venues.
+     */
+    @Test(timeout = 5000)
+    public void testReloadErrors() throws Exception {
+        Path file = createFile("Tivoli\n50\n\nThe Gabba\n200\n\n");
+        VenueFileReloader reloader = new VenueFileReloader(file);
+        List<Venue> venues = reloader.reload().getVenues();
+
+        for (String contents : new String[] {
+                "Tivoli\r\n50\r\n\r\nThe Gabba\r\n200\r\nl0, l1: 5\r\n\r\n",
+                "Tivoli\n50\n\nThe Gabba\n200\n\nTivoli\n50\n\n",
+                "Tivoli\n50\n\nThe Gabba\n200\n" }) {
+            write(file, contents);
+            // the message reported by VenueReader
+            String expected = null;
+            try {
+                VenueReader.read(file.toString());
+                Assert.fail("FormatException not thrown");
+            } catch (FormatException e) {
+                expected = e.getMessage();
+            }
+            try {
+                reloader.reload();
+                Assert.fail("FormatException not thrown");
+            } catch (FormatException e) {
+                Assert.assertEquals(expected, e.getMessage());
+            }
+            Assert.assertSame(venues, reloader.getVenues());
+        }
+    }
+
+    /**
+     * Test that the venues are passed to the consumer in file order, in full
+     * batches.
+     */
+    @Test(timeout = 5000)
+    public void testReloadBatches() throws Exception {
+        Path file = createFile("The Gabba\n200\nl1, l2, 200: 150\n\n"
+                + "Tivoli\n50\n\n" + "Suncorp Stadium\n100\n\n");
+        // the batches passed to the consumer
+        List<List<Venue>> batches = new ArrayList<>();
+        VenueDiff diff = new VenueFileReloader(file).reload(2, batches::add);
+
+        Assert.assertEquals(2, batches.size());
+        Assert.assertEquals(2, batches.get(0).size());
+        Assert.assertEquals(1, batches.get(1).size());
+        // the venues of all of the batches
+        List<Venue> venues = new ArrayList<>(batches.get(0));
+        venues.addAll(batches.get(1));
+        Assert.assertEquals(diff.getVenues(), venues);
+    }
+
+    /**
+     * Test that a compressed file is decompressed before it is read, and
+     * that changing it is reported like changing an uncompressed file.
+     */
+    @Test(timeout = 5000)
+    public void testReloadCompressed() throws Exception {
+        Path file = temp.newFile("venues", ".txt.gz");
+        writeCompressed(file, "The Gabba\n200\nl1, l2, 200: 150\n\n"
+                + "Tivoli\n50\n\n");
+        VenueFileReloader reloader = new VenueFileReloader(file);
+        VenueDiff diff = reloader.reload();
+        Assert.assertEquals(VenueReader.read(file.toString()), diff
+                .getVenues());
+        Assert.assertEquals(2, diff.getAdded().size());
+        List<Venue> before = diff.getVenues();
+
+        writeCompressed(file, "The Gabba\n200\nl1, l2, 200: 150\n\n"
+                + "Tivoli\n60\n\n");
+        diff = reloader.reload();
+        Assert.assertEquals(VenueReader.read(file.toString()), diff
+                .getVenues());
+        Assert.assertSame(before.get(0), diff.getVenues().get(0));
+        Assert.assertEquals(Collections.singletonMap(before.get(1), diff
+                .getVenues().get(1)), diff.getChanged());
+    }
+
+    /**
+     * Replaces the contents of the given file with the gzip compressed
+     * contents.
+     */
+    private static void writeCompressed(Path file, String contents)
+            throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(
+                file))) {
+            out.write(contents.getBytes(Charset.defaultCharset()));
+        }
+    }
+
+}
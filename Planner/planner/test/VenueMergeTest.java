@@ -0,0 +1,122 @@
+package planner.test;
+
+import planner.*;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link VenueMerge} class.
+ */
+public class VenueMergeTest {
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * Writes the given contents to the given file in the given directory, and
+     * returns the file.
+     */
+    private static Path write(Path directory, String name, String contents)
+            throws Exception {
+        // the file to write
+        Path file = directory.resolve(name);
+        Files.write(file, contents.getBytes(Charset.defaultCharset()));
+        return file;
+    }
+
+    /**
+     * Creates a new temporary directory that is deleted, with everything in
+     * it, when the test finishes.
+     */
+    private Path createDirectory() throws Exception {
+        return temp.newDirectory("venues");
+    }
+
+    /**
+     * Test that the venues of a directory of files are merged in file order,
+     * with duplicates and conflicting corridor capacities reported, and
+     * corridors shared between files.
+     */
+    @Test(timeout = 10000)
+    public void testReadDirectory() throws Exception {
+        Path directory = createDirectory();
+        Path north = write(directory, "a-north.txt", "The Gabba\n200\n"
+                + "l1, l2, 200: 150\n\n" + "Tivoli\n50\nl2, l3, 100: 50\n\n");
+        Path south = directory.resolve("b-south.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(
+                south))) {
+            out.write(("Suncorp Stadium\n100\nl1, l2, 200: 70\n\n"
+                    + "Tivoli\n50\nl2, l3, 100: 50\n\n" + "Lang Park\n80\n"
+                    + "l2, l3, 80: 40\n\n").getBytes(Charset
+                            .defaultCharset()));
+        }
+        write(directory, ".hidden", "not a venue file");
+
+        VenueMerge merge = VenueMerge.readDirectory(directory);
+        Assert.assertEquals(Arrays.asList(north, south), merge.getPaths());
+        // the merged venue names
+        List<String> names = new ArrayList<>();
+        for (Venue venue : merge.getVenues()) {
+            names.add(venue.getName());
+        }
+        Assert.assertEquals(Arrays.asList("The Gabba", "Tivoli",
+                "Suncorp Stadium", "Lang Park"), names);
+
+        Assert.assertEquals(1, merge.getDuplicates().size());
+        VenueMerge.Duplicate duplicate = merge.getDuplicates().get(0);
+        Assert.assertEquals("Tivoli", duplicate.getVenue().getName());
+        Assert.assertEquals(north, duplicate.getFirstPath());
+        Assert.assertEquals(south, duplicate.getDuplicatePath());
+
+        Assert.assertEquals(1, merge.getConflicts().size());
+        VenueMerge.Conflict conflict = merge.getConflicts().get(0);
+        Assert.assertEquals(new Location("l2"), conflict.getStart());
+        Assert.assertEquals(new Location("l3"), conflict.getEnd());
+        Assert.assertEquals(Arrays.asList(80, 100), new ArrayList<>(conflict
+                .getCapacities().keySet()));
+        Assert.assertEquals(Collections.singleton(south), conflict
+                .getCapacities().get(80));
+
+        // the l1 to l2 corridor is the same object in both files
+        Corridor gabba = merge.getVenues().get(0).getTraffic(new Event("E",
+                200)).getCorridorsWithTraffic().iterator().next();
+        Corridor suncorp = merge.getVenues().get(2).getTraffic(new Event("E",
+                100)).getCorridorsWithTraffic().iterator().next();
+        Assert.assertSame(gabba, suncorp);
+        Assert.assertSame(gabba.getStart(), suncorp.getStart());
+    }
+
+    /**
+     * Test that a format error is reported with the file and line it was
+     * found on.
+     */
+    @Test(timeout = 10000)
+    public void testFormatError() throws Exception {
+        Path directory = createDirectory();
+        Path good = write(directory, "good.txt", "Tivoli\n50\n\n");
+        Path bad = write(directory, "bad.txt", "Tivoli\n50\n\nA\nten\n\n");
+        try {
+            VenueMerge.read(Arrays.asList(good, bad));
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            Assert.assertEquals(bad + ": Line 5: invalid venue capacity.", e
+                    .getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,393 @@
+package planner.test;
+
+import planner.*;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+import java.util.zip.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the venue file readers ({@link VenueReader} and
+ * {@link MappedVenueReader}).
+ */
+public class VenueReaderTest {
+
+    // Correct line separator for executing machine
+    private final static String LINE_SEPARATOR = System.getProperty(
+            "line.separator");
+
+    // a valid venue file with three venues
+    private final static String VALID_VENUES = "The Gabba\n" + "200\n"
+            + "l1, l2, 200: 150\n" + "l2, l3, 100: 50\n" + "\n" + "Tivoli\n"
+            + "50\n" + "\n" + "Suncorp Stadium\n" + "100\n"
+            + "l0, l1, 100: 25\n" + "l1, l2, 200: 70\n" + "\n";
+
+    // the temporary files of the test
+    private final TempFiles temp = new TempFiles();
+
+    /**
+     * This method is run by JUnit after each test to remove its temporary
+     * files.
+     */
+    @After
+    public void tearDown() throws Exception {
+        temp.cleanUp();
+    }
+
+    /**
+     * Writes the given contents to a new temporary file, and returns the name
+     * of the file.
+     */
+    private String write(String contents) throws IOException {
+        return temp.write("venues", ".txt", contents).toString();
+    }
+
+    /**
+     * Returns the message of the FormatException thrown by VenueReader.read on
+     * the given file, checking that MappedVenueReader.read throws a
+     * FormatException with the same message.
+     */
+    private static String formatError(String fileName) throws Exception {
+        // the messages of the two readers
+        String expected = null;
+        String actual = null;
+        try {
+            VenueReader.read(fileName);
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            expected = e.getMessage();
+        }
+        try {
+            MappedVenueReader.read(fileName);
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            actual = e.getMessage();
+        }
+        Assert.assertEquals(expected, actual);
+        return actual;
+    }
+
+    /**
+     * Test that both readers read the same venues from a valid file.
+     */
+    @Test(timeout = 5000)
+    public void testReadValidFile() throws Exception {
+        String fileName = write(VALID_VENUES);
+
+        // the venues read by the two readers
+        List<Venue> venues = VenueReader.read(fileName);
+        List<Venue> mappedVenues = MappedVenueReader.read(fileName);
+
+        Assert.assertEquals(3, venues.size());
+        Assert.assertEquals(venues, mappedVenues);
+        Assert.assertEquals("Tivoli (50)" + LINE_SEPARATOR, mappedVenues.get(1)
+                .toString());
+    }
+
+    /**
+     * Test that both readers accept Windows line terminators and an empty
+     * file.
+     */
+    @Test(timeout = 5000)
+    public void testLineTerminators() throws Exception {
+        String fileName = write(VALID_VENUES.replace("\n", "\r\n"));
+        Assert.assertEquals(VenueReader.read(fileName), MappedVenueReader.read(
+                fileName));
+
+        fileName = write("");
+        Assert.assertTrue(MappedVenueReader.read(fileName).isEmpty());
+    }
+
+    /**
+     * Test that both readers report the same error, on the same line, for
+     * files with format errors.
+     */
+    @Test(timeout = 5000)
+    public void testFormatErrors() throws Exception {
+        // duplicate venue
+        Assert.assertEquals("Line 9: duplicate venue detected.", formatError(
+                write("Tivoli\n50\n\nA\n10\n\nTivoli\n50\n\n")));
+        // empty venue name
+        Assert.assertEquals("Line 1: venue name cannot be the empty string",
+                formatError(write("\n50\n\n")));
+        // invalid capacity
+        Assert.assertEquals("Line 2: invalid venue capacity.", formatError(
+                write("Tivoli\nfifty\n\n")));
+        Assert.assertEquals(
+                "Line 2: capacity must be greater than or equal to zero.",
+                formatError(write("Tivoli\n0\n\n")));
+        // missing empty line at the end of the file
+        Assert.assertEquals(
+                "Line 3: empty line expected to complete venue.", formatError(
+                        write("Tivoli\n50\nl0, l1, 10: 5\n")));
+        // invalid corridors and traffic
+        Assert.assertEquals("Line 3: invalid corridor.", formatError(write(
+                "Tivoli\n50\nl0, l0, 10: 5\n\n")));
+        Assert.assertEquals("Line 3: invalid corridor.", formatError(write(
+                "Tivoli\n50\nl0, l1: 5\n\n")));
+        Assert.assertEquals(
+                "Line 3: traffic is missing or incorrectly formatted.",
+                formatError(write("Tivoli\n50\nl0, l1, 10: x\n\n")));
+        Assert.assertEquals("Line 3: traffic exceeds the corridor capacity.",
+                formatError(write("Tivoli\n50\nl0, l1, 10: 20\n\n")));
+        Assert.assertEquals("Line 3: extra information on line.", formatError(
+                write("Tivoli\n50\nl0, l1, 10: 5: 5\n\n")));
+        Assert.assertEquals("Line 4: corridor appears more than once.",
+                formatError(write(
+                        "Tivoli\n50\nl0, l1, 10: 5\nl0, l1, 10: 6\n\n")));
+    }
+
+    /**
+     * Returns the contents of a valid venue file with the given number of
+     * venues, each with a few corridors.
+     */
+    private static String manyVenues(int count) {
+        // the contents of the file
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            result.append("Venue " + i + "\n" + (100 + i % 50) + "\n");
+            for (int j = 0; j < i % 4; j++) {
+                result.append("l" + (i + j) + ", l" + (i + j + 1) + ", 500: "
+                        + (j + 1) + "\n");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Test that reading a file in parallel chunks gives the same venues as
+     * reading it sequentially.
+     */
+    @Test(timeout = 10000)
+    public void testReadParallel() throws Exception {
+        String fileName = write(manyVenues(500));
+
+        // the venues read sequentially
+        List<Venue> expected = VenueReader.read(fileName);
+        Assert.assertEquals(expected, MappedVenueReader.readParallel(fileName,
+                7));
+        Assert.assertEquals(expected, MappedVenueReader.readParallel(fileName,
+                1));
+        Assert.assertEquals(expected, MappedVenueReader.readParallel(
+                fileName));
+        Assert.assertTrue(MappedVenueReader.readParallel(write(""), 4)
+                .isEmpty());
+    }
+
+    /**
+     * Test that reading a file in parallel chunks reports errors in later
+     * chunks, and duplicates across chunks, at the right line of the file.
+     */
+    @Test(timeout = 10000)
+    public void testReadParallelErrors() throws Exception {
+        // a format error near the end of the file
+        String fileName = write(manyVenues(500) + "Bad Venue\n10\nl0: 5\n\n");
+        String expected = formatError(fileName);
+        try {
+            MappedVenueReader.readParallel(fileName, 5);
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            Assert.assertEquals(expected, e.getMessage());
+        }
+
+        // a duplicate of the first venue at the end of the file
+        fileName = write(manyVenues(500) + "Venue 0\n100\n\n");
+        expected = formatError(fileName);
+        try {
+            MappedVenueReader.readParallel(fileName, 5);
+            Assert.fail("FormatException not thrown");
+        } catch (FormatException e) {
+            Assert.assertEquals(expected, e.getMessage());
+        }
+    }
+
+    /**
+     * Test that streaming the venues of a file gives the same venues as
+     * reading them into a list, and that the stream can be used for a
+     * single-pass aggregate.
+     */
+    @Test(timeout = 5000)
+    public void testStream() throws Exception {
+        String fileName = write(manyVenues(100));
+
+        try (Stream<Venue> venues = VenueReader.stream(Paths.get(fileName),
+                true)) {
+            Assert.assertEquals(VenueReader.read(fileName), venues.collect(
+                    Collectors.toList()));
+        }
+        try (Stream<Venue> venues = VenueReader.stream(Paths.get(fileName))) {
+            // capacities are 100 to 149, twice over
+            Assert.assertEquals(2 * (50 * 100 + 49 * 50 / 2), venues.mapToInt(
+                    Venue::getCapacity).sum());
+        }
+    }
+
+    /**
+     * Test that format errors and duplicates are reported by the stream as
+     * UncheckedFormatExceptions wrapping the same FormatException as read.
+     */
+    @Test(timeout = 5000)
+    public void testStreamErrors() throws Exception {
+        // a duplicate of the first venue at the end of the file
+        String fileName = write(manyVenues(10) + "Venue 0\n100\n\n");
+        String expected = formatError(fileName);
+        try (Stream<Venue> venues = VenueReader.stream(Paths.get(fileName),
+                true)) {
+            venues.count();
+            Assert.fail("UncheckedFormatException not thrown");
+        } catch (UncheckedFormatException e) {
+            Assert.assertEquals(expected, e.getCause().getMessage());
+        }
+        // without duplicate checking, the duplicate is just another venue
+        try (Stream<Venue> venues = VenueReader.stream(Paths.get(fileName))) {
+            Assert.assertEquals(11, venues.count());
+        }
+
+        // a format error
+        fileName = write(manyVenues(10) + "Bad Venue\n-10\n\n");
+        expected = formatError(fileName);
+        try (Stream<Venue> venues = VenueReader.stream(Paths.get(fileName))) {
+            venues.forEach(venue -> Assert.assertTrue(venue.checkInvariant()));
+            Assert.fail("UncheckedFormatException not thrown");
+        } catch (UncheckedFormatException e) {
+            Assert.assertEquals(expected, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the given contents to a new temporary file through the given
+     * compressing stream constructor, and returns the name of the file.
+     */
+    private String writeCompressed(String contents, Compressor compressor)
+            throws IOException {
+        // the temporary file
+        Path file = temp.newFile("venues", ".txt.z");
+        try (OutputStream out = compressor.wrap(Files.newOutputStream(file))) {
+            out.write(contents.getBytes(Charset.defaultCharset()));
+        }
+        return file.toString();
+    }
+
+    /**
+     * A constructor of a compressing output stream.
+     */
+    private interface Compressor {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Test that gzip and zlib compressed files are read, and streamed, as if
+     * they were not compressed, with errors reported at the same lines.
+     */
+    @Test(timeout = 10000)
+    public void testCompressedInput() throws Exception {
+        // the contents of the file, and the venues they describe
+        String contents = manyVenues(200);
+        List<Venue> expected = VenueReader.read(write(contents));
+        for (Compressor compressor : new Compressor[] { GZIPOutputStream::new,
+                DeflaterOutputStream::new }) {
+            String fileName = writeCompressed(contents, compressor);
+            Assert.assertEquals(expected, VenueReader.read(fileName));
+            Assert.assertEquals(expected, MappedVenueReader.read(fileName));
+            Assert.assertEquals(expected, MappedVenueReader.readParallel(
+                    fileName, 4));
+            try (Stream<Venue> venues = VenueReader.stream(Paths.get(
+                    fileName))) {
+                Assert.assertEquals(expected, venues.collect(Collectors
+                        .toList()));
+            }
+
+            // a format error at the end of the file
+            String invalid = contents + "Bad Venue\n10\nl0: 5\n\n";
+            Assert.assertEquals(formatError(write(invalid)), formatError(
+                    writeCompressed(invalid, compressor)));
+        }
+        // a venue named "x^" is not mistaken for compressed data
+        Assert.assertEquals(1, VenueReader.read(write("x^\n10\n\n")).size());
+    }
+
+    /**
+     * Test that a truncated gzip file is reported as an IOException, both
+     * when only its trailer is missing and when it is cut short mid-stream.
+     */
+    @Test(timeout = 10000)
+    public void testTruncatedCompressedInput() throws Exception {
+        // the compressed file, and its length
+        Path file = Paths.get(writeCompressed(manyVenues(2000),
+                GZIPOutputStream::new));
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length : new int[] { bytes.length - 8, bytes.length / 2 }) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            try {
+                VenueReader.read(file.toString());
+                Assert.fail("IOException not thrown");
+            } catch (IOException e) {
+                // expected
+            }
+            try (Stream<Venue> venues = VenueReader.stream(file)) {
+                venues.count();
+                Assert.fail("UncheckedIOException not thrown");
+            } catch (UncheckedIOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Returns the shortest time, in nanoseconds, that VenueReader.read takes
+     * to read the given file over the given number of runs.
+     */
+    private static long readTime(String fileName, int runs) throws Exception {
+        // the shortest time seen so far
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            VenueReader.read(fileName);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Test that the time taken to read a file (including the duplicate venue
+     * check) grows linearly with the number of venues: reading sixteen times
+     * as many venues must take less than 48 times as long. A venue is told
+     * apart from another by its fingerprint alone, so checking each venue
+     * against every earlier one only dominates the time taken to read the
+     * venues when there are many of them and they are quick to parse (i.e.
+     * they have no traffic); a quadratic check then takes over 70 times as
+     * long.
+     */
+    @Test(timeout = 60000)
+    public void testReadScalesLinearly() throws Exception {
+        String smallFile = write(plainVenues(2500));
+        String largeFile = write(plainVenues(40000));
+        // warm up the JIT compiler
+        readTime(smallFile, 3);
+        readTime(largeFile, 1);
+
+        long smallTime = readTime(smallFile, 5);
+        long largeTime = readTime(largeFile, 3);
+        Assert.assertTrue("reading 16x the venues took " + (double) largeTime
+                / smallTime + "x as long", largeTime < 48 * smallTime);
+    }
+
+    /**
+     * Returns the contents of a venue file describing count different venues
+     * without any traffic.
+     */
+    private static String plainVenues(int count) {
+        // the contents of the file
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            result.append("Venue " + i + "\n" + (100 + i % 50) + "\n\n");
+        }
+        return result.toString();
+    }
+}